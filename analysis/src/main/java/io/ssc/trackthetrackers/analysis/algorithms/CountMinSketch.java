@@ -0,0 +1,96 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.analysis.algorithms;
+
+import java.io.Serializable;
+
+/**
+ * A Count-Min sketch, estimates the frequency of items in a stream with a fixed amount of memory. Estimates never
+ * underestimate, and overestimate by more than epsilon times the total count with probability at most delta.
+ */
+public class CountMinSketch implements Serializable {
+
+  private static final int SEED = 0xbeef;
+
+  private final int depth;
+  private final int mask;
+  private final long[] counts;
+  private long totalCount = 0;
+
+  public CountMinSketch(double epsilon, double delta) {
+    if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+      throw new IllegalArgumentException("epsilon and delta must be in (0, 1)");
+    }
+    int width = Integer.highestOneBit((int) Math.ceil(Math.E / epsilon) - 1) << 1;
+    depth = (int) Math.ceil(Math.log(1 / delta));
+    mask = width - 1;
+    counts = new long[depth * width];
+  }
+
+  /** a 64 bit hash of ints, longs and strings, other keys fall back to their hashCode() */
+  public static long hash(Object key) {
+    if (key instanceof Integer) {
+      return (Integer) key;
+    }
+    if (key instanceof Long) {
+      return (Long) key;
+    }
+    if (key instanceof CharSequence) {
+      CharSequence text = (CharSequence) key;
+      long hash = 1125899906842597L;
+      for (int n = 0; n < text.length(); n++) {
+        hash = 31 * hash + text.charAt(n);
+      }
+      return hash;
+    }
+    return key.hashCode();
+  }
+
+  public void add(long itemHash, long count) {
+    int width = mask + 1;
+    for (int row = 0; row < depth; row++) {
+      counts[row * width + (MurmurHash3.hash(itemHash, SEED + row) & mask)] += count;
+    }
+    totalCount += count;
+  }
+
+  public long estimate(long itemHash) {
+    int width = mask + 1;
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counts[row * width + (MurmurHash3.hash(itemHash, SEED + row) & mask)]);
+    }
+    return estimate;
+  }
+
+  public long totalCount() {
+    return totalCount;
+  }
+
+  /** adds the counts of a sketch created with the same epsilon and delta */
+  public void merge(CountMinSketch other) {
+    if (other.depth != depth || other.mask != mask) {
+      throw new IllegalArgumentException("Sketches have different dimensions");
+    }
+    for (int index = 0; index < counts.length; index++) {
+      counts[index] += other.counts[index];
+    }
+    totalCount += other.totalCount;
+  }
+}
@@ -1,70 +1,395 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
 package io.ssc.trackthetrackers.analysis.algorithms;
 
-/** a HyperLogLog sketch. */
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch with 2^precision registers over a 64-bit hash.
+ *
+ * Small sketches are kept sparse, as a sorted array of (register, value) pairs, and switch to dense registers once
+ * the pairs would take more memory than the registers. Dense registers are packed eight to a long, so that merging
+ * two sketches takes a broadword maximum per word. The cardinality is estimated from the histogram of register
+ * values with the bias-corrected estimator of Ertl, "New cardinality estimation algorithms for HyperLogLog
+ * sketches", which needs neither empirical bias tables nor a switch to linear counting.
+ */
 public class HyperLogLog {
 
-  private static final int NUMBER_OF_BUCKETS = 16;
-  private static final double ALPHA_TIMES_MSQUARED = 0.673 * NUMBER_OF_BUCKETS * NUMBER_OF_BUCKETS;
-  private static final double ESTIMATION_THRESHOLD = 2.5 * NUMBER_OF_BUCKETS;
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 16;
+
+  public static final int DEFAULT_PRECISION = 4;
+  public static final int DEFAULT_SEED = 0xbeef;
+
+  private static final long LOW_BITS = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
+  private static final int VALUE_BITS = 6;
+  private static final int VALUE_MASK = (1 << VALUE_BITS) - 1;
 
-  //TODO should be configurable
-  private static final int SEED = 0xbeef;
+  private static final byte SPARSE = 0;
+  private static final byte DENSE = 1;
+
+  private final int precision;
+  private final int seed;
+
+  /** sparse representation, register index and value packed into an int, sorted by register index */
+  private int[] entries;
+  private int numEntries;
+
+  /** dense representation, byte registers packed eight to a long, null while sparse */
+  private long[] registers;
 
-  private byte[] buckets;
-  
   public HyperLogLog() {
-    this.buckets = new byte[NUMBER_OF_BUCKETS];
+    this(DEFAULT_PRECISION);
+  }
+
+  public HyperLogLog(int precision) {
+    this(precision, DEFAULT_SEED);
+  }
+
+  public HyperLogLog(int precision, int seed) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+    }
+    this.precision = precision;
+    this.seed = seed;
+    this.entries = new int[4];
+  }
+
+  /** copy constructor */
+  public HyperLogLog(HyperLogLog other) {
+    precision = other.precision;
+    seed = other.seed;
+    numEntries = other.numEntries;
+    entries = other.entries == null ? null : other.entries.clone();
+    registers = other.registers == null ? null : other.registers.clone();
+  }
+
+  public int precision() {
+    return precision;
+  }
+
+  public int seed() {
+    return seed;
+  }
+
+  public boolean isSparse() {
+    return registers == null;
   }
 
   public void observe(long item) {
-    setRegister(MurmurHash3.hash(item, SEED));
+    long hash = ((long) MurmurHash3.hash(item, seed) << 32) | (MurmurHash3.hash(item, ~seed) & 0xffffffffL);
+
+    int index = (int) (hash >>> (64 - precision));
+    // the sentinel bit bounds the value by 65 - precision
+    int value = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+
+    setRegister(index, value);
   }
 
-  private void setRegister(int hash) {
-    // last 4 bits as bucket index
-    int mask = NUMBER_OF_BUCKETS - 1;
-    int bucketIndex = hash & mask;
+  private void setRegister(int index, int value) {
+    if (registers != null) {
+      int word = index >>> 3;
+      int shift = (index & 7) << 3;
+      if (((registers[word] >>> shift) & 0xff) < value) {
+        registers[word] = (registers[word] & ~(0xffL << shift)) | ((long) value << shift);
+      }
+      return;
+    }
+
+    int position = search(index);
+    if (position >= 0) {
+      if ((entries[position] & VALUE_MASK) < value) {
+        entries[position] = (index << VALUE_BITS) | value;
+      }
+      return;
+    }
+
+    // four bytes per entry against one byte per register
+    if (numEntries + 1 > numRegisters() / 4) {
+      toDense();
+      setRegister(index, value);
+      return;
+    }
 
-    // throw away last 4 bits
-    hash >>= 4;
-    // make sure the 4 new zeroes don't impact estimate
-    hash |= 0xf0000000;
-    // hash has now 28 significant bits left
-    buckets[bucketIndex] = (byte) (Integer.numberOfTrailingZeros(hash) + 1L);
+    position = -(position + 1);
+    if (numEntries == entries.length) {
+      entries = Arrays.copyOf(entries, Math.min(numEntries * 2, numRegisters() / 4));
+    }
+    System.arraycopy(entries, position, entries, position + 1, numEntries - position);
+    entries[position] = (index << VALUE_BITS) | value;
+    numEntries++;
+  }
+
+  /** binary search for the entry of a register, same contract as {@link Arrays#binarySearch(int[], int)} */
+  private int search(int index) {
+    int low = 0;
+    int high = numEntries - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midIndex = entries[mid] >>> VALUE_BITS;
+      if (midIndex < index) {
+        low = mid + 1;
+      } else if (midIndex > index) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private void toDense() {
+    registers = new long[numRegisters() >>> 3];
+    for (int n = 0; n < numEntries; n++) {
+      int index = entries[n] >>> VALUE_BITS;
+      registers[index >>> 3] |= (long) (entries[n] & VALUE_MASK) << ((index & 7) << 3);
+    }
+    entries = null;
+    numEntries = 0;
+  }
+
+  private int numRegisters() {
+    return 1 << precision;
   }
 
   public long count() {
+    int q = 64 - precision;
+    int[] histogram = new int[q + 2];
+
+    if (registers == null) {
+      histogram[0] = numRegisters() - numEntries;
+      for (int n = 0; n < numEntries; n++) {
+        histogram[entries[n] & VALUE_MASK]++;
+      }
+    } else {
+      for (long word : registers) {
+        for (int shift = 0; shift < 64; shift += 8) {
+          histogram[(int) (word >>> shift) & 0xff]++;
+        }
+      }
+    }
 
-    double sum = 0.0;
-    for (byte bucket : buckets) {
-      sum += Math.pow(2.0, -bucket);
+    double m = numRegisters();
+    // Horner evaluation of the sum over 2^-value, one step per distinct register value instead of one Math.pow per
+    // register, with the corrections for empty and saturated registers at both ends
+    double z = m * tau(1.0 - histogram[q + 1] / m);
+    for (int value = q; value >= 1; value--) {
+      z = 0.5 * (z + histogram[value]);
     }
-    long estimate = (long) (ALPHA_TIMES_MSQUARED * (1.0 / sum));
+    z += m * sigma(histogram[0] / m);
 
-    if (estimate < ESTIMATION_THRESHOLD) {
-      /* look for empty buckets */
-      int numEmptyBuckets = 0;
-      for (byte bucket : buckets) {
-        if (bucket == 0) {
-          numEmptyBuckets++;
+    return Math.round(m * m / (2.0 * Math.log(2.0) * z));
+  }
+
+  private static double sigma(double x) {
+    if (x == 1.0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double y = 1.0;
+    double z = x;
+    double previous;
+    do {
+      x *= x;
+      previous = z;
+      z += x * y;
+      y += y;
+    } while (z != previous);
+    return z;
+  }
+
+  private static double tau(double x) {
+    if (x == 0.0 || x == 1.0) {
+      return 0.0;
+    }
+    double y = 1.0;
+    double z = 1.0 - x;
+    double previous;
+    do {
+      x = Math.sqrt(x);
+      previous = z;
+      y *= 0.5;
+      z -= (1.0 - x) * (1.0 - x) * y;
+    } while (z != previous);
+    return z / 3.0;
+  }
+
+  /** merges another sketch of the same precision and seed into this one */
+  public void merge(HyperLogLog other) {
+    if (precision != other.precision || seed != other.seed) {
+      throw new IllegalArgumentException("Cannot merge sketches with different precisions or seeds");
+    }
+
+    if (other.registers == null) {
+      for (int n = 0; n < other.numEntries; n++) {
+        setRegister(other.entries[n] >>> VALUE_BITS, other.entries[n] & VALUE_MASK);
+      }
+      return;
+    }
+
+    if (registers == null) {
+      toDense();
+    }
+
+    long[] otherRegisters = other.registers;
+    for (int word = 0; word < registers.length; word++) {
+      registers[word] = max(registers[word], otherRegisters[word]);
+    }
+  }
+
+  /** bytewise maximum of two words of registers, register values stay below 128 */
+  private static long max(long x, long y) {
+    // the high bit of each byte is set where x >= y
+    long greaterOrEqual = (((x | HIGH_BITS) - y) & HIGH_BITS) >>> 7;
+    long mask = greaterOrEqual * 0xff;
+    return (x & mask) | (y & ~mask);
+  }
+
+  /**
+   * Writes the sketch compactly: sparse sketches as delta-encoded entries, dense sketches as 6-bit registers, as
+   * register values never exceed 65 - {@link #MIN_PRECISION}.
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeByte(precision);
+    out.writeInt(seed);
+
+    if (registers == null) {
+      out.writeByte(SPARSE);
+      writeVarInt(out, numEntries);
+      int previous = 0;
+      for (int n = 0; n < numEntries; n++) {
+        writeVarInt(out, entries[n] - previous);
+        previous = entries[n];
+      }
+      return;
+    }
+
+    out.writeByte(DENSE);
+    long buffer = 0;
+    int bufferedBits = 0;
+    for (long word : registers) {
+      for (int shift = 0; shift < 64; shift += 8) {
+        buffer |= ((word >>> shift) & VALUE_MASK) << bufferedBits;
+        bufferedBits += VALUE_BITS;
+        if (bufferedBits >= 8) {
+          out.writeByte((int) buffer);
+          buffer >>>= 8;
+          bufferedBits -= 8;
         }
       }
+    }
+    // 2^precision registers of 6 bits always fill whole bytes
+  }
+
+  public static HyperLogLog read(DataInput in) throws IOException {
+    int precision = in.readByte();
+    int seed = in.readInt();
+    HyperLogLog sketch = new HyperLogLog(precision, seed);
 
-      if (numEmptyBuckets != 0) {
-        estimate = (long) (NUMBER_OF_BUCKETS * Math.log((double) NUMBER_OF_BUCKETS / (double) numEmptyBuckets));
+    byte mode = in.readByte();
+    if (mode == SPARSE) {
+      int numEntries = readVarInt(in);
+      sketch.entries = new int[Math.max(4, numEntries)];
+      int previous = 0;
+      for (int n = 0; n < numEntries; n++) {
+        previous += readVarInt(in);
+        sketch.entries[n] = previous;
+      }
+      sketch.numEntries = numEntries;
+    } else if (mode == DENSE) {
+      sketch.toDense();
+      long[] registers = sketch.registers;
+      long buffer = 0;
+      int bufferedBits = 0;
+      for (int index = 0; index < sketch.numRegisters(); index++) {
+        if (bufferedBits < VALUE_BITS) {
+          buffer |= (long) (in.readByte() & 0xff) << bufferedBits;
+          bufferedBits += 8;
+        }
+        registers[index >>> 3] |= (buffer & VALUE_MASK) << ((index & 7) << 3);
+        buffer >>>= VALUE_BITS;
+        bufferedBits -= VALUE_BITS;
       }
+    } else {
+      throw new IOException("Unknown HyperLogLog representation: " + mode);
+    }
+    return sketch;
+  }
+
+  private static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
     }
+    out.writeByte(value);
+  }
 
-    return estimate;
+  private static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.readByte();
+      value |= (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
   }
-  
-  public void merge(HyperLogLog other) {
-    /* take the maximum of each bucket pair */
-    for (int index = 0; index < buckets.length; index++) {
-      if (buckets[index] < other.buckets[index]) {
-        buckets[index] = other.buckets[index];
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof HyperLogLog)) {
+      return false;
+    }
+    HyperLogLog other = (HyperLogLog) o;
+    if (precision != other.precision || seed != other.seed || isSparse() != other.isSparse()) {
+      return false;
+    }
+    if (registers != null) {
+      return Arrays.equals(registers, other.registers);
+    }
+    if (numEntries != other.numEntries) {
+      return false;
+    }
+    for (int n = 0; n < numEntries; n++) {
+      if (entries[n] != other.entries[n]) {
+        return false;
       }
     }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 31 * precision + seed;
+    if (registers != null) {
+      return 31 * hash + Arrays.hashCode(registers);
+    }
+    for (int n = 0; n < numEntries; n++) {
+      hash = 31 * hash + entries[n];
+    }
+    return hash;
   }
 
   @Override
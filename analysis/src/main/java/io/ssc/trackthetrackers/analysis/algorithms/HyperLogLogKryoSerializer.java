@@ -0,0 +1,60 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.algorithms;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes {@link HyperLogLog} sketches in their compact format where Flink falls back to Kryo, e.g. for sketches in
+ * fields of case classes. Register it via {@code ExecutionConfig.addDefaultKryoSerializer}.
+ */
+public class HyperLogLogKryoSerializer extends Serializer<HyperLogLog> {
+
+  @Override
+  public void write(Kryo kryo, Output output, HyperLogLog sketch) {
+    try {
+      sketch.write(new DataOutputStream(output));
+    } catch (IOException e) {
+      throw new KryoException(e);
+    }
+  }
+
+  @Override
+  public HyperLogLog read(Kryo kryo, Input input, Class<HyperLogLog> type) {
+    try {
+      return HyperLogLog.read(new DataInputStream(input));
+    } catch (IOException e) {
+      throw new KryoException(e);
+    }
+  }
+
+  @Override
+  public HyperLogLog copy(Kryo kryo, HyperLogLog original) {
+    return new HyperLogLog(original);
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.algorithms;
+
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+
+import java.io.IOException;
+
+/** serializes {@link HyperLogLog} sketches in their compact format instead of through Kryo's field-by-field fallback */
+public final class HyperLogLogSerializer extends TypeSerializer<HyperLogLog> {
+
+  public static final HyperLogLogSerializer INSTANCE = new HyperLogLogSerializer();
+
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  public boolean isImmutableType() {
+    return false;
+  }
+
+  @Override
+  public HyperLogLogSerializer duplicate() {
+    // stateless
+    return this;
+  }
+
+  @Override
+  public HyperLogLog createInstance() {
+    return new HyperLogLog();
+  }
+
+  @Override
+  public HyperLogLog copy(HyperLogLog from) {
+    return new HyperLogLog(from);
+  }
+
+  @Override
+  public HyperLogLog copy(HyperLogLog from, HyperLogLog reuse) {
+    return copy(from);
+  }
+
+  @Override
+  public int getLength() {
+    return -1;
+  }
+
+  @Override
+  public void serialize(HyperLogLog sketch, DataOutputView target) throws IOException {
+    sketch.write(target);
+  }
+
+  @Override
+  public HyperLogLog deserialize(DataInputView source) throws IOException {
+    return HyperLogLog.read(source);
+  }
+
+  @Override
+  public HyperLogLog deserialize(HyperLogLog reuse, DataInputView source) throws IOException {
+    return deserialize(source);
+  }
+
+  @Override
+  public void copy(DataInputView source, DataOutputView target) throws IOException {
+    serialize(deserialize(source), target);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof HyperLogLogSerializer;
+  }
+
+  public boolean canEqual(Object o) {
+    return o instanceof HyperLogLogSerializer;
+  }
+
+  @Override
+  public int hashCode() {
+    return HyperLogLogSerializer.class.hashCode();
+  }
+}
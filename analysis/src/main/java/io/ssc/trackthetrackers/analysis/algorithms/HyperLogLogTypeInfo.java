@@ -0,0 +1,80 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.algorithms;
+
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+
+/** type information for data sets of {@link HyperLogLog} sketches, hands out the {@link HyperLogLogSerializer} */
+public class HyperLogLogTypeInfo extends TypeInformation<HyperLogLog> {
+
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  public boolean isBasicType() {
+    return false;
+  }
+
+  @Override
+  public boolean isTupleType() {
+    return false;
+  }
+
+  @Override
+  public int getArity() {
+    return 1;
+  }
+
+  @Override
+  public int getTotalFields() {
+    return 1;
+  }
+
+  @Override
+  public Class<HyperLogLog> getTypeClass() {
+    return HyperLogLog.class;
+  }
+
+  @Override
+  public boolean isKeyType() {
+    return false;
+  }
+
+  @Override
+  public TypeSerializer<HyperLogLog> createSerializer(ExecutionConfig config) {
+    return HyperLogLogSerializer.INSTANCE;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof HyperLogLogTypeInfo;
+  }
+
+  @Override
+  public int hashCode() {
+    return HyperLogLogTypeInfo.class.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "HyperLogLog";
+  }
+}
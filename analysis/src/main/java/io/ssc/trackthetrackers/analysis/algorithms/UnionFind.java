@@ -0,0 +1,126 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Union-find over arbitrary int vertex ids, for computing connected components of a part of a graph in memory.
+ * Vertices get dense ids in the order in which they are first seen. The root of every set is its smallest vertex, so
+ * that the label of a component doesn't depend on the order of the unions.
+ */
+public class UnionFind {
+
+  private static final int EMPTY = -1;
+
+  // open-addressed table from vertices to their dense ids
+  private int[] slots;
+  private int mask;
+
+  private int[] vertices;
+  private int[] parents;
+  private int numVertices = 0;
+
+  public UnionFind() {
+    slots = new int[1 << 10];
+    Arrays.fill(slots, EMPTY);
+    mask = slots.length - 1;
+    vertices = new int[slots.length / 2];
+    parents = new int[slots.length / 2];
+  }
+
+  public void union(int vertex1, int vertex2) {
+    int root1 = find(idOf(vertex1));
+    int root2 = find(idOf(vertex2));
+
+    if (root1 != root2) {
+      if (vertices[root1] < vertices[root2]) {
+        parents[root2] = root1;
+      } else {
+        parents[root1] = root2;
+      }
+    }
+  }
+
+  public int numVertices() {
+    return numVertices;
+  }
+
+  /** the vertex with the given dense id */
+  public int vertex(int id) {
+    return vertices[id];
+  }
+
+  /** the smallest vertex in the set of the vertex with the given dense id */
+  public int label(int id) {
+    return vertices[find(id)];
+  }
+
+  private int find(int id) {
+    while (parents[id] != id) {
+      // path halving
+      parents[id] = parents[parents[id]];
+      id = parents[id];
+    }
+    return id;
+  }
+
+  private int idOf(int vertex) {
+    int slot = slotFor(vertex);
+    while (slots[slot] != EMPTY) {
+      if (vertices[slots[slot]] == vertex) {
+        return slots[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    int id = numVertices++;
+    slots[slot] = id;
+    vertices[id] = vertex;
+    parents[id] = id;
+
+    // keeps the load factor of the table at most one half
+    if (numVertices == vertices.length) {
+      grow();
+    }
+    return id;
+  }
+
+  private int slotFor(int vertex) {
+    int hash = vertex * 0x9e3779b9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  private void grow() {
+    slots = new int[slots.length * 2];
+    Arrays.fill(slots, EMPTY);
+    mask = slots.length - 1;
+    vertices = Arrays.copyOf(vertices, slots.length / 2);
+    parents = Arrays.copyOf(parents, slots.length / 2);
+
+    for (int id = 0; id < numVertices; id++) {
+      int slot = slotFor(vertices[id]);
+      while (slots[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = id;
+    }
+  }
+}
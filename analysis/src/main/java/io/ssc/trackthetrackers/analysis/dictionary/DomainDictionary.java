@@ -0,0 +1,234 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.dictionary;
+
+import io.ssc.trackthetrackers.commons.graph.OverflowIds;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A memory-mapped dictionary from payleveldomain ids back to the domains, built once from the pld-index. The domains
+ * are front-coded in blocks of 16 consecutive ids, which works well as the ids of the pld-index are assigned in
+ * alphabetical order. Lookups only touch a single block and are safe to call from multiple threads.
+ *
+ * The file holds the blocks, followed by the offsets of the blocks and a trailer with the number of ids, the number
+ * of blocks and the position of the offsets.
+ */
+public class DomainDictionary {
+
+  static final long MAGIC = 0x5454544444494331L; // "TTTDDIC1"
+
+  private static final int BLOCK_SHIFT = 4;
+  private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+  private static final int TRAILER_BYTES = 16;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final ByteBuffer buffer;
+  private final int numIds;
+  private final int offsetsStart;
+
+  public DomainDictionary(File dictionaryFile) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(dictionaryFile, "r");
+    try {
+      if (file.length() > Integer.MAX_VALUE) {
+        throw new IOException("Dictionary exceeds 2GB: " + dictionaryFile);
+      }
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+    } finally {
+      file.close();
+    }
+
+    if (buffer.getLong(0) != MAGIC) {
+      throw new IOException("Not a domain dictionary: " + dictionaryFile);
+    }
+    int trailer = buffer.capacity() - TRAILER_BYTES;
+    numIds = buffer.getInt(trailer);
+    offsetsStart = (int) buffer.getLong(trailer + 8);
+  }
+
+  /** @return the domain with the given id or null if there is none */
+  public String lookup(int id) {
+    if (id < 0 || id >= numIds) {
+      return null;
+    }
+
+    // absolute reads on a private view, so concurrent lookups don't interfere
+    ByteBuffer block = buffer.duplicate();
+    block.position((int) buffer.getLong(offsetsStart + 8 * (id >>> BLOCK_SHIFT)));
+
+    byte[] domain = new byte[readVInt(block)];
+    block.get(domain);
+    int length = domain.length;
+
+    for (int n = 0; n < (id & (BLOCK_SIZE - 1)); n++) {
+      int shared = readVInt(block);
+      int suffixLength = readVInt(block);
+      length = shared + suffixLength;
+      if (length > domain.length) {
+        domain = Arrays.copyOf(domain, Math.max(length, 2 * domain.length));
+      }
+      block.get(domain, shared, suffixLength);
+    }
+
+    return length == 0 ? null : new String(domain, 0, length, UTF8);
+  }
+
+  public int numIds() {
+    return numIds;
+  }
+
+  private static int readVInt(ByteBuffer buffer) {
+    int value = 0;
+    int shift = 0;
+    byte next;
+    do {
+      next = buffer.get();
+      value |= (next & 0x7f) << shift;
+      shift += 7;
+    } while (next < 0);
+    return value;
+  }
+
+  private static void writeVInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /**
+   * Builds a dictionary from the lines "domain\tid" of a pld-index, which must be sorted by ascending id like the
+   * webdatacommons file. Ids that don't occur are looked up as null. For tracking graphs with payleveldomains that
+   * are missing from the pld-index, use the consolidated index written by OverflowDomainsJob.
+   */
+  public static void build(BufferedReader pldIndex, File dictionaryFile) throws IOException {
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dictionaryFile),
+        1 << 20));
+
+    try {
+      out.writeLong(MAGIC);
+
+      long[] offsets = new long[1024];
+      int nextId = 0;
+      byte[] previous = new byte[0];
+
+      String line;
+      while ((line = pldIndex.readLine()) != null) {
+        int separator = line.indexOf('\t');
+        int id = Integer.parseInt(line.substring(separator + 1));
+        if (OverflowIds.isOverflowId(id)) {
+          throw new IllegalStateException("Overflow id " + id + " in the pld-index, build the dictionary from the " +
+              "consolidated index of OverflowDomainsJob, which has dense ids");
+        }
+        if (id < nextId) {
+          throw new IllegalStateException("pld-index must be sorted by ascending id, found " + id + " after " +
+              (nextId - 1));
+        }
+
+        byte[] domain = line.substring(0, separator).getBytes(UTF8);
+        // fill gaps with empty entries
+        for (; nextId <= id; nextId++) {
+          byte[] entry = nextId == id ? domain : new byte[0];
+
+          if ((nextId & (BLOCK_SIZE - 1)) == 0) {
+            int block = nextId >>> BLOCK_SHIFT;
+            if (block == offsets.length) {
+              offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            offsets[block] = out.size();
+            writeVInt(out, entry.length);
+            out.write(entry);
+          } else {
+            int shared = sharedPrefix(previous, entry);
+            writeVInt(out, shared);
+            writeVInt(out, entry.length - shared);
+            out.write(entry, shared, entry.length - shared);
+          }
+          previous = entry;
+        }
+      }
+
+      // DataOutputStream.size() overflows beyond 2GB
+      if (out.size() < 0) {
+        throw new IOException("Dictionary exceeds 2GB");
+      }
+
+      int numBlocks = (nextId + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+      long offsetsStart = out.size();
+      for (int block = 0; block < numBlocks; block++) {
+        out.writeLong(offsets[block]);
+      }
+
+      out.writeInt(nextId);
+      out.writeInt(numBlocks);
+      out.writeLong(offsetsStart);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static int sharedPrefix(byte[] first, byte[] second) {
+    int length = Math.min(first.length, second.length);
+    int shared = 0;
+    while (shared < length && first[shared] == second[shared]) {
+      shared++;
+    }
+    return shared;
+  }
+
+  /** usage: DomainDictionary pldIndexFile[.gz] dictionaryFile */
+  public static void main(String[] args) throws IOException {
+    File pldIndexFile = new File(args[0]);
+    File dictionaryFile = new File(args[1]);
+
+    InputStream in = new FileInputStream(pldIndexFile);
+    if (pldIndexFile.getName().endsWith(".gz")) {
+      in = new GZIPInputStream(in);
+    }
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8), 1 << 20);
+    try {
+      build(reader, dictionaryFile);
+    } finally {
+      reader.close();
+    }
+
+    DomainDictionary dictionary = new DomainDictionary(dictionaryFile);
+    System.out.println("Wrote " + dictionary.numIds() + " ids, " + dictionaryFile.length() + " bytes to " +
+        dictionaryFile);
+  }
+}
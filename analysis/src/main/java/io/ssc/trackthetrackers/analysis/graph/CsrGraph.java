@@ -0,0 +1,464 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListReader;
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListWriter;
+import io.ssc.trackthetrackers.commons.graph.OverflowIds;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A graph in compressed sparse row layout, memory-mapped read-only from a flat binary file. The neighbours of vertex
+ * v are the targets from {@link #firstEdge(int)} v up to {@link #firstEdge(int)} v + 1, in ascending order. Reads are
+ * absolute only, so a single instance can be shared by many threads.
+ *
+ * The file starts with {@link #MAGIC}, the number of vertices and the number of edges, followed by numVertices + 1
+ * offsets as longs and numEdges targets as ints.
+ */
+public class CsrGraph {
+
+  static final long MAGIC = 0x5454544353523031L; // "TTTCSR01"
+
+  private static final int HEADER_BYTES = 24;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // a single MappedByteBuffer can't exceed 2GB
+  private static final int SEGMENT_BITS = 28;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+  private static final int MAX_VERTICES = (Integer.MAX_VALUE >> 3) - 1;
+
+  private final int numVertices;
+  private final long numEdges;
+  private final ByteBuffer offsets;
+  private final ByteBuffer[] targets;
+
+  public CsrGraph(File csrFile) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(csrFile, "r");
+    try {
+      if (file.readLong() != MAGIC) {
+        throw new IOException("Not a CSR graph: " + csrFile);
+      }
+      numVertices = file.readInt();
+      file.readInt();
+      numEdges = file.readLong();
+
+      if (file.length() != fileLength(numVertices, numEdges)) {
+        throw new IOException("Truncated CSR graph: " + csrFile);
+      }
+
+      FileChannel channel = file.getChannel();
+      offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 8L * (numVertices + 1));
+      targets = mapTargets(channel, FileChannel.MapMode.READ_ONLY, numVertices, numEdges);
+    } finally {
+      // the mappings stay valid after the channel is closed
+      file.close();
+    }
+  }
+
+  public int numVertices() {
+    return numVertices;
+  }
+
+  public long numEdges() {
+    return numEdges;
+  }
+
+  /** index of the first edge of the vertex, the edges of v end at firstEdge(v + 1) */
+  public long firstEdge(int vertex) {
+    return offsets.getLong(vertex << 3);
+  }
+
+  public int degree(int vertex) {
+    return (int) (firstEdge(vertex + 1) - firstEdge(vertex));
+  }
+
+  public int target(long edge) {
+    return targets[(int) (edge >>> SEGMENT_BITS)].getInt((int) (edge & SEGMENT_MASK) << 2);
+  }
+
+  /** copies the neighbours of the vertex into the buffer, which must hold at least degree(vertex) entries */
+  public int neighbours(int vertex, int[] buffer) {
+    long first = firstEdge(vertex);
+    int degree = (int) (firstEdge(vertex + 1) - first);
+    for (int n = 0; n < degree; n++) {
+      buffer[n] = target(first + n);
+    }
+    return degree;
+  }
+
+  private static long fileLength(int numVertices, long numEdges) {
+    return HEADER_BYTES + 8L * (numVertices + 1) + 4L * numEdges;
+  }
+
+  private static ByteBuffer[] mapTargets(FileChannel channel, FileChannel.MapMode mode, int numVertices,
+      long numEdges) throws IOException {
+    long start = HEADER_BYTES + 8L * (numVertices + 1);
+    int numSegments = (int) Math.max(1, (numEdges + SEGMENT_MASK) >>> SEGMENT_BITS);
+
+    ByteBuffer[] segments = new ByteBuffer[numSegments];
+    for (int n = 0; n < numSegments; n++) {
+      long firstEdge = (long) n << SEGMENT_BITS;
+      long segmentEdges = Math.min(numEdges - firstEdge, 1L << SEGMENT_BITS);
+      segments[n] = channel.map(mode, start + 4 * firstEdge, 4 * segmentEdges);
+    }
+    return segments;
+  }
+
+  /**
+   * Converts files written by {@link AdjacencyListWriter} into a CSR graph. The rows hold the out-neighbours of each
+   * vertex, or the in-neighbours if transpose is set, regardless of the direction the input was written in. Needs
+   * two passes over the input and four bytes of heap per vertex. If numVertices is not positive, it is derived from
+   * the largest vertex id seen.
+   */
+  public static void build(List<File> adjacencyFiles, File csrFile, boolean transpose, int numVertices)
+      throws IOException {
+    build(adjacencyFiles, csrFile, transpose, numVertices, null);
+  }
+
+  /**
+   * Like {@link #build(List, File, boolean, int)}, but replaces the overflow ids of payleveldomains missing from the
+   * pld-index with the dense ids assigned by OverflowDomainsJob, so that the vertices match its consolidated index.
+   */
+  public static void build(List<File> adjacencyFiles, File csrFile, boolean transpose, int numVertices,
+      OverflowIds overflowIds) throws IOException {
+    build(new AdjacencyListInput(adjacencyFiles, transpose, overflowIds), csrFile, numVertices);
+  }
+
+  /**
+   * Like {@link #build(List, File, boolean, int)}, but reads tab separated "source\ttarget" lines, such as the
+   * hyperlink graph of the webdatacommons payleveldomains. Files ending in .gz are decompressed on the fly.
+   */
+  public static void buildFromEdgeList(List<File> edgeFiles, File csrFile, boolean transpose, int numVertices)
+      throws IOException {
+    build(new EdgeListInput(edgeFiles, transpose), csrFile, numVertices);
+  }
+
+  private static void build(EdgeInput input, File csrFile, int numVertices) throws IOException {
+
+    // first pass: degree of every row
+    DegreeCounter degreeCounter = new DegreeCounter(numVertices);
+    input.scan(degreeCounter);
+    int[] degrees = degreeCounter.degrees;
+    long numEdges = degreeCounter.numEdges;
+
+    if (numVertices <= 0) {
+      numVertices = degreeCounter.maxVertex + 1;
+    }
+
+    RandomAccessFile file = new RandomAccessFile(csrFile, "rw");
+    try {
+      file.setLength(0);
+      file.setLength(fileLength(numVertices, numEdges));
+      file.writeLong(MAGIC);
+      file.writeInt(numVertices);
+      file.writeInt(0);
+      file.writeLong(numEdges);
+
+      FileChannel channel = file.getChannel();
+      MappedByteBuffer offsets = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, 8L * (numVertices + 1));
+      ByteBuffer[] targets = mapTargets(channel, FileChannel.MapMode.READ_WRITE, numVertices, numEdges);
+
+      long offset = 0;
+      for (int vertex = 0; vertex < numVertices; vertex++) {
+        offsets.putLong(vertex << 3, offset);
+        offset += degrees[vertex];
+        // from now on, the degrees count the targets already placed in each row
+        degrees[vertex] = 0;
+      }
+      offsets.putLong(numVertices << 3, offset);
+
+      // second pass: place the targets
+      input.scan(new TargetPlacer(offsets, targets, degrees));
+
+      // rows assembled from several lists are not necessarily in order
+      int[] row = new int[16];
+      for (int vertex = 0; vertex < numVertices; vertex++) {
+        long first = offsets.getLong(vertex << 3);
+        int degree = (int) (offsets.getLong((vertex + 1) << 3) - first);
+        if (degree > row.length) {
+          row = new int[Math.max(degree, row.length << 1)];
+        }
+
+        boolean sorted = true;
+        for (int n = 0; n < degree; n++) {
+          long edge = first + n;
+          row[n] = targets[(int) (edge >>> SEGMENT_BITS)].getInt((int) (edge & SEGMENT_MASK) << 2);
+          sorted &= n == 0 || row[n - 1] <= row[n];
+        }
+        if (!sorted) {
+          Arrays.sort(row, 0, degree);
+          for (int n = 0; n < degree; n++) {
+            long edge = first + n;
+            targets[(int) (edge >>> SEGMENT_BITS)].putInt((int) (edge & SEGMENT_MASK) << 2, row[n]);
+          }
+        }
+      }
+
+      offsets.force();
+      for (ByteBuffer segment : targets) {
+        ((MappedByteBuffer) segment).force();
+      }
+    } finally {
+      file.close();
+    }
+  }
+
+  /** receives every edge of the input as a target in a row of the CSR graph */
+  private interface EdgeHandler {
+    void edge(int row, int target);
+  }
+
+  /** the input of a build, which is read once per pass */
+  private interface EdgeInput {
+    void scan(EdgeHandler handler) throws IOException;
+  }
+
+  private static class DegreeCounter implements EdgeHandler {
+
+    private final int numVertices;
+    private int[] degrees;
+    private int maxVertex = -1;
+    private long numEdges = 0;
+
+    DegreeCounter(int numVertices) {
+      this.numVertices = numVertices;
+      degrees = new int[Math.max(numVertices, 1024)];
+    }
+
+    @Override
+    public void edge(int row, int target) {
+      int largest = Math.max(row, target);
+      if (largest > maxVertex) {
+        if (numVertices > 0 && largest >= numVertices) {
+          throw new IllegalStateException("Vertex " + largest + " exceeds numVertices " + numVertices);
+        }
+        if (largest > MAX_VERTICES) {
+          throw new IllegalStateException("Too many vertices for a single offsets mapping: " + largest);
+        }
+        if (largest >= degrees.length) {
+          degrees = Arrays.copyOf(degrees, Math.max(largest + 1, degrees.length + (degrees.length >> 1)));
+        }
+        maxVertex = largest;
+      }
+      degrees[row]++;
+      numEdges++;
+    }
+  }
+
+  private static class TargetPlacer implements EdgeHandler {
+
+    private final ByteBuffer offsets;
+    private final ByteBuffer[] targets;
+    private final int[] placed;
+
+    TargetPlacer(ByteBuffer offsets, ByteBuffer[] targets, int[] placed) {
+      this.offsets = offsets;
+      this.targets = targets;
+      this.placed = placed;
+    }
+
+    @Override
+    public void edge(int row, int target) {
+      long edge = offsets.getLong(row << 3) + placed[row]++;
+      targets[(int) (edge >>> SEGMENT_BITS)].putInt((int) (edge & SEGMENT_MASK) << 2, target);
+    }
+  }
+
+  private static class AdjacencyListInput implements EdgeInput {
+
+    private final List<File> adjacencyFiles;
+    private final boolean transpose;
+    private final OverflowIds overflowIds;
+
+    AdjacencyListInput(List<File> adjacencyFiles, boolean transpose, OverflowIds overflowIds) {
+      this.adjacencyFiles = adjacencyFiles;
+      this.transpose = transpose;
+      this.overflowIds = overflowIds;
+    }
+
+    @Override
+    public void scan(EdgeHandler handler) throws IOException {
+      for (File adjacencyFile : adjacencyFiles) {
+        AdjacencyListReader reader = new AdjacencyListReader(new FileInputStream(adjacencyFile));
+        try {
+          boolean rowIsVertex = isRowVertex(reader, transpose);
+          while (reader.next()) {
+            int numNeighbours = reader.numNeighbours();
+            int vertex = remap(reader.vertex(), overflowIds);
+            int[] neighbours = remap(reader.neighbours(), numNeighbours, overflowIds);
+            for (int n = 0; n < numNeighbours; n++) {
+              if (rowIsVertex) {
+                handler.edge(vertex, neighbours[n]);
+              } else {
+                handler.edge(neighbours[n], vertex);
+              }
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    }
+  }
+
+  private static class EdgeListInput implements EdgeInput {
+
+    private final List<File> edgeFiles;
+    private final boolean transpose;
+
+    EdgeListInput(List<File> edgeFiles, boolean transpose) {
+      this.edgeFiles = edgeFiles;
+      this.transpose = transpose;
+    }
+
+    @Override
+    public void scan(EdgeHandler handler) throws IOException {
+      for (File edgeFile : edgeFiles) {
+        InputStream in = new FileInputStream(edgeFile);
+        if (edgeFile.getName().endsWith(".gz")) {
+          in = new GZIPInputStream(in, 1 << 16);
+        }
+        BufferedReader lines = new BufferedReader(new InputStreamReader(in, UTF8), 1 << 16);
+        try {
+          String line;
+          while ((line = lines.readLine()) != null) {
+            int separator = line.indexOf('\t');
+            if (separator == -1) {
+              continue;
+            }
+            int source = Integer.parseInt(line.substring(0, separator));
+            int target = Integer.parseInt(line.substring(separator + 1).trim());
+            if (transpose) {
+              handler.edge(target, source);
+            } else {
+              handler.edge(source, target);
+            }
+          }
+        } finally {
+          lines.close();
+        }
+      }
+    }
+  }
+
+  private static int remap(int vertex, OverflowIds overflowIds) {
+    if (overflowIds != null) {
+      return overflowIds.denseIdFor(vertex);
+    }
+    if (OverflowIds.isOverflowId(vertex)) {
+      throw new IllegalStateException("Vertex " + vertex + " is an overflow id, pass the overflow ids written by " +
+          "OverflowDomainsJob");
+    }
+    return vertex;
+  }
+
+  /** remaps in place, the reader refills its buffer on the next list anyway */
+  private static int[] remap(int[] neighbours, int numNeighbours, OverflowIds overflowIds) {
+    for (int n = 0; n < numNeighbours; n++) {
+      neighbours[n] = remap(neighbours[n], overflowIds);
+    }
+    return neighbours;
+  }
+
+  /** whether the lists of this reader are rows of the CSR graph, or have to be scattered over the rows */
+  private static boolean isRowVertex(AdjacencyListReader reader, boolean transpose) {
+    boolean outNeighbours = reader.direction() == AdjacencyListWriter.OUT_NEIGHBOURS;
+    return outNeighbours != transpose;
+  }
+
+  /** the data files of a job output directory, or the file itself */
+  static List<File> adjacencyFiles(File fileOrDirectory) {
+    List<File> files = new ArrayList<File>();
+    if (fileOrDirectory.isDirectory()) {
+      File[] children = fileOrDirectory.listFiles();
+      Arrays.sort(children);
+      for (File child : children) {
+        if (child.isFile() && !child.getName().startsWith("_") && !child.getName().startsWith(".")) {
+          files.add(child);
+        }
+      }
+    } else {
+      files.add(fileOrDirectory);
+    }
+    return files;
+  }
+
+  /**
+   * usage: CsrGraph [--transpose] [--numVertices n] [--overflowIds overflowIdsFile] [--edgeList]
+   * adjacencyFileOrDirectory csrFile
+   *
+   * With --edgeList, the input holds tab separated edges instead of binary adjacency lists. The webdatacommons
+   * hyperlink graph becomes the input of ParallelPageRank with:
+   *
+   * CsrGraph --edgeList --transpose pld-arc.gz pld-arc-transposed.csr
+   */
+  public static void main(String[] args) throws IOException {
+    boolean transpose = false;
+    int numVertices = 0;
+    OverflowIds overflowIds = null;
+    boolean edgeList = false;
+
+    int n = 0;
+    while (args[n].startsWith("--")) {
+      if ("--transpose".equals(args[n])) {
+        transpose = true;
+      } else if ("--numVertices".equals(args[n])) {
+        numVertices = Integer.parseInt(args[++n]);
+      } else if ("--overflowIds".equals(args[n])) {
+        overflowIds = OverflowIds.read(new FileInputStream(args[++n]));
+      } else if ("--edgeList".equals(args[n])) {
+        edgeList = true;
+      } else {
+        throw new IllegalArgumentException("Unknown option " + args[n]);
+      }
+      n++;
+    }
+    File input = new File(args[n]);
+    File csrFile = new File(args[n + 1]);
+
+    if (edgeList) {
+      if (overflowIds != null) {
+        throw new IllegalArgumentException("--overflowIds only applies to adjacency lists");
+      }
+      buildFromEdgeList(adjacencyFiles(input), csrFile, transpose, numVertices);
+    } else {
+      build(adjacencyFiles(input), csrFile, transpose, numVertices, overflowIds);
+    }
+
+    CsrGraph graph = new CsrGraph(csrFile);
+    System.out.println("Wrote " + graph.numVertices() + " vertices, " + graph.numEdges() + " edges, " +
+        csrFile.length() + " bytes to " + csrFile);
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Weakly connected components of a {@link CsrGraph} on a single machine, with a concurrent union-find instead of
+ * label propagation, so the running time doesn't depend on the diameter of the graph. All threads link the
+ * endpoints of their edges into one shared forest. A root is only ever linked below a smaller root with a
+ * compare-and-set, therefore the root of a component is its smallest vertex and the forest stays acyclic under
+ * concurrent unions.
+ */
+public class ParallelConnectedComponents {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final CsrGraph graph;
+  private final int numVertices;
+  private final int numThreads;
+
+  private final AtomicIntegerArray parents;
+
+  public ParallelConnectedComponents(CsrGraph graph, int numThreads) {
+    this.graph = graph;
+    this.numThreads = numThreads;
+    numVertices = graph.numVertices();
+    parents = new AtomicIntegerArray(numVertices);
+  }
+
+  /** @return the component of every vertex, labelled by its smallest vertex */
+  public int[] run() {
+    for (int vertex = 0; vertex < numVertices; vertex++) {
+      parents.set(vertex, vertex);
+    }
+
+    ParallelVertices vertices = new ParallelVertices(numVertices, numThreads);
+    try {
+      vertices.sum(new ParallelVertices.Chunk() {
+        @Override
+        public double process(int from, int to) {
+          for (int vertex = from; vertex < to; vertex++) {
+            long firstEdge = graph.firstEdge(vertex);
+            long end = firstEdge + graph.degree(vertex);
+            for (long edge = firstEdge; edge < end; edge++) {
+              union(vertex, graph.target(edge));
+            }
+          }
+          return 0;
+        }
+      });
+
+      final int[] components = new int[numVertices];
+      vertices.sum(new ParallelVertices.Chunk() {
+        @Override
+        public double process(int from, int to) {
+          for (int vertex = from; vertex < to; vertex++) {
+            components[vertex] = find(vertex);
+          }
+          return 0;
+        }
+      });
+      return components;
+    } finally {
+      vertices.close();
+    }
+  }
+
+  private void union(int vertex1, int vertex2) {
+    while (true) {
+      int root1 = find(vertex1);
+      int root2 = find(vertex2);
+      if (root1 == root2) {
+        return;
+      }
+      // fails if another thread linked the larger root in the meantime, we retry from its new root then
+      if (root1 > root2 ? parents.compareAndSet(root1, root1, root2) : parents.compareAndSet(root2, root2, root1)) {
+        return;
+      }
+    }
+  }
+
+  private int find(int vertex) {
+    int parent = parents.get(vertex);
+    while (parent != vertex) {
+      int grandparent = parents.get(parent);
+      // path halving, losing the race only costs a longer path
+      parents.compareAndSet(vertex, parent, grandparent);
+      vertex = grandparent;
+      parent = parents.get(vertex);
+    }
+    return vertex;
+  }
+
+  /**
+   * @return the number of components per component size. Vertices without any edges are not part of the edge list
+   * and therefore don't count as components of size one.
+   */
+  public SortedMap<Integer, Long> sizeDistribution(int[] components) {
+    int[] sizes = new int[numVertices];
+    for (int vertex = 0; vertex < numVertices; vertex++) {
+      sizes[components[vertex]]++;
+    }
+
+    SortedMap<Integer, Long> distribution = new TreeMap<Integer, Long>();
+    for (int vertex = 0; vertex < numVertices; vertex++) {
+      int size = sizes[vertex];
+      if (size > 1 || (size == 1 && graph.degree(vertex) > 0)) {
+        Long numComponents = distribution.get(size);
+        distribution.put(size, numComponents == null ? 1L : numComponents + 1);
+      }
+    }
+    return distribution;
+  }
+
+  /** writes "(size,numComponents)" lines, like the flink job in ComponentSizeDistribution */
+  public static void writeSizeDistribution(SortedMap<Integer, Long> distribution, File output) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), UTF8));
+    try {
+      for (Map.Entry<Integer, Long> entry : distribution.entrySet()) {
+        writer.write("(" + entry.getKey() + "," + entry.getValue() + ")\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** usage: ParallelConnectedComponents [--threads n] csrFile outputFile */
+  public static void main(String[] args) throws IOException {
+    int numThreads = Runtime.getRuntime().availableProcessors();
+
+    int n = 0;
+    while (args[n].startsWith("--")) {
+      String option = args[n++];
+      if ("--threads".equals(option)) {
+        numThreads = Integer.parseInt(args[n++]);
+      } else {
+        throw new IllegalArgumentException("Unknown option " + option);
+      }
+    }
+
+    ParallelConnectedComponents connectedComponents =
+        new ParallelConnectedComponents(new CsrGraph(new File(args[n])), numThreads);
+    int[] components = connectedComponents.run();
+    writeSizeDistribution(connectedComponents.sizeDistribution(components), new File(args[n + 1]));
+  }
+}
@@ -0,0 +1,346 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import io.ssc.trackthetrackers.analysis.dictionary.DomainDictionary;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * HyperBall (Boldi and Vigna) on a single machine: estimates the neighbourhood function of a graph and the harmonic
+ * and closeness centrality of its vertices with one HyperLogLog counter per vertex. After iteration t, the counter
+ * of v holds the vertices reachable from v in at most t steps along the rows of the {@link CsrGraph}. A graph with
+ * out-neighbour rows therefore measures how far a vertex reaches, a transposed graph gives the classic centralities
+ * over the vertices that reach v.
+ *
+ * The counters of all vertices live in one long array. A register takes a byte, so that eight registers of two
+ * counters can be merged with a handful of broadword operations. Only vertices with a neighbour whose counter
+ * changed in the previous iteration are recomputed.
+ */
+public class ParallelHyperBall {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final long HIGH_BITS = 0x8080808080808080L;
+  private static final long LOW_BITS = 0x0101010101010101L;
+
+  private static final long SEED = 0x9e3779b97f4a7c15L;
+
+  private final CsrGraph graph;
+  private final int numVertices;
+  private final int numThreads;
+
+  private final int log2m;
+  private final int numRegisters;
+  private final int longsPerCounter;
+  private final double alphaTimesMSquared;
+  private final double[] reciprocalPowersOfTwo = new double[64];
+
+  private final long[] counters;
+  private final long[] nextCounters;
+  private final double[] counts;
+  private boolean[] modified;
+  private boolean[] nextModified;
+
+  private final double[] harmonicCentralities;
+  private final double[] sumsOfDistances;
+
+  /** @param log2m logarithm of the number of registers per counter, between 4 and 16 */
+  public ParallelHyperBall(CsrGraph graph, int log2m, int numThreads) {
+    if (log2m < 4 || log2m > 16) {
+      throw new IllegalArgumentException("log2m must be between 4 and 16");
+    }
+    this.graph = graph;
+    this.log2m = log2m;
+    this.numThreads = numThreads;
+    numVertices = graph.numVertices();
+    numRegisters = 1 << log2m;
+    longsPerCounter = numRegisters / 8;
+
+    if ((long) numVertices * longsPerCounter > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Counters of " + numVertices + " vertices exceed a single array, " +
+          "choose a smaller log2m");
+    }
+
+    double alpha = numRegisters == 16 ? 0.673 : numRegisters == 32 ? 0.697 : numRegisters == 64 ? 0.709 :
+        0.7213 / (1 + 1.079 / numRegisters);
+    alphaTimesMSquared = alpha * numRegisters * numRegisters;
+    for (int n = 0; n < reciprocalPowersOfTwo.length; n++) {
+      reciprocalPowersOfTwo[n] = 1.0 / (1L << n);
+    }
+
+    counters = new long[numVertices * longsPerCounter];
+    nextCounters = new long[numVertices * longsPerCounter];
+    counts = new double[numVertices];
+    modified = new boolean[numVertices];
+    nextModified = new boolean[numVertices];
+    harmonicCentralities = new double[numVertices];
+    sumsOfDistances = new double[numVertices];
+  }
+
+  /** @return the neighbourhood function, the n-th entry estimates the number of pairs within distance n */
+  public double[] run(int maxIterations) {
+
+    ParallelVertices vertices = new ParallelVertices(numVertices, numThreads);
+    try {
+      double pairs = vertices.sum(new ParallelVertices.Chunk() {
+        @Override
+        public double process(int from, int to) {
+          double pairs = 0;
+          for (int vertex = from; vertex < to; vertex++) {
+            observe(vertex, vertex);
+            counts[vertex] = count(counters, vertex * longsPerCounter);
+            modified[vertex] = true;
+            pairs += counts[vertex];
+          }
+          return pairs;
+        }
+      });
+
+      double[] neighbourhoodFunction = new double[maxIterations + 1];
+      neighbourhoodFunction[0] = pairs;
+      System.out.println("Distance 0, " + pairs + " pairs");
+
+      for (int iteration = 1; iteration <= maxIterations; iteration++) {
+        final int distance = iteration;
+
+        // counters are only read in this phase and only the recomputed ones are written to the next counters
+        final double newPairs = vertices.sum(new ParallelVertices.Chunk() {
+          @Override
+          public double process(int from, int to) {
+            double newPairs = 0;
+            for (int vertex = from; vertex < to; vertex++) {
+              newPairs += update(vertex, distance);
+            }
+            return newPairs;
+          }
+        });
+
+        // make the changed counters visible for the next iteration
+        final double changedVertices = vertices.sum(new ParallelVertices.Chunk() {
+          @Override
+          public double process(int from, int to) {
+            int changedVertices = 0;
+            for (int vertex = from; vertex < to; vertex++) {
+              if (nextModified[vertex]) {
+                int offset = vertex * longsPerCounter;
+                System.arraycopy(nextCounters, offset, counters, offset, longsPerCounter);
+                changedVertices++;
+              }
+            }
+            return changedVertices;
+          }
+        });
+
+        boolean[] swap = modified;
+        modified = nextModified;
+        nextModified = swap;
+
+        pairs += newPairs;
+        neighbourhoodFunction[iteration] = pairs;
+        System.out.println("Distance " + iteration + ", " + pairs + " pairs, " + (long) changedVertices +
+            " counters changed");
+
+        if (changedVertices == 0) {
+          return Arrays.copyOf(neighbourhoodFunction, iteration + 1);
+        }
+      }
+      return neighbourhoodFunction;
+    } finally {
+      vertices.close();
+    }
+  }
+
+  /** merges the changed counters of the neighbours into the counter of the vertex, returns the increase */
+  private double update(int vertex, int distance) {
+    nextModified[vertex] = false;
+
+    int offset = vertex * longsPerCounter;
+    boolean copied = false;
+    boolean changed = false;
+
+    long end = graph.firstEdge(vertex + 1);
+    for (long edge = graph.firstEdge(vertex); edge < end; edge++) {
+      int neighbour = graph.target(edge);
+      if (!modified[neighbour]) {
+        continue;
+      }
+      if (!copied) {
+        System.arraycopy(counters, offset, nextCounters, offset, longsPerCounter);
+        copied = true;
+      }
+      changed |= mergeInto(nextCounters, offset, counters, neighbour * longsPerCounter);
+    }
+
+    if (!changed) {
+      return 0;
+    }
+
+    double previousCount = counts[vertex];
+    double count = count(nextCounters, offset);
+    counts[vertex] = count;
+    nextModified[vertex] = true;
+
+    // the counter grew by the vertices at exactly this distance
+    double newVertices = Math.max(0, count - previousCount);
+    harmonicCentralities[vertex] += newVertices / distance;
+    sumsOfDistances[vertex] += newVertices * distance;
+    return newVertices;
+  }
+
+  /** register-wise maximum of two counters, broadword over eight byte-sized registers at a time */
+  private boolean mergeInto(long[] target, int targetOffset, long[] source, int sourceOffset) {
+    boolean changed = false;
+    for (int n = 0; n < longsPerCounter; n++) {
+      long x = target[targetOffset + n];
+      long y = source[sourceOffset + n];
+      // registers are below 128, so the high bit of each byte survives the subtraction iff x >= y
+      long xAtLeastY = (((x | HIGH_BITS) - y) & HIGH_BITS) >>> 7;
+      long mask = xAtLeastY * 0xff;
+      long max = (x & mask) | (y & ~mask);
+      if (max != x) {
+        target[targetOffset + n] = max;
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  private void observe(int vertex, long item) {
+    long hash = mix(item + SEED);
+    int register = (int) (hash >>> (64 - log2m));
+    // position of the first one bit in the remaining bits, at most 65 - log2m
+    int rank = Long.numberOfLeadingZeros((hash << log2m) | (1L << (log2m - 1))) + 1;
+
+    int index = vertex * longsPerCounter + (register >>> 3);
+    int shift = (register & 7) << 3;
+    long current = (counters[index] >>> shift) & 0xff;
+    if (rank > current) {
+      counters[index] = (counters[index] & ~(0xffL << shift)) | ((long) rank << shift);
+    }
+  }
+
+  private double count(long[] registers, int offset) {
+    double sum = 0;
+    int zeros = 0;
+    for (int n = 0; n < longsPerCounter; n++) {
+      long word = registers[offset + n];
+      for (int shift = 0; shift < 64; shift += 8) {
+        int register = (int) ((word >>> shift) & 0xff);
+        sum += reciprocalPowersOfTwo[register];
+        if (register == 0) {
+          zeros++;
+        }
+      }
+    }
+
+    double estimate = alphaTimesMSquared / sum;
+    if (estimate <= 2.5 * numRegisters && zeros != 0) {
+      // linear counting for small cardinalities
+      estimate = numRegisters * Math.log((double) numRegisters / zeros);
+    }
+    return estimate;
+  }
+
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  public double harmonicCentrality(int vertex) {
+    return harmonicCentralities[vertex];
+  }
+
+  /** the reciprocal of the sum of the distances to all reachable vertices, 0 for vertices which reach nothing */
+  public double closenessCentrality(int vertex) {
+    return sumsOfDistances[vertex] == 0 ? 0 : 1.0 / sumsOfDistances[vertex];
+  }
+
+  /** writes "distance\tpairs" lines */
+  public static void writeNeighbourhoodFunction(double[] neighbourhoodFunction, File output) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), UTF8));
+    try {
+      for (int distance = 0; distance < neighbourhoodFunction.length; distance++) {
+        writer.write(distance + "\t" + neighbourhoodFunction[distance] + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** writes "domain\tharmonic\tcloseness" lines, the vertex id is used if there is no dictionary */
+  public void writeCentralities(DomainDictionary dictionary, File output) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), UTF8), 1 << 20);
+    try {
+      for (int vertex = 0; vertex < numVertices; vertex++) {
+        String label = dictionary != null ? dictionary.lookup(vertex) : String.valueOf(vertex);
+        if (label != null) {
+          writer.write(label + "\t" + harmonicCentrality(vertex) + "\t" + closenessCentrality(vertex) + "\n");
+        }
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * usage: ParallelHyperBall [--threads n] [--log2m p] [--maxIterations n] [--dictionary domainDictionaryFile]
+   * csrFile outputDirectory
+   */
+  public static void main(String[] args) throws IOException {
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    int log2m = 6;
+    int maxIterations = 100;
+    DomainDictionary dictionary = null;
+
+    int n = 0;
+    while (args[n].startsWith("--")) {
+      String option = args[n++];
+      if ("--threads".equals(option)) {
+        numThreads = Integer.parseInt(args[n++]);
+      } else if ("--log2m".equals(option)) {
+        log2m = Integer.parseInt(args[n++]);
+      } else if ("--maxIterations".equals(option)) {
+        maxIterations = Integer.parseInt(args[n++]);
+      } else if ("--dictionary".equals(option)) {
+        dictionary = new DomainDictionary(new File(args[n++]));
+      } else {
+        throw new IllegalArgumentException("Unknown option " + option);
+      }
+    }
+
+    ParallelHyperBall hyperBall = new ParallelHyperBall(new CsrGraph(new File(args[n])), log2m, numThreads);
+    File outputDirectory = new File(args[n + 1]);
+    outputDirectory.mkdirs();
+
+    writeNeighbourhoodFunction(hyperBall.run(maxIterations), new File(outputDirectory, "neighbourhoodFunction.tsv"));
+    hyperBall.writeCentralities(dictionary, new File(outputDirectory, "centralities.tsv"));
+  }
+}
@@ -0,0 +1,186 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import io.ssc.trackthetrackers.analysis.dictionary.DomainDictionary;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * PageRank on a single machine, for graphs whose rank vectors fit into memory. It pulls the rank contributions along
+ * the in-links of a transposed {@link CsrGraph}, so every thread only writes the ranks of its own vertices and no
+ * synchronization is needed. The rank of dangling vertices is distributed uniformly, like in DanglingPageRank, and the
+ * iteration stops once the L1 norm of the change of the rank vector drops below epsilon.
+ */
+public class ParallelPageRank {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final CsrGraph inLinks;
+  private final int numVertices;
+  private final int numThreads;
+  private final int[] outDegrees;
+
+  /** @param inLinks a graph converted with --transpose, its rows hold the in-neighbours of a vertex */
+  public ParallelPageRank(CsrGraph inLinks, int numThreads) {
+    this.inLinks = inLinks;
+    this.numThreads = numThreads;
+    numVertices = inLinks.numVertices();
+
+    outDegrees = new int[numVertices];
+    for (long edge = 0; edge < inLinks.numEdges(); edge++) {
+      outDegrees[inLinks.target(edge)]++;
+    }
+  }
+
+  public double[] ranks(final double teleportationProbability, int maxIterations, double epsilon) {
+
+    double[] currentRanks = new double[numVertices];
+    double[] nextRanks = new double[numVertices];
+    final double[] contributions = new double[numVertices];
+
+    Arrays.fill(currentRanks, 1.0 / numVertices);
+
+    ParallelVertices vertices = new ParallelVertices(numVertices, numThreads);
+    try {
+      for (int iteration = 1; iteration <= maxIterations; iteration++) {
+
+        final double[] ranks = currentRanks;
+        final double[] newRanks = nextRanks;
+
+        // phase one: what every vertex passes on to each of its out-neighbours, and the rank of dangling vertices
+        final double danglingRank = vertices.sum(new ParallelVertices.Chunk() {
+          @Override
+          public double process(int from, int to) {
+            double danglingRank = 0;
+            for (int vertex = from; vertex < to; vertex++) {
+              if (outDegrees[vertex] == 0) {
+                contributions[vertex] = 0;
+                danglingRank += ranks[vertex];
+              } else {
+                contributions[vertex] = ranks[vertex] / outDegrees[vertex];
+              }
+            }
+            return danglingRank;
+          }
+        });
+
+        // phase two: every vertex sums up the contributions of its in-neighbours
+        double change = vertices.sum(new ParallelVertices.Chunk() {
+          @Override
+          public double process(int from, int to) {
+            double change = 0;
+            for (int vertex = from; vertex < to; vertex++) {
+              double rankFromNeighbours = 0;
+              long end = inLinks.firstEdge(vertex + 1);
+              for (long edge = inLinks.firstEdge(vertex); edge < end; edge++) {
+                rankFromNeighbours += contributions[inLinks.target(edge)];
+              }
+
+              double newRank = (rankFromNeighbours + danglingRank / numVertices) * (1.0 - teleportationProbability)
+                  + teleportationProbability / numVertices;
+
+              change += Math.abs(newRank - ranks[vertex]);
+              newRanks[vertex] = newRank;
+            }
+            return change;
+          }
+        });
+
+        // double buffering, the old ranks are overwritten in the next iteration
+        nextRanks = currentRanks;
+        currentRanks = newRanks;
+
+        System.out.println("Iteration " + iteration + ", L1 change " + change);
+        if (change < epsilon) {
+          break;
+        }
+      }
+    } finally {
+      vertices.close();
+    }
+
+    return currentRanks;
+  }
+
+  /**
+   * Writes "domain\trank" lines like the webdatacommons hostgraph-pr.tsv, which CompanyDistribution reads. Vertices
+   * without a domain in the dictionary are skipped, without a dictionary the vertex ids are written instead.
+   */
+  public static void write(double[] ranks, DomainDictionary dictionary, File output) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), UTF8), 1 << 20);
+    try {
+      for (int vertex = 0; vertex < ranks.length; vertex++) {
+        String label = dictionary != null ? dictionary.lookup(vertex) : String.valueOf(vertex);
+        if (label != null) {
+          writer.write(label);
+          writer.write('\t');
+          writer.write(String.valueOf(ranks[vertex]));
+          writer.write('\n');
+        }
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * usage: ParallelPageRank [--threads n] [--teleportationProbability p] [--maxIterations n] [--epsilon e]
+   * [--dictionary domainDictionaryFile] transposedCsrFile outputFile
+   *
+   * The transposed CSR file is written by CsrGraph with --transpose, add --edgeList for the tab separated
+   * webdatacommons hyperlink graph.
+   */
+  public static void main(String[] args) throws IOException {
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    double teleportationProbability = 0.15;
+    int maxIterations = 50;
+    double epsilon = 0.0001;
+    DomainDictionary dictionary = null;
+
+    int n = 0;
+    while (args[n].startsWith("--")) {
+      String option = args[n++];
+      if ("--threads".equals(option)) {
+        numThreads = Integer.parseInt(args[n++]);
+      } else if ("--teleportationProbability".equals(option)) {
+        teleportationProbability = Double.parseDouble(args[n++]);
+      } else if ("--maxIterations".equals(option)) {
+        maxIterations = Integer.parseInt(args[n++]);
+      } else if ("--epsilon".equals(option)) {
+        epsilon = Double.parseDouble(args[n++]);
+      } else if ("--dictionary".equals(option)) {
+        dictionary = new DomainDictionary(new File(args[n++]));
+      } else {
+        throw new IllegalArgumentException("Unknown option " + option);
+      }
+    }
+
+    CsrGraph inLinks = new CsrGraph(new File(args[n]));
+    double[] ranks = new ParallelPageRank(inLinks, numThreads).ranks(teleportationProbability, maxIterations, epsilon);
+    write(ranks, dictionary, new File(args[n + 1]));
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a computation over all vertices of a graph on a fixed pool of threads. The vertices are cut into small chunks
+ * which the threads grab one after the other, so that a few high degree vertices don't leave most threads idle.
+ */
+class ParallelVertices implements Closeable {
+
+  static final int CHUNK_SIZE = 1 << 14;
+
+  /** processes the vertices from (inclusive) to (exclusive) and returns a partial result, which gets summed up */
+  interface Chunk {
+    double process(int from, int to);
+  }
+
+  private final int numVertices;
+  private final int numThreads;
+  private final ExecutorService executor;
+
+  ParallelVertices(int numVertices, int numThreads) {
+    this.numVertices = numVertices;
+    this.numThreads = numThreads;
+    executor = Executors.newFixedThreadPool(numThreads);
+  }
+
+  /** processes all vertices and returns the sum of the partial results */
+  double sum(final Chunk chunk) {
+    final AtomicInteger nextChunk = new AtomicInteger(0);
+
+    List<Future<Double>> partialSums = new ArrayList<Future<Double>>(numThreads);
+    for (int thread = 0; thread < numThreads; thread++) {
+      partialSums.add(executor.submit(new Callable<Double>() {
+        @Override
+        public Double call() {
+          double partialSum = 0;
+          int from;
+          while ((from = nextChunk.getAndAdd(CHUNK_SIZE)) < numVertices && from >= 0) {
+            partialSum += chunk.process(from, Math.min(numVertices, from + CHUNK_SIZE));
+          }
+          return partialSum;
+        }
+      }));
+    }
+
+    double sum = 0;
+    try {
+      for (Future<Double> partialSum : partialSums) {
+        sum += partialSum.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the workers", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Worker failed", e.getCause());
+    }
+    return sum;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
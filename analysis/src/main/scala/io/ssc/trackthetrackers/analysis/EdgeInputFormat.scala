@@ -0,0 +1,70 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.analysis
+
+import io.ssc.trackthetrackers.commons.graph.{AdjacencyListWriter, AdjacencyListReader}
+import org.apache.flink.api.common.io.FileInputFormat
+import org.apache.flink.core.fs.{FileInputSplit, Path}
+
+/** reads the edges of files written by AdjacencyListWriter, e.g. by the TrackingGraphJob with --format binary */
+class EdgeInputFormat(file: String) extends FileInputFormat[Edge](new Path(file)) {
+
+  // blocks have no sync markers, so every file is read as a whole
+  unsplittable = true
+
+  @transient private[this] var reader: AdjacencyListReader = _
+  @transient private[this] var inNeighbours = false
+  @transient private[this] var hasList = false
+  @transient private[this] var position = 0
+
+  override def open(split: FileInputSplit) = {
+    super.open(split)
+    reader = new AdjacencyListReader(stream)
+    inNeighbours = reader.direction() == AdjacencyListWriter.IN_NEIGHBOURS
+    nextNonEmptyList()
+  }
+
+  override def reachedEnd() = !hasList
+
+  override def nextRecord(reuse: Edge) = {
+    val neighbour = reader.neighbours()(position)
+    val edge = if (inNeighbours) Edge(neighbour, reader.vertex()) else Edge(reader.vertex(), neighbour)
+
+    position += 1
+    if (position == reader.numNeighbours()) {
+      nextNonEmptyList()
+    }
+    edge
+  }
+
+  private[this] def nextNonEmptyList() = {
+    do {
+      hasList = reader.next()
+    } while (hasList && reader.numNeighbours() == 0)
+    position = 0
+  }
+
+  override def close() = {
+    if (reader != null) {
+      reader.close()
+      reader = null
+    }
+    super.close()
+  }
+}
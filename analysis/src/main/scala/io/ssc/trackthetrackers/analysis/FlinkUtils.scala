@@ -18,45 +18,137 @@
 
 package io.ssc.trackthetrackers.analysis
 
+import io.ssc.trackthetrackers.analysis.algorithms.{CountMinSketch, HyperLogLog, HyperLogLogTypeInfo}
+import org.apache.flink.api.common.functions.RichMapFunction
+import org.apache.flink.api.common.typeinfo.TypeInformation
 import org.apache.flink.api.scala.DataSet
 import org.apache.flink.api.scala._
+import org.apache.flink.configuration.Configuration
+import org.apache.flink.util.Collector
+
+import scala.collection.mutable
+import scala.reflect.ClassTag
 
 object FlinkUtils {
 
-  def countByKey[T](data: DataSet[T], extractKey: (T) => Int): DataSet[(Int, Long)] = {
+  /** how the count functions count, every statistic can switch between exact and approximate counting */
+  sealed trait Counting
+
+  /** exact counts of all keys, pre-aggregated before the shuffle */
+  case object Exact extends Counting
+
+  /**
+   * Estimated counts of the k most frequent keys only, for key spaces too large to shuffle. The estimates come from a
+   * Count-Min sketch and overestimate by at most epsilon times the number of records with probability 1 - delta.
+   */
+  case class TopK(k: Int, epsilon: Double = 0.0001, delta: Double = 0.001) extends Counting
+
+  private val SketchName = "countMinSketch"
+
+  /** ships sketches in their compact format rather than through the generic Kryo fallback */
+  implicit val hyperLogLogTypeInfo: TypeInformation[HyperLogLog] = new HyperLogLogTypeInfo
 
-    data.groupBy { extractKey }
-      .reduceGroup { group => countBy(extractKey, group) }
+  /**
+   * Estimates the number of distinct keys with a HyperLogLog sketch per partition, only the merged sketches are
+   * shuffled. The relative standard error is about 1.04 / sqrt(2^precision).
+   */
+  def countDistinct[T](data: DataSet[T], extractKey: (T) => Long, precision: Int = 14): DataSet[Long] = {
+    data.mapPartition { partition =>
+          val sketch = new HyperLogLog(precision)
+          partition.foreach { x => sketch.observe(extractKey(x)) }
+          Iterator(sketch)
+        }
+        .reduce { (sketch1, sketch2) => sketch1.merge(sketch2); sketch1 }
+        .map { _.count() }
   }
 
-  def countByStrKey[T](data: DataSet[T], extractKey: (T) => String): DataSet[(String, Long)] = {
+  def countByKey[T](data: DataSet[T], extractKey: (T) => Int, counting: Counting = Exact): DataSet[(Int, Long)] = {
+    counting match {
+      case Exact => data.map { x => (extractKey(x), 1L) }.groupBy(0).sum(1)
+      case topK: TopK => approximateTopK(data.map { x => extractKey(x) }, topK)
+    }
+  }
 
-    data.groupBy { extractKey }
-      .reduceGroup { group => countByStr(extractKey, group) }
+  def countByStrKey[T](data: DataSet[T], extractKey: (T) => String,
+                       counting: Counting = Exact): DataSet[(String, Long)] = {
+    counting match {
+      case Exact => data.map { x => (extractKey(x), 1L) }.groupBy(0).sum(1)
+      case topK: TopK => approximateTopK(data.map { x => extractKey(x) }, topK)
+    }
   }
 
-  private[this] def countByStr[T](extractKey: T => String, group: Iterator[T]): (String, Long) = {
-    val key = extractKey(group.next())
+  /**
+   * Each partition sketches its keys and nominates its locally most frequent keys as candidates, in a single pass
+   * over the keys. The candidates are then re-estimated with the merged sketch of all partitions, only the sketches
+   * and candidates are shuffled.
+   */
+  private[this] def approximateTopK[K: TypeInformation: ClassTag](keys: DataSet[K], topK: TopK): DataSet[(K, Long)] = {
+
+    val local = keys.mapPartition { partition => Iterator(localHeavyHitters(partition, topK)) }
 
-    var count = 1L
-    while (group.hasNext) {
-      group.next()
-      count += 1
+    val sketch = local.map { _._1 }
+                      .reduce { (sketch1, sketch2) => sketch1.merge(sketch2); sketch1 }
+
+    val candidates = local.flatMap { _._2 }
+                          .groupBy { key => key }
+                          .reduceGroup { _.next() }
+
+    candidates.map(new EstimateCount[K]())
+              .withBroadcastSet(sketch, SketchName)
+              .reduceGroup { (estimates, out: Collector[(K, Long)]) =>
+                estimates.toSeq.sortBy { -_._2 }.take(topK.k).foreach { out.collect }
+              }
+  }
+
+  /**
+   * The sketch of a partition and the keys with the highest estimates in it. The candidates sit in a min-heap by
+   * estimate, whose entries are only refreshed when they reach the top, so a key costs O(log k) at most.
+   */
+  private[this] def localHeavyHitters[K: ClassTag](partition: Iterator[K], topK: TopK): (CountMinSketch, Array[K]) = {
+    val sketch = new CountMinSketch(topK.epsilon, topK.delta)
+    val capacity = 2 * topK.k
+    val candidates = mutable.HashMap[K, Long]()
+    // holds one entry per candidate, its estimate may be outdated but never higher than the current one
+    val weakest = mutable.PriorityQueue[(Long, K)]()(Ordering.by { entry: (Long, K) => -entry._1 })
+
+    partition.foreach { key =>
+      val hash = CountMinSketch.hash(key)
+      sketch.add(hash, 1L)
+      val estimate = sketch.estimate(hash)
+
+      if (candidates.contains(key)) {
+        candidates(key) = estimate
+      } else if (candidates.size < capacity) {
+        candidates(key) = estimate
+        weakest.enqueue(estimate -> key)
+      } else {
+        while (weakest.head._1 != candidates(weakest.head._2)) {
+          val (_, outdatedKey) = weakest.dequeue()
+          weakest.enqueue(candidates(outdatedKey) -> outdatedKey)
+        }
+        if (estimate > weakest.head._1) {
+          val (_, weakestKey) = weakest.dequeue()
+          candidates.remove(weakestKey)
+          candidates(key) = estimate
+          weakest.enqueue(estimate -> key)
+        }
+      }
     }
 
-    key -> count
+    sketch -> candidates.keys.toArray
   }
 
-  private[this] def countBy[T](extractKey: T => Int, group: Iterator[T]): (Int, Long) = {
-    val key = extractKey(group.next())
+  class EstimateCount[K] extends RichMapFunction[K, (K, Long)] {
 
-    var count = 1L
-    while (group.hasNext) {
-      group.next()
-      count += 1
+    var sketch: CountMinSketch = null
+
+    override def open(parameters: Configuration) = {
+      sketch = getRuntimeContext.getBroadcastVariable[CountMinSketch](SketchName).get(0)
     }
 
-    key -> count
+    override def map(key: K): (K, Long) = {
+      key -> sketch.estimate(CountMinSketch.hash(key))
+    }
   }
 
 }
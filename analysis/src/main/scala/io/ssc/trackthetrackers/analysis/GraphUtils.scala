@@ -18,24 +18,155 @@
 
 package io.ssc.trackthetrackers.analysis
 
+import java.io.{DataInputStream, File}
+
+import io.ssc.trackthetrackers.analysis.dictionary.DomainDictionary
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListWriter
+import org.apache.flink.api.common.functions.RuntimeContext
 import org.apache.flink.api.java.CollectionEnvironment
 import org.apache.flink.api.scala.{DataSet, _}
+import org.apache.flink.core.fs.Path
+import org.apache.flink.util.Collector
+
+import scala.collection.mutable.ArrayBuilder
 
 object GraphUtils {
 
+  val DomainDictionaryName = "domainDictionary"
+
   def readVertices(file: String)(implicit env: ExecutionEnvironment) = {
     env.readCsvFile[AnnotatedVertex](file, "\n", "\t")
   }
 
-  def readEdges(file: String)(implicit env: ExecutionEnvironment) = {
-    env.readCsvFile[Edge](file, "\n", "\t")
+  /** reads tab separated edges or, if the file was written by AdjacencyListWriter, the binary adjacency lists */
+  def readEdges(file: String)(implicit env: ExecutionEnvironment): DataSet[Edge] = {
+    if (isBinaryAdjacencyList(file)) {
+      readBinaryEdges(file)
+    } else {
+      env.readCsvFile[Edge](file, "\n", "\t")
+    }
+  }
+
+  def readBinaryEdges(file: String)(implicit env: ExecutionEnvironment) = {
+    env.createInput(new EdgeInputFormat(file))
+  }
+
+  /** looks at the magic number of the file, or of the first data file if a directory of job output is given */
+  def isBinaryAdjacencyList(file: String) = {
+    val path = new Path(file)
+    val fs = path.getFileSystem
+    val status = fs.getFileStatus(path)
+
+    val firstFile = if (status.isDir) {
+      fs.listStatus(path)
+        .filter { child => !child.isDir && !child.getPath.getName.startsWith("_") }
+        .filter { child => !child.getPath.getName.startsWith(".") }
+        .sortBy { _.getPath.getName }
+        .headOption
+    } else {
+      Some(status)
+    }
+
+    firstFile.exists { dataFile =>
+      dataFile.getLen >= 8 && {
+        val in = new DataInputStream(fs.open(dataFile.getPath))
+        try {
+          in.readLong() == AdjacencyListWriter.MAGIC
+        } finally {
+          in.close()
+        }
+      }
+    }
+  }
+
+  /** ships a dictionary built by DomainDictionary to all workers, instead of joining against the pld-index */
+  def registerDomainDictionary(dictionaryFile: String)(implicit env: ExecutionEnvironment) = {
+    // paths with a scheme, like hdfs:// or s3://, are passed through, only plain local paths are made absolute
+    val uri = new Path(dictionaryFile).toUri
+    val resolved = if (uri.getScheme == null) new File(dictionaryFile).toURI.toString else uri.toString
+    env.registerCachedFile(resolved, DomainDictionaryName)
+  }
+
+  /** maps the dictionary registered via registerDomainDictionary, call it in open() of a rich function */
+  def openDomainDictionary(runtimeContext: RuntimeContext) = {
+    new DomainDictionary(runtimeContext.getDistributedCache.getFile(DomainDictionaryName))
+  }
+
+  /**
+   * Groups the edges by source. The targets of a source are appended to a growable int buffer in a single pass,
+   * instead of concatenating arrays pairwise, which is quadratic for hubs with millions of targets. Sorting is
+   * implied by distinctTargets. With combine, partial lists are built per partition before the shuffle, which pays off
+   * when sources have many edges in each partition.
+   */
+  def toAdjacencyList(edges: DataSet[Edge], sortTargets: Boolean = false, distinctTargets: Boolean = false,
+                      combine: Boolean = false): DataSet[AdjacencyList] = {
+    if (combine) {
+      mergeAdjacencyLists(partialAdjacencyLists(edges), sortTargets, distinctTargets)
+    } else {
+      edges.groupBy { _.src }
+           .reduceGroup { group =>
+             val first = group.next()
+             val targets = new ArrayBuilder.ofInt
+             targets += first.target
+             while (group.hasNext) {
+               targets += group.next().target
+             }
+             adjacencyList(first.src, targets, sortTargets, distinctTargets)
+           }
+    }
   }
 
-  def toAdjacencyList(edges: DataSet[Edge]): DataSet[AdjacencyList] = {
+  /** the adjacency lists of the sources in each partition, several lists per source may remain */
+  def partialAdjacencyLists(edges: DataSet[Edge]): DataSet[AdjacencyList] = {
+    edges.groupBy { _.src }
+         .combineGroup { (group, out: Collector[AdjacencyList]) =>
+           val first = group.next()
+           val targets = new ArrayBuilder.ofInt
+           targets += first.target
+           while (group.hasNext) {
+             targets += group.next().target
+           }
+           out.collect(AdjacencyList(first.src, targets.result()))
+         }
+  }
+
+  /** merges partial adjacency lists into a single list per source */
+  def mergeAdjacencyLists(lists: DataSet[AdjacencyList], sortTargets: Boolean = false,
+                          distinctTargets: Boolean = false): DataSet[AdjacencyList] = {
+    lists.groupBy { _.src }
+         .reduceGroup { group =>
+           val first = group.next()
+           val targets = new ArrayBuilder.ofInt
+           targets ++= first.targets
+           while (group.hasNext) {
+             targets ++= group.next().targets
+           }
+           adjacencyList(first.src, targets, sortTargets, distinctTargets)
+         }
+  }
+
+  private[this] def adjacencyList(src: Int, targetsBuilder: ArrayBuilder.ofInt, sortTargets: Boolean,
+                                  distinctTargets: Boolean) = {
+    val targets = targetsBuilder.result()
+
+    if (sortTargets || distinctTargets) {
+      java.util.Arrays.sort(targets)
+    }
 
-    edges.map { edge => AdjacencyList(edge.src, Array(edge.target)) }
-         .groupBy { _.src }
-         .reduce { (list1, list2) => AdjacencyList(list1.src, list1.targets ++ list2.targets) }
+    if (distinctTargets && targets.length > 1) {
+      var distinct = 1
+      var n = 1
+      while (n < targets.length) {
+        if (targets(n) != targets(distinct - 1)) {
+          targets(distinct) = targets(n)
+          distinct += 1
+        }
+        n += 1
+      }
+      AdjacencyList(src, if (distinct == targets.length) targets else java.util.Arrays.copyOf(targets, distinct))
+    } else {
+      AdjacencyList(src, targets)
+    }
   }
 
 }
@@ -27,24 +27,129 @@ import org.apache.flink.util.Collector
 @deprecated
 object ComponentSizeDistribution extends App {
 
-  componentSizeDist(Config.get("analysis.trackingraphsample.path") + "/part-r-00000", 500,
+  componentSizeDist(Config.get("analysis.trackingraphsample.path") + "/part-r-00000",
     "/tmp/flink-scala/componentSizes/")
 
   case class Assignment(vertex: Int, component: Int)
 
-  def componentSizeDist(edgeFile: String, maxIterations: Int, outputDir: String) = {
+  /** upper bound for the rounds of resolveLabels, which needs about log2 of the longest chain of labels */
+  final val MaxLabelRounds = 64
+
+  /** component sizes via union-find, the number of supersteps doesn't depend on the diameter of the graph */
+  def componentSizeDist(edgeFile: String, outputDir: String, counting: FlinkUtils.Counting = FlinkUtils.Exact) = {
 
     val env = ExecutionEnvironment.getExecutionEnvironment
 
     val edgeList = env.readCsvFile[Edge](edgeFile, fieldDelimiter = "\t")
 
+    writeSizeDistribution(unionFind(edgeList), outputDir, counting)
+
+    env.execute()
+  }
+
+  /** component sizes via min-label propagation, takes as many supersteps as the diameter of the graph */
+  def componentSizeDistByLabelPropagation(edgeFile: String, maxIterations: Int, outputDir: String,
+                                          counting: FlinkUtils.Counting = FlinkUtils.Exact) = {
+
+    val env = ExecutionEnvironment.getExecutionEnvironment
+
+    val edgeList = env.readCsvFile[Edge](edgeFile, fieldDelimiter = "\t")
+
+    writeSizeDistribution(labelPropagation(edgeList, maxIterations), outputDir, counting)
+
+    env.execute()
+  }
+
+  /**
+   * Every partition computes the components of its edges with a local union-find and labels them with their smallest
+   * vertex. A vertex seen in several partitions links the local labels it got. The label graph can still have as
+   * many labels as there are vertices, so it is resolved in parallel rounds, see resolveLabels, whose result
+   * relabels the local assignments.
+   */
+  def unionFind(edgeList: DataSet[Edge]): DataSet[Assignment] = {
+
+    val localAssignments = edgeList.mapPartition { (edges: Iterator[Edge], out: Collector[Assignment]) =>
+      val unionFind = new UnionFind()
+      edges.foreach { edge => unionFind.union(edge.src, edge.target) }
+      for (id <- 0 until unionFind.numVertices()) {
+        out.collect(Assignment(unionFind.vertex(id), unionFind.label(id)))
+      }
+    }
+
+    // (vertex, smallest local label) and (label, smallest local label) links for all other labels of the vertex
+    val assignmentsAndLinks =
+      localAssignments.groupBy("vertex").reduceGroup { (assignments, out: Collector[(Assignment, Boolean)]) =>
+        val first = assignments.next()
+        val labels = (Iterator(first) ++ assignments).map { _.component }.toSet
+        val smallestLabel = labels.min
+
+        out.collect(Assignment(first.vertex, smallestLabel) -> false)
+        labels.filter { _ != smallestLabel }.foreach { label => out.collect(Assignment(label, smallestLabel) -> true) }
+      }
+
+    val assignments = assignmentsAndLinks.filter { !_._2 }.map { _._1 }
+    val links = assignmentsAndLinks.filter { _._2 }.map { _._1 }.distinct
+
+    val labelComponents = resolveLabels(links)
+
+    assignments.coGroup(labelComponents).where("component").equalTo("vertex") {
+      (assignments, labelComponents, out: Collector[Assignment]) =>
+        val component = if (labelComponents.hasNext) Some(labelComponents.next().component) else None
+        assignments.foreach { assignment =>
+          out.collect(component.map { Assignment(assignment.vertex, _) }.getOrElse(assignment))
+        }
+    }
+  }
+
+  /**
+   * Resolves links from labels to smaller labels into (label, smallest label of its component) assignments, in rounds
+   * that only group and cogroup the links. In every round, a label with several parents keeps the smallest one and
+   * links the others to it, then the children of every label move on to the smallest parent of that label (pointer
+   * jumping). The ids along a link only decrease and paths halve in every round, so the rounds end once every label
+   * points to a root, typically after a number of rounds logarithmic in the length of the longest chain of links.
+   */
+  def resolveLabels(links: DataSet[Assignment]): DataSet[Assignment] = {
+
+    // (label, parent) links, flagged if they changed in the current round
+    val resolvedLinks = links.map { link => link -> true }.iterateWithTermination(MaxLabelRounds) { links =>
+
+      val merged = links.groupBy { _._1.vertex }.reduceGroup { (links, out: Collector[(Assignment, Boolean)]) =>
+        val first = links.next()._1
+        val parents = (Iterator(first) ++ links.map { _._1 }).map { _.component }.toSet
+        val smallestParent = parents.min
+
+        out.collect(Assignment(first.vertex, smallestParent) -> (parents.size > 1))
+        parents.filter { _ != smallestParent }.foreach { parent =>
+          out.collect(Assignment(parent, smallestParent) -> true)
+        }
+      }
+
+      val jumped = merged.coGroup(merged).where { _._1.component }.equalTo { _._1.vertex } {
+        (children, parentsOfLabel, out: Collector[(Assignment, Boolean)]) =>
+          val parents = parentsOfLabel.map { _._1.component }.toList
+          if (parents.isEmpty) {
+            children.foreach { child => out.collect(child) }
+          } else {
+            val smallestParent = parents.min
+            children.foreach { child => out.collect(Assignment(child._1.vertex, smallestParent) -> true) }
+          }
+      }
+
+      (jumped, jumped.filter { _._2 })
+    }
+
+    resolvedLinks.map { _._1 }
+  }
+
+  def labelPropagation(edgeList: DataSet[Edge], maxIterations: Int): DataSet[Assignment] = {
+
     val initialAssignments = edgeList.flatMap { edge => Array(Tuple1(edge.src), Tuple1(edge.target)) }
                                      .distinct
                                      .map { id => Assignment(id._1, id._1) }
 
     val edges = edgeList.flatMap { edge => Array(edge, Edge(edge.target, edge.src)) }
 
-    val assignments = initialAssignments.iterateDelta(initialAssignments, maxIterations, Array("vertex")) {
+    initialAssignments.iterateDelta(initialAssignments, maxIterations, Array("vertex")) {
       (solutionSet, workSet) =>
 
         val possibleAssignments = workSet.join(edges).where("vertex").equalTo("src") { (assignment, edge) =>
@@ -62,15 +167,20 @@ object ComponentSizeDistribution extends App {
 
         (updatedAssignments, updatedAssignments)
     }
+  }
 
-    val componentsWithSize = FlinkUtils.countByKey(assignments, { assignment: Assignment => assignment.component })
+  /**
+   * writes (size, number of components) tuples. With TopK counting, the sizes of the components are estimated and
+   * only the k largest components are part of the distribution.
+   */
+  def writeSizeDistribution(assignments: DataSet[Assignment], outputDir: String,
+                            counting: FlinkUtils.Counting = FlinkUtils.Exact) = {
+    val componentsWithSize =
+      FlinkUtils.countByKey(assignments, { assignment: Assignment => assignment.component }, counting)
     val sizeWithNumComponents =
       FlinkUtils.countByKey(componentsWithSize, { componentWithSize: (Int, Long) => componentWithSize._2.toInt })
 
     sizeWithNumComponents.writeAsText(outputDir, WriteMode.OVERWRITE)
-
-    env.execute()
-
   }
 
 }
@@ -19,47 +19,97 @@
 package io.ssc.trackthetrackers.analysis.algorithms
 
 import io.ssc.trackthetrackers.Config
-import io.ssc.trackthetrackers.analysis.{GraphUtils, Edge, FlinkUtils}
+import io.ssc.trackthetrackers.analysis.{Edge, FlinkUtils, GraphUtils}
 import org.apache.flink.api.scala.{DataSet, ExecutionEnvironment}
 import org.apache.flink.core.fs.FileSystem.WriteMode
 import org.apache.flink.api.scala._
+import org.apache.flink.util.Collector
 
 @deprecated
 object DegreeDistribution extends App {
 
-  fromEdges(Config.get("analysis.trackingraphsample.path"), "/tmp/flink-scala/", 59661)
+  // constants, so that they are inlined into the closures and don't depend on the initialization of the App
+  final val Out = 0
+  final val In = 1
 
-  def fromEdges(edgeFile: String, outputPath: String, numVertices: Long) = {
+  fromEdges(Config.get("analysis.trackingraphsample.path"), "/tmp/flink-scala/")
+
+  /**
+   * Computes the out- and in-degree distributions in a single pass over the edges. Every edge emits both of its
+   * endpoints, the degrees are summed up in one combinable aggregation and turned into one histogram per direction.
+   * The number of vertices is taken from the histograms, so it counts every vertex with at least one edge.
+   * Besides the distributions, the job writes (direction, numVertices, maxDegree, meanDegree, quantiles...) tuples.
+   *
+   * A distribution needs the degree of every vertex, so with TopK counting the job writes the k vertices with the
+   * highest estimated out- and in-degree instead.
+   */
+  def fromEdges(edgeFile: String, outputPath: String, counting: FlinkUtils.Counting = FlinkUtils.Exact) = {
 
     implicit val env = ExecutionEnvironment.getExecutionEnvironment
 
     val edges = GraphUtils.readEdges(edgeFile)
 
-    val outDegreeDist = degreeDist({ _.src }, edges, numVertices)
-    val inDegreeDist = degreeDist({ _.target }, edges, numVertices)
-
-    outDegreeDist.writeAsCsv(outputPath + "/outDegreeDist/", fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
-    inDegreeDist.writeAsCsv(outputPath + "/inDegreeDist/", fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
+    counting match {
+      case FlinkUtils.Exact => writeDistributions(edges, outputPath)
+      case topK: FlinkUtils.TopK =>
+        FlinkUtils.countByKey(edges, { edge: Edge => edge.src }, topK)
+                  .writeAsCsv(outputPath + "/topOutDegrees/", fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
+        FlinkUtils.countByKey(edges, { edge: Edge => edge.target }, topK)
+                  .writeAsCsv(outputPath + "/topInDegrees/", fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
+    }
 
     env.execute()
   }
 
-  private[this] def degreeDist(extract: Edge => Int, edges: DataSet[Edge], numVertices: Long) = {
+  private[this] def writeDistributions(edges: DataSet[Edge], outputPath: String) = {
+
+    val degrees = edges.flatMap { edge => Array((edge.src, 1L, 0L), (edge.target, 0L, 1L)) }
+                       .groupBy(0)
+                       .sum(1).andSum(2)
+
+    // (direction, degree, number of vertices), includes degree zero to count all vertices in both directions
+    val histograms = degrees.flatMap { vertexWithDegrees =>
+                              Array((Out, vertexWithDegrees._2, 1L), (In, vertexWithDegrees._3, 1L))
+                            }
+                            .groupBy(0, 1)
+                            .sum(2)
+
+    val distributions = histograms.groupBy(0).reduceGroup { (histogram, out: Collector[(Int, Long, Double)]) =>
+      val entries = histogram.toArray
+      val numVertices = entries.map { _._3 }.sum
 
-    FlinkUtils.countByKey(edges, extract)
-      .groupBy { _._2 }
-      .reduceGroup { verticesWithDegree =>
+      entries.filter { _._2 > 0 }.foreach { case (direction, degree, count) =>
+        out.collect((direction, degree, count.toDouble / numVertices))
+      }
+    }
 
-        val degree = verticesWithDegree.next()._2
+    val quantiles = Array(0.5, 0.9, 0.99)
 
-        var count = 1.0
-        while (verticesWithDegree.hasNext) {
-          verticesWithDegree.next()
-          count += 1
-        }
+    val stats = histograms.groupBy(0).reduceGroup { histogram =>
+      val entries = histogram.toArray.sortBy { _._2 }
+      val numVertices = entries.map { _._3 }.sum
+      val mean = entries.map { entry => entry._2 * entry._3 }.sum.toDouble / numVertices
 
-        degree -> (count / numVertices)
+      val degreeQuantiles = quantiles.map { quantile =>
+        val rank = math.ceil(quantile * numVertices).toLong
+        var verticesSeen = 0L
+        entries.find { entry => verticesSeen += entry._3; verticesSeen >= rank }.get._2
       }
+
+      val direction = if (entries.head._1 == Out) "out" else "in"
+      (direction, numVertices, entries.last._2, mean, degreeQuantiles(0), degreeQuantiles(1),
+        degreeQuantiles(2))
+    }
+
+    writeDistribution(distributions, Out, outputPath + "/outDegreeDist/")
+    writeDistribution(distributions, In, outputPath + "/inDegreeDist/")
+    stats.writeAsCsv(outputPath + "/degreeStats/", fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
+  }
+
+  private[this] def writeDistribution(distributions: DataSet[(Int, Long, Double)], direction: Int, path: String) = {
+    distributions.filter { _._1 == direction }
+                 .map { entry => entry._2 -> entry._3 }
+                 .writeAsCsv(path, fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
   }
 
 }
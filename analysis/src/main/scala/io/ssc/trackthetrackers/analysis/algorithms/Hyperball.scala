@@ -39,6 +39,7 @@ object Hyperball extends App {
   def estimateNeighbourhoodFunction(urisFile: String, linksFile: String, maxIterations: Int, outputDir: String) = {
 
     implicit val env = ExecutionEnvironment.getExecutionEnvironment
+    env.getConfig.addDefaultKryoSerializer(classOf[HyperLogLog], classOf[HyperLogLogKryoSerializer])
 
     val initialCounters =
       GraphUtils.readVertices(urisFile)
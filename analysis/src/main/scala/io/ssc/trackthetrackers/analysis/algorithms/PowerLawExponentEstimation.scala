@@ -19,13 +19,23 @@
 package io.ssc.trackthetrackers.analysis.algorithms
 
 import io.ssc.trackthetrackers.analysis.{GraphUtils, Edge}
+import org.apache.flink.api.common.functions.RichMapFunction
 import org.apache.flink.api.scala.ExecutionEnvironment
 import org.apache.flink.api.scala._
+import org.apache.flink.configuration.Configuration
 import org.apache.flink.core.fs.FileSystem.WriteMode
 
+import scala.collection.JavaConverters._
+
 /**
  * http://konect.uni-koblenz.de/statistics/power
  *
+ * Fits a discrete power law to the degree distribution following Clauset, Shalizi and Newman, "Power-law
+ * distributions in empirical data": every distinct degree is a candidate for xmin, the exponent for a candidate is
+ * its maximum likelihood estimate and the candidate whose fit has the smallest Kolmogorov-Smirnov distance to the
+ * tail of the data wins. The candidates are fitted in parallel against the broadcasted degree histogram, so the
+ * cost depends on the number of distinct degrees rather than the number of vertices.
+ *
  * Be aware that this code only considers the outdegree distribution currently
  *
  */
@@ -35,42 +45,75 @@ object PowerLawExponentEstimation extends App {
   estimatePowerLawExponent("/home/ssc/Entwicklung/projects/trackthetrackers/analysis/src/main/resources/cfindergoogle/links.tsv",
     "/tmp/flink-scala/estimatedExponent")
 
-  def estimatePowerLawExponent(linksFile: String, outputPath: String) = {
-
-    implicit val env = ExecutionEnvironment.getExecutionEnvironment
-
-    val edges = GraphUtils.readEdges(linksFile)
+  /** (xmin, exponent, standard error of the exponent, Kolmogorov-Smirnov distance, number of vertices in the tail) */
+  type Fit = (Long, Double, Double, Double, Long)
 
-    val verticesWithDegree =
-      edges.map { edge => edge.src -> 1 }
-           .groupBy(0)
-           .reduce { (vertexWithCount1, vertexWithCount2) =>
-              vertexWithCount1._1 -> (vertexWithCount1._2 + vertexWithCount2._2)
-           }
+  final val HistogramName = "degreeHistogram"
 
-    val minDegree = verticesWithDegree.min(1).map { _._2 }
+  /** writes the best fit, candidates for xmin need at least minTailSize vertices with a degree of xmin or more */
+  def estimatePowerLawExponent(linksFile: String, outputPath: String, minTailSize: Int = 10) = {
 
-    val numVertices =
-      verticesWithDegree.map { vertexWithDegree => Tuple1(vertexWithDegree._1) }
-         .distinct
-         .reduceGroup{ _.size }
+    implicit val env = ExecutionEnvironment.getExecutionEnvironment
 
-    val estimatedExponent =
-      verticesWithDegree.cross(minDegree) { (vertexWithDegree, minDegree) =>
-          math.log(vertexWithDegree._2.toDouble / minDegree)
-        }
-        .reduce { _ + _ }
-        .cross(numVertices) { (v, n) =>
+    val edges = GraphUtils.readEdges(linksFile)
 
-          val gamma = 1.0 + (n / v)
-          val sigma = math.sqrt(n) / v
+    // (degree, number of vertices), both aggregations are combinable
+    val histogram = edges.map { edge => edge.src -> 1L }
+                         .groupBy(0)
+                         .sum(1)
+                         .map { vertexWithDegree => vertexWithDegree._2 -> 1L }
+                         .groupBy(0)
+                         .sum(1)
 
-          (gamma, sigma)
-        }
+    val bestFit = histogram.map { _._1 }
+                           .map(new FitPowerLaw())
+                           .withBroadcastSet(histogram, HistogramName)
+                           .filter { _._5 >= minTailSize }
+                           .reduce { (fit1, fit2) => if (fit1._4 <= fit2._4) fit1 else fit2 }
 
-    estimatedExponent.writeAsText(outputPath, writeMode = WriteMode.OVERWRITE)
+    bestFit.writeAsText(outputPath, writeMode = WriteMode.OVERWRITE)
 
     env.execute()
   }
 
+  /** fits the tail of the degree histogram which starts at the given xmin */
+  class FitPowerLaw extends RichMapFunction[Long, Fit] {
+
+    var degrees: Array[Long] = null
+    var counts: Array[Long] = null
+
+    override def open(parameters: Configuration) = {
+      val histogram = getRuntimeContext.getBroadcastVariable[(Long, Long)](HistogramName).asScala.sortBy { _._1 }
+      degrees = histogram.map { _._1 }.toArray
+      counts = histogram.map { _._2 }.toArray
+    }
+
+    override def map(xmin: Long): Fit = {
+      val first = java.util.Arrays.binarySearch(degrees, xmin)
+
+      var tailSize = 0L
+      var sumOfLogs = 0.0
+      for (n <- first until degrees.length) {
+        tailSize += counts(n)
+        // the discrete approximation, compares to xmin - 1/2 instead of xmin
+        sumOfLogs += counts(n) * math.log(degrees(n) / (xmin - 0.5))
+      }
+
+      val exponent = 1.0 + tailSize / sumOfLogs
+      val standardError = (exponent - 1.0) / math.sqrt(tailSize)
+
+      // largest difference between the empirical and the fitted complementary cumulative distribution of the tail
+      var distance = 0.0
+      var verticesBelow = 0L
+      for (n <- first until degrees.length) {
+        val empirical = (tailSize - verticesBelow).toDouble / tailSize
+        val fitted = math.pow((degrees(n) - 0.5) / (xmin - 0.5), 1.0 - exponent)
+        distance = math.max(distance, math.abs(empirical - fitted))
+        verticesBelow += counts(n)
+      }
+
+      (xmin, exponent, standardError, distance, tailSize)
+    }
+  }
+
 }
@@ -23,6 +23,7 @@ import java.util
 
 import io.ssc.trackthetrackers.Config
 import io.ssc.trackthetrackers.analysis._
+import io.ssc.trackthetrackers.analysis.dictionary.DomainDictionary
 import io.ssc.trackthetrackers.analysis.statistics.Dataset
 import org.apache.flink.api.common.functions.RichFilterFunction
 import org.apache.flink.api.java.io.LocalCollectionOutputFormat
@@ -35,51 +36,55 @@ import scala.collection.JavaConversions._
 object ToDirectedGexfFile extends App {
 
   compute(Config.get("analysis.trackingraphminisample.path"), Config.get("webdatacommons.pldarcfile.unzipped"),
-    Config.get("webdatacommons.pldfile.unzipped"), Config.get("analysis.results.path") + "sample.gexf")
+    Config.get("webdatacommons.pldfile.dictionary"), Config.get("analysis.results.path") + "sample.gexf")
 
-  def compute(trackingGraphFile: String, hyperlinkGraphFile: String, domainIndexFile: String,
+  def compute(trackingGraphFile: String, hyperlinkGraphFile: String, domainDictionaryFile: String,
               gexfOutputFile: String) = {
 
     implicit val env = ExecutionEnvironment.getExecutionEnvironment
 
     val hyperlinkGraphEdges = GraphUtils.readEdges(hyperlinkGraphFile)
     val trackingGraphEdges = GraphUtils.readEdges(trackingGraphFile)
-    val domains = GraphUtils.readVertices(domainIndexFile)
 
     val trackingGraphVertices = trackingGraphEdges.map { edge => Tuple1(edge.target) }
                                                   .distinct
 
-    val containedDomains = trackingGraphVertices.join(domains).where(0).equalTo("id") { (_, annotatedVertex) =>
-      annotatedVertex.id -> annotatedVertex.annotation
-    }
-
     val companyEdges = trackingGraphEdges.filter { edge => Dataset.domainsByCompany.contains(edge.src) }
                                          .map { edge => edge.target -> Dataset.domainsByCompany(edge.src) }
                                          .distinct
 
-    val verticesWithDomainAndTrackingCompanies = containedDomains.coGroup(companyEdges).where(0).equalTo(0) {
-      (vertices: Iterator[(Int, String)], trackingCompanies: Iterator[(Int, String)]) =>
+    val verticesWithTrackingCompanies = trackingGraphVertices.coGroup(companyEdges).where(0).equalTo(0) {
+      (vertices: Iterator[Tuple1[Int]], trackingCompanies: Iterator[(Int, String)]) =>
 
-        val (id, domain) = vertices.toSeq.get(0)
+        val id = vertices.next()._1
 
         val companies = trackingCompanies.map { case (id, company) => company }
                                          .toSeq
 
-        (id, domain, companies)
+        (id, companies)
     }
 
     val prunedHyperlinkGraph = hyperlinkGraphEdges.filter(new PruneToSampleVerticesFilter)
                                                   .withBroadcastSet(trackingGraphVertices, "vertices")
 
 
-    val nodes = new util.ArrayList[(Int, String, Seq[String])]()
-    verticesWithDomainAndTrackingCompanies.output(new LocalCollectionOutputFormat(nodes))
+    val nodes = new util.ArrayList[(Int, Seq[String])]()
+    verticesWithTrackingCompanies.output(new LocalCollectionOutputFormat(nodes))
 
     val edges = new util.ArrayList[Edge]()
     prunedHyperlinkGraph.output(new LocalCollectionOutputFormat(edges))
 
     env.execute()
 
+    // the sample is small, so we label it locally instead of joining it against the pld-index
+    val dictionary = new DomainDictionary(new File(domainDictionaryFile))
+
+    // vertices without a domain are dropped together with their edges, like the join against the pld-index did
+    val labelledNodes = nodes.flatMap { case (id, companies) =>
+      Option(dictionary.lookup(id)).map { domain => (id, domain, companies) }
+    }
+    val labelledIds = labelledNodes.map { _._1 }.toSet
+
     var writer: BufferedWriter = null
 
     try {
@@ -106,7 +111,7 @@ object ToDirectedGexfFile extends App {
           |    </attributes>
           |    <nodes>""".stripMargin)
 
-      for ((id, domain, companies) <- nodes) {
+      for ((id, domain, companies) <- labelledNodes) {
         writer.write(
           """
             |      <node id="%s" label="%s">
@@ -135,7 +140,7 @@ object ToDirectedGexfFile extends App {
       writer.write("    </nodes>\n")
       writer.write("    <edges>\n")
 
-      for (edge <- edges) {
+      for (edge <- edges if labelledIds.contains(edge.src) && labelledIds.contains(edge.target)) {
         writer.write("      <edge source=\"%s\" target=\"%s\"/>\n".format(edge.src, edge.target))
       }
 
@@ -32,16 +32,14 @@ import scala.collection.mutable.{BitSet, ListBuffer}
 object CompanyCooccurrence extends App {
 
   compute(Config.get("analysis.trackingraphsample.path"),
-    "/home/ssc/Entwicklung/datasets/webdatacommons-hyperlink2012-payleveldomain/pld-index",
     "/home/ssc/Desktop/trackthetrackers/out/companyCooccurrence/")
 
 
-  def compute(trackingGraphFile: String, domainIndexFile: String, outputPath: String) = {
+  def compute(trackingGraphFile: String, outputPath: String) = {
 
     implicit val env = ExecutionEnvironment.getExecutionEnvironment
 
     val edges = GraphUtils.readEdges(trackingGraphFile)
-    val domains = GraphUtils.readVertices(domainIndexFile)
 
     val domainsByCompany = Dataset.domainsByCompany
     val companyEdges = edges.filter { edge =>  domainsByCompany.contains(edge.src.toInt) }
@@ -19,35 +19,25 @@
 package io.ssc.trackthetrackers.analysis.plots
 
 import java.awt._
-import java.io.File
 
 import io.ssc.trackthetrackers.Config
 import org.jfree.data.category.DefaultCategoryDataset
 
 import io.ssc.trackthetrackers.analysis.statistics.CompanyDistribution
 
-import scala.io.Source
-
 object PlotCompanyDistributionByRank extends App {
 
   val topK = Array(100, 300, 700, 1000, 3000, 7000)
   
   val folder = Config.get("output.images")
-  
-  for (k <- topK) {
 
-    CompanyDistribution.computeDistribution(Config.get("analysis.trackingraphsample.path"), Config.get("webdatacommons.pldfile.unzipped"),
-      Config.get("analysis.results.path") + "companyDistribution", null, Config.get("webdatacommons.hostgraph-pr.unzipped"), k)
-    
+  val outputPath = Config.get("analysis.results.path") + "companyDistributionByRank"
 
-    var companiesWithProbability = Seq[(String, Double)]()
+  // a single job for all cutoffs, the plots only read its results
+  CompanyDistribution.computeDistributionByRank(Config.get("analysis.trackingraphsample.path"),
+    Config.get("webdatacommons.pldfile.unzipped"), Config.get("webdatacommons.hostgraph-pr.unzipped"), outputPath, topK)
 
-    for (file <- new File(Config.get("analysis.results.path") + "companyDistribution").listFiles) {
-      companiesWithProbability ++= Source.fromFile(file).getLines.map { line =>
-        val tokens = line.split("\t")
-        tokens(0) -> tokens(1).toDouble
-      }
-    }
+  for ((k, companiesWithProbability) <- CompanyDistribution.readDistributionByRank(outputPath)) {
 
     val sortedTrackersWithProbability = companiesWithProbability.sortBy(_._2).reverse
 
@@ -62,4 +52,3 @@ object PlotCompanyDistributionByRank extends App {
     new SingleSeriesBarChart("tracking company distribution", "company", "probability", Color.RED, dataset, filename)
   }
 }
-
@@ -31,26 +31,17 @@ object PlotCompanyDistributionByToplevelDomain extends App {
 
   val folder = Config.get("output.images")
 
-  val lines = Source.fromFile(new File(Config.get("topleveldomainByCountry.csv"))).getLines
+  val toplevelDomains = Source.fromFile(new File(Config.get("topleveldomainByCountry.csv"))).getLines
+                              .map { domainCountry => domainCountry.split(",")(0).toLowerCase }
+                              .toSet
 
-  for (domainCountry <- lines) {
+  val outputPath = Config.get("analysis.results.path") + "companyDistributionByToplevelDomain"
 
-    val splits = domainCountry.split(" = ")
-    
-    val toplevelDomain = splits(0).toLowerCase()
-
-    CompanyDistribution.computeDistribution(Config.get("analysis.trackingraphsample.path"), Config.get("webdatacommons.pldfile.unzipped"),
-      Config.get("analysis.results.path") + "companyDistribution", toplevelDomain, null, 0)
-    
+  // a single job for all toplevel domains, the plots only read its results
+  CompanyDistribution.computeDistributionByToplevelDomain(Config.get("analysis.trackingraphsample.path"),
+    Config.get("webdatacommons.pldfile.dictionary"), outputPath, toplevelDomains)
 
-    var companiesWithProbability = Seq[(String, Double)]()
-
-    for (file <- new File(Config.get("analysis.results.path") + "companyDistribution").listFiles) {
-      companiesWithProbability ++= Source.fromFile(file).getLines.map { line =>
-        val tokens = line.split("\t")
-        tokens(0) -> tokens(1).toDouble
-      }
-    }
+  for ((toplevelDomain, companiesWithProbability) <- CompanyDistribution.readDistributions(outputPath)) {
 
     val sortedTrackersWithProbability = companiesWithProbability.sortBy(_._2).reverse
 
@@ -65,4 +56,3 @@ object PlotCompanyDistributionByToplevelDomain extends App {
     new SingleSeriesBarChart("tracking company distribution", "company", "probability", Color.RED, dataset, filename)
   }
 }
-
@@ -39,23 +39,20 @@ object ToplevelCountryMap extends App {
   try {
     writer = new FileWriter(Config.get("company.distribution.by.country"), true)
 
-    val lines = Source.fromFile(new File(Config.get("topleveldomainByCountry.csv"))).getLines
+    val countries = Source.fromFile(new File(Config.get("topleveldomainByCountry.csv"))).getLines
+                          .map { _.split(",") }
+                          .toList
 
-    for (domainCountry <- lines) {
-      val splits = domainCountry.split(",")
+    val outputPath = Config.get("analysis.results.path") + "companyDistributionByToplevelDomain"
 
-      CompanyDistribution.computeDistribution(Config.get("analysis.trackingraphsample.path"), Config.get("webdatacommons.pldfile.unzipped"),
-        Config.get("analysis.results.path") + "companyDistribution", splits(0).toLowerCase, null, 0)
+    CompanyDistribution.computeDistributionByToplevelDomain(Config.get("analysis.trackingraphsample.path"),
+      Config.get("webdatacommons.pldfile.dictionary"), outputPath, countries.map { _(0).toLowerCase }.toSet)
 
-      for (file <- new File(Config.get("analysis.results.path") + "companyDistribution").listFiles) {
-        val dataEntries = Source.fromFile(file).getLines
-        for (dataEntry <- dataEntries) {
-          val tokens = dataEntry.split("\t")
+    val distributions = CompanyDistribution.readDistributions(outputPath)
 
-          if (tokens(0).equals(company)) {
-            writer.write(splits(0) + "," + splits(1) + "," + splits(2) + "," + company + "," + tokens(1) + "\n")
-          }
-        }
+    for (splits <- countries) {
+      for ((_, probability) <- distributions.getOrElse(splits(0).toLowerCase, Seq()).filter { _._1 == company }) {
+        writer.write(splits(0) + "," + splits(1) + "," + splits(2) + "," + company + "," + probability + "\n")
       }
       writer.flush()
     }
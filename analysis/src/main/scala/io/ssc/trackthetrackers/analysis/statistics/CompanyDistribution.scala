@@ -18,31 +18,42 @@
 
 package io.ssc.trackthetrackers.analysis.statistics
 
+import java.io.File
+
 import io.ssc.trackthetrackers.Config
+import io.ssc.trackthetrackers.analysis.dictionary.DomainDictionary
 import io.ssc.trackthetrackers.analysis.{Edge, FlinkUtils, GraphUtils}
-import org.apache.flink.api.common.functions.RichMapFunction
+import org.apache.flink.api.common.functions.{RichFilterFunction, RichFlatMapFunction, RichMapFunction}
 import org.apache.flink.api.common.operators.Order
 import org.apache.flink.api.scala.{ExecutionEnvironment, _}
+import org.apache.flink.configuration.Configuration
 import org.apache.flink.core.fs.FileSystem.WriteMode
+import org.apache.flink.util.Collector
+
+import scala.collection.mutable
+import scala.io.Source
 
 object CompanyDistribution extends App {
 
   case class Rankvertex(vertex: String, rank: Double)
 
   computeDistribution(Config.get("analysis.trackingraphsample.path"), Config.get("webdatacommons.pldfile.unzipped"),
-    Config.get("analysis.results.path") + "companyDistribution", null, Config.get("webdatacommons.hostgraph-pr.unzipped"), 3000)
+    Config.get("webdatacommons.pldfile.dictionary"), Config.get("analysis.results.path") + "companyDistribution", null,
+    Config.get("webdatacommons.hostgraph-pr.unzipped"), 3000)
 
-  def computeDistribution(trackingGraphFile: String, domainIndexFile: String, outputPath: String, toplevelDomain: String, pageRankFile: String, topKdomains: Int) = {
+  /** with TopK counting, only the k companies with the highest estimated number of tracked hosts are reported */
+  def computeDistribution(trackingGraphFile: String, domainIndexFile: String, domainDictionaryFile: String, outputPath: String, toplevelDomain: String, pageRankFile: String, topKdomains: Int,
+                          counting: FlinkUtils.Counting = FlinkUtils.Exact) = {
 
     implicit val env = ExecutionEnvironment.getExecutionEnvironment
 
     val edges = GraphUtils.readEdges(trackingGraphFile)
 
-    val domains = GraphUtils.readVertices(domainIndexFile)
-    
     //filter by pageRank
     var companyEdgesByPageRank = edges
     if (pageRankFile != null && topKdomains > 0) {
+      // the ranks are keyed by domain name, so this is the only place which still needs the pld-index
+      val domains = GraphUtils.readVertices(domainIndexFile)
       val pageRankVertices = env.readCsvFile[Rankvertex](pageRankFile, "\n", "\t").map(rank => (rank.vertex, rank.rank))
 
       val result = pageRankVertices.join(domains)
@@ -61,11 +72,8 @@ object CompanyDistribution extends App {
     //filter by domain
     var companyEdgesByTopleveldomain = companyEdgesByPageRank
     if (toplevelDomain != null) {
-      val companyDomains =
-        edges.join(domains).where(1).equalTo(1) { (edge, domain) => (edge.src, edge.target, domain.annotation) }
-
-      companyEdgesByTopleveldomain = companyDomains.filter(domain => domain._3.endsWith(toplevelDomain))
-        .map { tuple => new Edge(tuple._1, tuple._2)}
+      GraphUtils.registerDomainDictionary(domainDictionaryFile)
+      companyEdgesByTopleveldomain = edges.filter(new TrackedDomainEndsWith(toplevelDomain))
     }
 
     val numTrackedHosts = companyEdgesByTopleveldomain.distinct("target").map { _ => Tuple1(1L) }.sum(0)
@@ -74,7 +82,7 @@ object CompanyDistribution extends App {
                             .map { edge => Dataset.domainsByCompany(edge.src) -> edge.target }
                             .distinct   
 
-    val companyCounts = FlinkUtils.countByStrKey(companyEdges, { t: (String, Int) => t._1 })
+    val companyCounts = FlinkUtils.countByStrKey(companyEdges, { t: (String, Int) => t._1 }, counting)
 
     val companyProbabilities = companyCounts.map(new CompanyProbability())
                                             .withBroadcastSet(numTrackedHosts, "numTrackedHosts")
@@ -83,6 +91,168 @@ object CompanyDistribution extends App {
     env.execute()
   }
 
+  /**
+   * Computes the company distribution of every toplevel domain in a single job: the edges are tagged with the
+   * toplevel domain of their tracked host and all counts are grouped by it. Writes (toplevelDomain, company,
+   * probability) rows to outputPath, restricted to the given toplevel domains unless the set is empty.
+   */
+  def computeDistributionByToplevelDomain(trackingGraphFile: String, domainDictionaryFile: String, outputPath: String,
+                                          toplevelDomains: Set[String] = Set()) = {
+
+    implicit val env = ExecutionEnvironment.getExecutionEnvironment
+
+    GraphUtils.registerDomainDictionary(domainDictionaryFile)
+
+    // (toplevelDomain, tracking host, tracked host)
+    val edgesByToplevelDomain = GraphUtils.readEdges(trackingGraphFile).flatMap(new TagToplevelDomain(toplevelDomains))
+
+    val numTrackedHosts = edgesByToplevelDomain.map { edge => edge._1 -> edge._3 }
+                                               .distinct
+                                               .map { trackedHost => trackedHost._1 -> 1L }
+                                               .groupBy(0)
+                                               .sum(1)
+
+    val companyCounts = edgesByToplevelDomain.filter { edge => Dataset.domainsByCompany.contains(edge._2) }
+                                             .map { edge => (edge._1, Dataset.domainsByCompany(edge._2), edge._3) }
+                                             .distinct
+                                             .map { edge => (edge._1, edge._2, 1L) }
+                                             .groupBy(0, 1)
+                                             .sum(2)
+
+    val companyProbabilities = companyCounts.join(numTrackedHosts).where(0).equalTo(0) {
+      (companyCount, toplevelDomainCount) =>
+        (companyCount._1, companyCount._2, companyCount._3.toDouble / toplevelDomainCount._2)
+    }
+
+    companyProbabilities.writeAsCsv(outputPath, fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
+    env.execute()
+  }
+
+  /**
+   * Computes the company distribution among the top k domains by PageRank for several k in a single job. Only domains
+   * of the pld index are ranked, so the top k are the same domains computeDistribution filters by. They are ranked
+   * once: every partition keeps its maxK best domains, a single reducer merges them and tags each domain with the
+   * smallest cutoff that includes it. A tracked domain then counts for its own cutoff and all larger ones. Writes
+   * (topK, company, probability) rows to outputPath.
+   */
+  def computeDistributionByRank(trackingGraphFile: String, domainIndexFile: String, pageRankFile: String,
+                                outputPath: String, topK: Seq[Int]) = {
+
+    implicit val env = ExecutionEnvironment.getExecutionEnvironment
+
+    val cutoffs = topK.sorted.toArray
+    val maxK = cutoffs.last
+
+    val edges = GraphUtils.readEdges(trackingGraphFile)
+
+    // (host index, rank), domains missing from the pld index can't be tracked and must not take a place in the top k
+    val rankedHosts = env.readCsvFile[Rankvertex](pageRankFile, "\n", "\t")
+                         .join(GraphUtils.readVertices(domainIndexFile))
+                         .where("vertex")
+                         .equalTo("annotation") { (vertex, host) => host.id -> vertex.rank }
+
+    // (host index, index of the smallest cutoff which includes the host)
+    val byRank = Ordering.by { host: (Int, Double) => -host._2 }
+    val bucketsOfHosts = rankedHosts.mapPartition { hosts =>
+                                      val best = mutable.PriorityQueue[(Int, Double)]()(byRank)
+                                      hosts.foreach { host =>
+                                        if (best.size < maxK) {
+                                          best.enqueue(host)
+                                        } else if (host._2 > best.head._2) {
+                                          best.dequeue()
+                                          best.enqueue(host)
+                                        }
+                                      }
+                                      best.toSeq
+                                    }
+                                    .reduceGroup { (hosts, out: Collector[(Int, Int)]) =>
+                                      val ranked = hosts.toSeq.sortBy { -_._2 }.take(maxK)
+                                      var bucket = 0
+                                      for ((host, rank) <- ranked.zipWithIndex) {
+                                        while (rank >= cutoffs(bucket)) {
+                                          bucket += 1
+                                        }
+                                        out.collect(host._1 -> bucket)
+                                      }
+                                    }
+
+    // (tracking host, tracked host, bucket)
+    val rankedEdges = edges.joinWithTiny(bucketsOfHosts).where("target").equalTo(0) { (edge, hostWithBucket) =>
+      (edge.src, edge.target, hostWithBucket._2)
+    }
+
+    val numTrackedHosts = rankedEdges.map { edge => edge._2 -> edge._3 }
+                                     .distinct
+                                     .flatMap { trackedHost => cumulative(trackedHost._2, cutoffs) }
+                                     .groupBy(0)
+                                     .sum(1)
+
+    val companyCounts = rankedEdges.filter { edge => Dataset.domainsByCompany.contains(edge._1) }
+                                   .map { edge => (Dataset.domainsByCompany(edge._1), edge._2, edge._3) }
+                                   .distinct
+                                   .flatMap { companyEdge =>
+                                     cumulative(companyEdge._3, cutoffs).map { count =>
+                                       (count._1, companyEdge._1, count._2)
+                                     }
+                                   }
+                                   .groupBy(0, 1)
+                                   .sum(2)
+
+    val companyProbabilities = companyCounts.join(numTrackedHosts).where(0).equalTo(0) {
+      (companyCount, cutoffCount) => (companyCount._1, companyCount._2, companyCount._3.toDouble / cutoffCount._2)
+    }
+
+    companyProbabilities.writeAsCsv(outputPath, fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
+    env.execute()
+  }
+
+  /** a count of one for the cutoff of the bucket and every larger cutoff */
+  private[this] def cumulative(bucket: Int, cutoffs: Array[Int]): Seq[(Int, Long)] = {
+    (bucket until cutoffs.length).map { larger => cutoffs(larger) -> 1L }
+  }
+
+  /** reads the output of computeDistributionByRank, (company, probability) pairs per cutoff */
+  def readDistributionByRank(outputPath: String): Map[Int, Seq[(String, Double)]] = {
+    readDistributions(outputPath).map { case (topK, distribution) => topK.toInt -> distribution }
+  }
+
+  /**
+   * reads the output of computeDistributionByToplevelDomain or computeDistributionByRank, (company, probability)
+   * pairs per toplevel domain or cutoff
+   */
+  def readDistributions(outputPath: String): Map[String, Seq[(String, Double)]] = {
+    val rows = outputFiles(outputPath).flatMap { file =>
+      val source = Source.fromFile(file)
+      try {
+        source.getLines.toList.map { line =>
+          val tokens = line.split("\t")
+          (tokens(0), tokens(1), tokens(2).toDouble)
+        }
+      } finally {
+        source.close()
+      }
+    }
+    rows.groupBy { _._1 }.map { case (key, group) => key -> group.map { row => row._2 -> row._3 } }
+  }
+
+  /** the data files of a job output directory, or the file itself if the job ran with parallelism one */
+  private[this] def outputFiles(outputPath: String): Seq[File] = {
+    val output = new File(outputPath)
+    if (output.isDirectory) {
+      output.listFiles.toSeq
+        .filter { file => file.isFile && !file.getName.startsWith("_") && !file.getName.startsWith(".") }
+        .sortBy { _.getName }
+    } else {
+      Seq(output)
+    }
+  }
+
+  /** the part after the last dot, null for hosts without a dot */
+  def toplevelDomain(domain: String) = {
+    val lastDot = domain.lastIndexOf('.')
+    if (lastDot == -1) null else domain.substring(lastDot + 1)
+  }
+
   class CompanyProbability() extends RichMapFunction[(String, Long), (String, Double)] {
 
     override def map(companyWithCount: (String, Long)): (String, Double) = {
@@ -93,4 +263,37 @@ object CompanyDistribution extends App {
     }
   }
 
+  class TrackedDomainEndsWith(suffix: String) extends RichFilterFunction[Edge] {
+
+    var dictionary: DomainDictionary = null
+
+    override def open(parameters: Configuration) = {
+      dictionary = GraphUtils.openDomainDictionary(getRuntimeContext)
+    }
+
+    override def filter(edge: Edge): Boolean = {
+      val domain = dictionary.lookup(edge.target)
+      domain != null && domain.endsWith(suffix)
+    }
+  }
+
+  class TagToplevelDomain(toplevelDomains: Set[String]) extends RichFlatMapFunction[Edge, (String, Int, Int)] {
+
+    var dictionary: DomainDictionary = null
+
+    override def open(parameters: Configuration) = {
+      dictionary = GraphUtils.openDomainDictionary(getRuntimeContext)
+    }
+
+    override def flatMap(edge: Edge, out: Collector[(String, Int, Int)]) = {
+      val domain = dictionary.lookup(edge.target)
+      if (domain != null) {
+        val toplevelDomain = CompanyDistribution.toplevelDomain(domain)
+        if (toplevelDomain != null && (toplevelDomains.isEmpty || toplevelDomains.contains(toplevelDomain))) {
+          out.collect((toplevelDomain, edge.src, edge.target))
+        }
+      }
+    }
+  }
+
 }
@@ -19,36 +19,45 @@
 package io.ssc.trackthetrackers.analysis.statistics
 
 import io.ssc.trackthetrackers.Config
+import io.ssc.trackthetrackers.analysis.dictionary.DomainDictionary
 import io.ssc.trackthetrackers.analysis.{Edge, FlinkUtils, GraphUtils}
-import org.apache.flink.api.common.functions.RichMapFunction
+import org.apache.flink.api.common.functions.{RichFlatMapFunction, RichMapFunction}
 import org.apache.flink.api.scala.ExecutionEnvironment
 import org.apache.flink.api.scala._
+import org.apache.flink.configuration.Configuration
 import org.apache.flink.core.fs.FileSystem.WriteMode
+import org.apache.flink.util.Collector
 
 object TrackerDistribution extends App {
 
-  computeDistribution(Config.get("analysis.trackingraphsample.path"), Config.get("webdatacommons.pldfile.unzipped"),
+  computeDistribution(Config.get("analysis.trackingraphsample.path"), Config.get("webdatacommons.pldfile.dictionary"),
       Config.get("analysis.results.path") + "trackerDistribution")
 
-  def computeDistribution(trackingGraphFile: String, domainIndexFile: String, outputPath: String) = {
+  /**
+   * Reports the trackers on at least 0.5% of the tracked hosts. With TopK(k) counting, only the k trackers with the
+   * highest estimates are considered, so qualifying trackers beyond the k-th are silently missing, and the
+   * probabilities are overestimated by up to epsilon times the number of edges divided by the number of tracked hosts.
+   * Choose k well above the expected number of reported trackers.
+   */
+  def computeDistribution(trackingGraphFile: String, domainDictionaryFile: String, outputPath: String,
+                          counting: FlinkUtils.Counting = FlinkUtils.Exact) = {
 
     implicit val env = ExecutionEnvironment.getExecutionEnvironment
 
     val edges = GraphUtils.readEdges(trackingGraphFile)
-    val domains = GraphUtils.readVertices(domainIndexFile)
+    GraphUtils.registerDomainDictionary(domainDictionaryFile)
 
     val numTrackedHosts = edges.distinct("target").map { _ => Tuple1(1L) }.sum(0)
 
 
-    val trackersWithNumDomainsTracked = FlinkUtils.countByKey(edges, { edge: Edge => edge.src })
+    val trackersWithNumDomainsTracked = FlinkUtils.countByKey(edges, { edge: Edge => edge.src }, counting)
 
     val topTrackers = trackersWithNumDomainsTracked.map(new TrackerProbability())
                                                    .withBroadcastSet(numTrackedHosts, "numTrackedHosts")
                                                    .filter { _._2 >= 0.005 }
     
-    val topTrackerDomains =
-        topTrackers.join(domains).where(0).equalTo(1) { (topTracker, domain) => domain.annotation -> topTracker._2 }
-    
+    val topTrackerDomains = topTrackers.flatMap(new LabelWithDomain())
+
     topTrackerDomains.writeAsCsv(outputPath, fieldDelimiter = "\t", writeMode = WriteMode.OVERWRITE)
 
     env.execute()
@@ -65,4 +74,21 @@ object TrackerDistribution extends App {
     }
   }
 
+  /** trackers the dictionary holds no domain for are dropped, like the join against the pld-index did */
+  class LabelWithDomain() extends RichFlatMapFunction[(Int, Double), (String, Double)] {
+
+    var dictionary: DomainDictionary = null
+
+    override def open(parameters: Configuration) = {
+      dictionary = GraphUtils.openDomainDictionary(getRuntimeContext)
+    }
+
+    override def flatMap(trackerWithProbability: (Int, Double), out: Collector[(String, Double)]) = {
+      val domain = dictionary.lookup(trackerWithProbability._1)
+      if (domain != null) {
+        out.collect(domain -> trackerWithProbability._2)
+      }
+    }
+  }
+
 }
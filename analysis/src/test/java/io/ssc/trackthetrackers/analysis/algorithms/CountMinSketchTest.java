@@ -0,0 +1,117 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.algorithms;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CountMinSketchTest {
+
+  private static final double EPSILON = 0.001;
+  private static final double DELTA = 0.01;
+
+  private static final int NUM_KEYS = 10000;
+  private static final int NUM_RECORDS = 200000;
+
+  @Test
+  public void estimatesNeverUnderestimate() {
+    long[] counts = new long[NUM_KEYS];
+    CountMinSketch sketch = skewedSketch(counts, new Random(0xbeef));
+
+    for (int key = 0; key < NUM_KEYS; key++) {
+      assertTrue(sketch.estimate(CountMinSketch.hash(key)) >= counts[key]);
+    }
+  }
+
+  @Test
+  public void estimatesAreWithinErrorBound() {
+    long[] counts = new long[NUM_KEYS];
+    CountMinSketch sketch = skewedSketch(counts, new Random(0xbeef));
+
+    long maxError = (long) (EPSILON * sketch.totalCount());
+    int numExceeding = 0;
+    for (int key = 0; key < NUM_KEYS; key++) {
+      if (sketch.estimate(CountMinSketch.hash(key)) - counts[key] > maxError) {
+        numExceeding++;
+      }
+    }
+    // at most a fraction of delta of the keys may exceed the bound, allow for some slack
+    assertTrue(numExceeding <= 2 * DELTA * NUM_KEYS);
+  }
+
+  @Test
+  public void mergeEqualsSketchOfConcatenation() {
+    CountMinSketch first = skewedSketch(new long[NUM_KEYS], new Random(1));
+    CountMinSketch second = skewedSketch(new long[NUM_KEYS], new Random(2));
+
+    CountMinSketch both = new CountMinSketch(EPSILON, DELTA);
+    addSkewed(both, new long[NUM_KEYS], new Random(1));
+    addSkewed(both, new long[NUM_KEYS], new Random(2));
+
+    first.merge(second);
+
+    assertEquals(2L * NUM_RECORDS, first.totalCount());
+    assertEquals(both.totalCount(), first.totalCount());
+    for (int key = 0; key < NUM_KEYS; key++) {
+      long hash = CountMinSketch.hash(key);
+      assertEquals(both.estimate(hash), first.estimate(hash));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mergeRejectsDifferentDimensions() {
+    new CountMinSketch(EPSILON, DELTA).merge(new CountMinSketch(10 * EPSILON, DELTA));
+  }
+
+  @Test
+  public void stringsAndNumbersHashConsistently() {
+    CountMinSketch sketch = new CountMinSketch(EPSILON, DELTA);
+    sketch.add(CountMinSketch.hash("google.com"), 3);
+    sketch.add(CountMinSketch.hash(new StringBuilder("google.com")), 2);
+    sketch.add(CountMinSketch.hash(42), 7);
+
+    assertEquals(5, sketch.estimate(CountMinSketch.hash("google.com")));
+    assertEquals(7, sketch.estimate(CountMinSketch.hash(42L)));
+    assertEquals(12, sketch.totalCount());
+  }
+
+  private static CountMinSketch skewedSketch(long[] counts, Random random) {
+    CountMinSketch sketch = new CountMinSketch(EPSILON, DELTA);
+    addSkewed(sketch, counts, random);
+    return sketch;
+  }
+
+  private static void addSkewed(CountMinSketch sketch, long[] counts, Random random) {
+    for (int n = 0; n < NUM_RECORDS; n++) {
+      int key = skewedKey(random);
+      counts[key]++;
+      sketch.add(CountMinSketch.hash(key), 1);
+    }
+  }
+
+  /** a few keys are very frequent, like the largest trackers */
+  private static int skewedKey(Random random) {
+    return (int) (NUM_KEYS * Math.pow(random.nextDouble(), 3));
+  }
+}
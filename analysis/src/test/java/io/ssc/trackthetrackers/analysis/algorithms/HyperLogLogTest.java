@@ -0,0 +1,123 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.algorithms;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HyperLogLogTest {
+
+  private static final int NUM_ITEMS = 10000;
+  private static final int NUM_TRIALS = 50;
+
+  @Test
+  public void sparseRoundTrip() throws IOException {
+    for (int precision = HyperLogLog.MIN_PRECISION; precision <= HyperLogLog.MAX_PRECISION; precision++) {
+      HyperLogLog sketch = sketch(precision, 0, 3);
+      assertTrue(sketch.isSparse());
+
+      HyperLogLog read = roundTrip(sketch);
+      assertEquals(sketch, read);
+      assertEquals(sketch.count(), read.count());
+    }
+  }
+
+  @Test
+  public void denseRoundTrip() throws IOException {
+    for (int precision = HyperLogLog.MIN_PRECISION; precision <= HyperLogLog.MAX_PRECISION; precision++) {
+      HyperLogLog sketch = sketch(precision, 0, 4 << precision);
+      assertFalse(sketch.isSparse());
+
+      HyperLogLog read = roundTrip(sketch);
+      assertEquals(sketch, read);
+      assertEquals(sketch.count(), read.count());
+    }
+  }
+
+  @Test
+  public void mergeEqualsSketchOfUnion() {
+    for (int precision = HyperLogLog.MIN_PRECISION; precision <= HyperLogLog.MAX_PRECISION; precision++) {
+      int m = 1 << precision;
+      // sparse into sparse, sparse into dense, dense into sparse and dense into dense
+      int[][] ranges = { { 0, 2, 1, 3 }, { 0, 4 * m, 10, 12 }, { 0, 2, 1, 4 * m }, { 0, 4 * m, 2 * m, 8 * m } };
+      for (int[] range : ranges) {
+        HyperLogLog merged = sketch(precision, range[0], range[1]);
+        merged.merge(sketch(precision, range[2], range[3]));
+
+        HyperLogLog union = sketch(precision, Math.min(range[0], range[2]), Math.max(range[1], range[3]));
+        assertEquals(union, merged);
+        assertEquals(union.count(), merged.count());
+      }
+    }
+  }
+
+  @Test
+  public void errorIsWithinStandardError() {
+    for (int precision = HyperLogLog.MIN_PRECISION; precision <= HyperLogLog.MAX_PRECISION; precision++) {
+      double standardError = 1.04 / Math.sqrt(1 << precision);
+
+      // a single estimate may well be off by several standard errors, so we look at the error over disjoint item sets
+      double sumOfSquaredErrors = 0;
+      for (int trial = 0; trial < NUM_TRIALS; trial++) {
+        long count = sketch(precision, (long) trial * NUM_ITEMS, (long) (trial + 1) * NUM_ITEMS).count();
+        double relativeError = (count - NUM_ITEMS) / (double) NUM_ITEMS;
+        sumOfSquaredErrors += relativeError * relativeError;
+      }
+      double rootMeanSquaredError = Math.sqrt(sumOfSquaredErrors / NUM_TRIALS);
+
+      assertTrue("precision " + precision + ", error " + rootMeanSquaredError,
+          rootMeanSquaredError < 1.5 * standardError);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mergeRejectsDifferentPrecisions() {
+    new HyperLogLog(10).merge(new HyperLogLog(11));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTooLargePrecision() {
+    new HyperLogLog(HyperLogLog.MAX_PRECISION + 1);
+  }
+
+  /** a sketch of the items from (inclusive) to (exclusive) */
+  private static HyperLogLog sketch(int precision, long from, long to) {
+    HyperLogLog sketch = new HyperLogLog(precision);
+    for (long item = from; item < to; item++) {
+      sketch.observe(item);
+    }
+    return sketch;
+  }
+
+  private static HyperLogLog roundTrip(HyperLogLog sketch) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    sketch.write(new DataOutputStream(bytes));
+    return HyperLogLog.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListWriter;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CsrGraphTest {
+
+  // unsorted, like the concatenated output of several reducers
+  private static final String EDGE_LIST = "0\t2\n3\t0\n0\t1\n2\t3\n\n1\t2\n";
+
+  @Test
+  public void edgeListMatchesAdjacencyLists() throws IOException {
+    File fromEdgeList = tempFile("csr-", ".bin");
+    CsrGraph.buildFromEdgeList(Arrays.asList(edgeList(".tsv")), fromEdgeList, false, 0);
+    File fromAdjacencyLists = tempFile("csr-", ".bin");
+    CsrGraph.build(Arrays.asList(adjacencyLists()), fromAdjacencyLists, false, 0);
+
+    assertSameGraph(new CsrGraph(fromAdjacencyLists), new CsrGraph(fromEdgeList));
+  }
+
+  @Test
+  public void transposedGzippedEdgeList() throws IOException {
+    File csrFile = tempFile("csr-", ".bin");
+    CsrGraph.buildFromEdgeList(Arrays.asList(edgeList(".gz")), csrFile, true, 0);
+    CsrGraph inLinks = new CsrGraph(csrFile);
+
+    assertEquals(4, inLinks.numVertices());
+    assertEquals(5, inLinks.numEdges());
+
+    int[] neighbours = new int[4];
+    assertEquals(2, inLinks.neighbours(2, neighbours));
+    assertArrayEquals(new int[] { 0, 1 }, Arrays.copyOf(neighbours, 2));
+    assertEquals(1, inLinks.neighbours(0, neighbours));
+    assertEquals(3, neighbours[0]);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void edgeListRespectsNumVertices() throws IOException {
+    CsrGraph.buildFromEdgeList(Arrays.asList(edgeList(".tsv")), tempFile("csr-", ".bin"), false, 3);
+  }
+
+  private static void assertSameGraph(CsrGraph expected, CsrGraph actual) {
+    assertEquals(expected.numVertices(), actual.numVertices());
+    assertEquals(expected.numEdges(), actual.numEdges());
+
+    int[] expectedNeighbours = new int[expected.numVertices()];
+    int[] actualNeighbours = new int[expected.numVertices()];
+    for (int vertex = 0; vertex < expected.numVertices(); vertex++) {
+      int degree = expected.neighbours(vertex, expectedNeighbours);
+      assertEquals(degree, actual.neighbours(vertex, actualNeighbours));
+      assertArrayEquals(Arrays.copyOf(expectedNeighbours, degree), Arrays.copyOf(actualNeighbours, degree));
+    }
+  }
+
+  /** a CSR graph built from tab separated edges, for the tests of the algorithms on CSR graphs */
+  static CsrGraph csrGraph(String edges, boolean transpose) throws IOException {
+    File csrFile = tempFile("csr-", ".bin");
+    CsrGraph.buildFromEdgeList(Arrays.asList(edgeList(edges, ".tsv")), csrFile, transpose, 0);
+    return new CsrGraph(csrFile);
+  }
+
+  private static File edgeList(String suffix) throws IOException {
+    return edgeList(EDGE_LIST, suffix);
+  }
+
+  private static File edgeList(String edges, String suffix) throws IOException {
+    File file = tempFile("edges-", suffix);
+    OutputStream out = new FileOutputStream(file);
+    if (suffix.endsWith(".gz")) {
+      out = new GZIPOutputStream(out);
+    }
+    Writer writer = new OutputStreamWriter(out, "UTF-8");
+    try {
+      writer.write(edges);
+    } finally {
+      writer.close();
+    }
+    return file;
+  }
+
+  private static File adjacencyLists() throws IOException {
+    File file = tempFile("adjacency-", ".adj");
+    AdjacencyListWriter writer =
+        new AdjacencyListWriter(new FileOutputStream(file), AdjacencyListWriter.OUT_NEIGHBOURS);
+    try {
+      writer.write(0, new int[] { 1, 2 }, 2);
+      writer.write(1, new int[] { 2 }, 1);
+      writer.write(2, new int[] { 3 }, 1);
+      writer.write(3, new int[] { 0 }, 1);
+    } finally {
+      writer.close();
+    }
+    return file;
+  }
+
+  static File tempFile(String prefix, String suffix) throws IOException {
+    File file = File.createTempFile(prefix, suffix);
+    file.deleteOnExit();
+    return file;
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import io.ssc.trackthetrackers.analysis.dictionary.DomainDictionary;
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListWriter;
+import io.ssc.trackthetrackers.commons.graph.OverflowIds;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class OverflowIdsTest {
+
+  private static final String PLD_INDEX = "a.com\t0\nb.com\t1\nc.com\t2\n";
+
+  private static final int OVERFLOW_ID = OverflowIds.OVERFLOW_BASE + 12345;
+  // the mapping and the consolidated index as written by OverflowDomainsJob
+  private static final OverflowIds OVERFLOW_IDS = new OverflowIds(new int[] { OVERFLOW_ID }, new int[] { 3 });
+  private static final String CONSOLIDATED_INDEX = PLD_INDEX + "unknown.org\t3\n";
+
+  @Test
+  public void overflowIdsResolveAfterRemapping() throws IOException {
+    DomainDictionary dictionary = new DomainDictionary(buildDictionary(CONSOLIDATED_INDEX));
+
+    File csrFile = tempFile("csr-", ".bin");
+    CsrGraph.build(trackingGraph(), csrFile, false, 0, OVERFLOW_IDS);
+    CsrGraph graph = new CsrGraph(csrFile);
+
+    assertEquals(4, graph.numVertices());
+    assertEquals(4, dictionary.numIds());
+
+    int[] neighbours = new int[4];
+    assertEquals(2, graph.neighbours(0, neighbours));
+    assertArrayEquals(new int[] { 1, 3 }, Arrays.copyOf(neighbours, 2));
+    assertEquals("unknown.org", dictionary.lookup(neighbours[1]));
+
+    assertEquals(1, graph.neighbours(3, neighbours));
+    assertEquals(2, neighbours[0]);
+  }
+
+  @Test
+  public void transposedGraphIsRemappedAsWell() throws IOException {
+    File csrFile = tempFile("csr-", ".bin");
+    CsrGraph.build(trackingGraph(), csrFile, true, 0, OVERFLOW_IDS);
+    CsrGraph graph = new CsrGraph(csrFile);
+
+    int[] neighbours = new int[4];
+    assertEquals(1, graph.neighbours(3, neighbours));
+    assertEquals(0, neighbours[0]);
+    assertEquals(1, graph.neighbours(2, neighbours));
+    assertEquals(3, neighbours[0]);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void csrGraphRejectsOverflowIdsWithoutMapping() throws IOException {
+    CsrGraph.build(trackingGraph(), tempFile("csr-", ".bin"), false, 0, null);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void dictionaryRejectsOverflowIds() throws IOException {
+    buildDictionary(PLD_INDEX + "unknown.org\t" + OVERFLOW_ID + "\n");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownOverflowIdsFail() {
+    OVERFLOW_IDS.denseIdFor(OVERFLOW_ID + 1);
+  }
+
+  private static File buildDictionary(String pldIndex) throws IOException {
+    File dictionaryFile = tempFile("dictionary-", ".bin");
+    DomainDictionary.build(new BufferedReader(new StringReader(pldIndex)), dictionaryFile);
+    return dictionaryFile;
+  }
+
+  /** a.com -> b.com, a.com -> unknown.org, unknown.org -> c.com, with the overflow id of unknown.org */
+  private static List<File> trackingGraph() throws IOException {
+    File adjacencyFile = tempFile("adjacency-", ".adj");
+    AdjacencyListWriter writer =
+        new AdjacencyListWriter(new FileOutputStream(adjacencyFile), AdjacencyListWriter.OUT_NEIGHBOURS);
+    try {
+      writer.write(0, new int[] { 1, OVERFLOW_ID }, 2);
+      writer.write(OVERFLOW_ID, new int[] { 2 }, 1);
+    } finally {
+      writer.close();
+    }
+    return Arrays.asList(adjacencyFile);
+  }
+
+  private static File tempFile(String prefix, String suffix) throws IOException {
+    File file = File.createTempFile(prefix, suffix);
+    file.deleteOnExit();
+    return file;
+  }
+}
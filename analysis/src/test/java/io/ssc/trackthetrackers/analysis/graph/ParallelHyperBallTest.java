@@ -0,0 +1,113 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/** graphs with known distances, the counters are large enough to estimate such small neighbourhoods almost exactly */
+public class ParallelHyperBallTest {
+
+  private static final int LOG2M = 10;
+  // about 3% standard error for 1024 registers, linear counting is much better for a few dozen vertices
+  private static final double RELATIVE_ERROR = 0.05;
+
+  private static final int PATH_LENGTH = 30;
+  private static final int NUM_LEAVES = 40;
+
+  @Test
+  public void neighbourhoodFunctionOfPath() throws IOException {
+    ParallelHyperBall hyperBall = new ParallelHyperBall(path(), LOG2M, 3);
+    double[] neighbourhoodFunction = hyperBall.run(2 * PATH_LENGTH);
+
+    // stops once no counter changes anymore, one iteration after the longest distance
+    assertEquals(PATH_LENGTH + 1, neighbourhoodFunction.length);
+    for (int distance = 0; distance < neighbourhoodFunction.length; distance++) {
+      // every vertex v reaches min(distance, n - 1 - v) other vertices plus itself
+      double pairs = 0;
+      for (int vertex = 0; vertex < PATH_LENGTH; vertex++) {
+        pairs += Math.min(distance, PATH_LENGTH - 1 - vertex) + 1;
+      }
+      assertClose(pairs, neighbourhoodFunction[distance]);
+    }
+  }
+
+  @Test
+  public void centralitiesOnPath() throws IOException {
+    ParallelHyperBall hyperBall = new ParallelHyperBall(path(), LOG2M, 2);
+    hyperBall.run(2 * PATH_LENGTH);
+
+    double harmonic = 0;
+    double sumOfDistances = 0;
+    for (int distance = 1; distance < PATH_LENGTH; distance++) {
+      harmonic += 1.0 / distance;
+      sumOfDistances += distance;
+    }
+    assertClose(harmonic, hyperBall.harmonicCentrality(0));
+    assertClose(1.0 / sumOfDistances, hyperBall.closenessCentrality(0));
+
+    // the end of the path reaches nothing
+    assertEquals(0, hyperBall.harmonicCentrality(PATH_LENGTH - 1), 0);
+    assertEquals(0, hyperBall.closenessCentrality(PATH_LENGTH - 1), 0);
+  }
+
+  @Test
+  public void centralitiesOnStar() throws IOException {
+    ParallelHyperBall hyperBall = new ParallelHyperBall(star(), LOG2M, 4);
+    double[] neighbourhoodFunction = hyperBall.run(10);
+
+    int numVertices = NUM_LEAVES + 1;
+    assertClose(numVertices, neighbourhoodFunction[0]);
+    assertClose(numVertices + 2 * NUM_LEAVES, neighbourhoodFunction[1]);
+    assertClose((double) numVertices * numVertices, neighbourhoodFunction[2]);
+
+    assertClose(NUM_LEAVES, hyperBall.harmonicCentrality(0));
+    // a leaf reaches the center in one step and all other leaves in two
+    for (int leaf = 1; leaf <= NUM_LEAVES; leaf++) {
+      assertClose(1 + (NUM_LEAVES - 1) / 2.0, hyperBall.harmonicCentrality(leaf));
+    }
+  }
+
+  private static void assertClose(double expected, double actual) {
+    assertEquals(expected, actual, RELATIVE_ERROR * expected);
+  }
+
+  /** 0 -> 1 -> ... -> n - 1 */
+  private static CsrGraph path() throws IOException {
+    StringBuilder edges = new StringBuilder();
+    for (int vertex = 0; vertex < PATH_LENGTH - 1; vertex++) {
+      edges.append(vertex).append('\t').append(vertex + 1).append('\n');
+    }
+    return CsrGraphTest.csrGraph(edges.toString(), false);
+  }
+
+  /** the center 0 and its leaves, linked in both directions */
+  private static CsrGraph star() throws IOException {
+    StringBuilder edges = new StringBuilder();
+    for (int leaf = 1; leaf <= NUM_LEAVES; leaf++) {
+      edges.append(0).append('\t').append(leaf).append('\n');
+      edges.append(leaf).append('\t').append(0).append('\n');
+    }
+    return CsrGraphTest.csrGraph(edges.toString(), false);
+  }
+}
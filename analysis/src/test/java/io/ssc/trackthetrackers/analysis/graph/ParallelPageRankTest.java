@@ -0,0 +1,116 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.analysis.graph;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelPageRankTest {
+
+  private static final double TELEPORTATION_PROBABILITY = 0.15;
+
+  // vertex 3 is dangling, vertex 4 has no in-links
+  private static final int[][] EDGES = { { 0, 1 }, { 0, 2 }, { 1, 2 }, { 2, 0 }, { 2, 3 }, { 4, 0 } };
+  private static final int NUM_VERTICES = 5;
+
+  @Test
+  public void matchesPowerIteration() throws IOException {
+    double[] ranks = pageRank(4).ranks(TELEPORTATION_PROBABILITY, 200, 1e-12);
+    double[] expected = powerIteration(200);
+
+    for (int vertex = 0; vertex < NUM_VERTICES; vertex++) {
+      assertEquals(expected[vertex], ranks[vertex], 1e-9);
+    }
+  }
+
+  @Test
+  public void ranksSumToOne() throws IOException {
+    double[] ranks = pageRank(3).ranks(TELEPORTATION_PROBABILITY, 200, 1e-12);
+
+    double sum = 0;
+    for (double rank : ranks) {
+      sum += rank;
+    }
+    assertEquals(1.0, sum, 1e-9);
+  }
+
+  @Test
+  public void danglingRankIsRedistributed() throws IOException {
+    double[] ranks = pageRank(2).ranks(TELEPORTATION_PROBABILITY, 200, 1e-12);
+
+    // vertex 4 only gets the teleportation and its share of the rank of the dangling vertex 3
+    double expected = (ranks[3] / NUM_VERTICES) * (1 - TELEPORTATION_PROBABILITY)
+        + TELEPORTATION_PROBABILITY / NUM_VERTICES;
+    assertEquals(expected, ranks[4], 1e-9);
+    assertTrue(ranks[4] > TELEPORTATION_PROBABILITY / NUM_VERTICES);
+  }
+
+  @Test
+  public void stopsOnceChangeIsBelowEpsilon() throws IOException {
+    // the L1 change of the first iteration is far below 10, so a single iteration runs
+    double[] afterOneIteration = pageRank(2).ranks(TELEPORTATION_PROBABILITY, 1, 0);
+    double[] ranks = pageRank(2).ranks(TELEPORTATION_PROBABILITY, 200, 10);
+
+    assertArrayEquals(afterOneIteration, ranks, 0);
+  }
+
+  private static ParallelPageRank pageRank(int numThreads) throws IOException {
+    StringBuilder edges = new StringBuilder();
+    for (int[] edge : EDGES) {
+      edges.append(edge[0]).append('\t').append(edge[1]).append('\n');
+    }
+    return new ParallelPageRank(CsrGraphTest.csrGraph(edges.toString(), true), numThreads);
+  }
+
+  /** textbook PageRank on the edge array, the rank of dangling vertices is spread over all vertices */
+  private static double[] powerIteration(int iterations) {
+    int[] outDegrees = new int[NUM_VERTICES];
+    for (int[] edge : EDGES) {
+      outDegrees[edge[0]]++;
+    }
+
+    double[] ranks = new double[NUM_VERTICES];
+    Arrays.fill(ranks, 1.0 / NUM_VERTICES);
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      double danglingRank = 0;
+      for (int vertex = 0; vertex < NUM_VERTICES; vertex++) {
+        if (outDegrees[vertex] == 0) {
+          danglingRank += ranks[vertex];
+        }
+      }
+      double[] next = new double[NUM_VERTICES];
+      for (int[] edge : EDGES) {
+        next[edge[1]] += ranks[edge[0]] / outDegrees[edge[0]];
+      }
+      for (int vertex = 0; vertex < NUM_VERTICES; vertex++) {
+        next[vertex] = (next[vertex] + danglingRank / NUM_VERTICES) * (1 - TELEPORTATION_PROBABILITY)
+            + TELEPORTATION_PROBABILITY / NUM_VERTICES;
+      }
+      ranks = next;
+    }
+    return ranks;
+  }
+}
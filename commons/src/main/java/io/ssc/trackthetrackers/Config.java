@@ -73,6 +73,12 @@ public class Config {
           "http://data.dws.informatik.uni-mannheim.de/hyperlinkgraph/2012-08/pld-index.gz");
     }
 
+    if (nullOrEmpty("webdatacommons.pldfile.dictionary")) {
+      throw new IllegalStateException("[webdatacommons.pldfile.dictionary] in conf.properties must point to a local " +
+          "file to hold the id to domain dictionary, build it from the domain index file with " +
+          "io.ssc.trackthetrackers.analysis.dictionary.DomainDictionary");
+    }
+
     if (nullOrEmpty("webdatacommons.pldarcfile.unzipped")) {
       throw new IllegalStateException("[webdatacommons.pldarcfile.unzipped] in conf.properties must point to the " +
           "unzipped webdata commons hyperlink graph file, download it from " +
@@ -0,0 +1,153 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.commons.graph;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/** iterates over the adjacency lists of a file written by {@link AdjacencyListWriter} */
+public class AdjacencyListReader implements Closeable {
+
+  private final DataInputStream in;
+  private final byte direction;
+  private final Inflater inflater = new Inflater();
+
+  private byte[] block = new byte[AdjacencyListWriter.DEFAULT_BLOCK_BYTES];
+  private int blockLength = 0;
+  private int position = 0;
+  private byte[] compressed = new byte[AdjacencyListWriter.DEFAULT_BLOCK_BYTES];
+
+  private int vertex = 0;
+  private int[] neighbours = new int[16];
+  private int numNeighbours = 0;
+
+  private long edgesRead = 0;
+
+  public AdjacencyListReader(InputStream in) throws IOException {
+    this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    if (this.in.readLong() != AdjacencyListWriter.MAGIC) {
+      throw new IOException("Not a binary adjacency list file");
+    }
+    direction = this.in.readByte();
+  }
+
+  /** {@link AdjacencyListWriter#OUT_NEIGHBOURS} or {@link AdjacencyListWriter#IN_NEIGHBOURS} */
+  public byte direction() {
+    return direction;
+  }
+
+  public boolean next() throws IOException {
+    if (position == blockLength) {
+      if (!readBlock()) {
+        return false;
+      }
+      vertex = 0;
+    }
+
+    vertex += readVarInt();
+    numNeighbours = readVarInt();
+
+    if (numNeighbours > neighbours.length) {
+      neighbours = new int[Math.max(numNeighbours, neighbours.length << 1)];
+    }
+    int neighbour = -1;
+    for (int n = 0; n < numNeighbours; n++) {
+      neighbour = n == 0 ? readVarInt() : neighbour + readVarInt() + 1;
+      neighbours[n] = neighbour;
+    }
+
+    edgesRead += numNeighbours;
+    return true;
+  }
+
+  public int vertex() {
+    return vertex;
+  }
+
+  public int numNeighbours() {
+    return numNeighbours;
+  }
+
+  /** the first {@link #numNeighbours()} entries are valid until the next call to {@link #next()} */
+  public int[] neighbours() {
+    return neighbours;
+  }
+
+  public long edgesRead() {
+    return edgesRead;
+  }
+
+  private boolean readBlock() throws IOException {
+    int uncompressedLength;
+    try {
+      uncompressedLength = in.readInt();
+    } catch (EOFException e) {
+      return false;
+    }
+    int compressedLength = in.readInt();
+
+    if (compressedLength > compressed.length) {
+      compressed = new byte[compressedLength];
+    }
+    if (uncompressedLength > block.length) {
+      block = new byte[uncompressedLength];
+    }
+    in.readFully(compressed, 0, compressedLength);
+
+    inflater.reset();
+    inflater.setInput(compressed, 0, compressedLength);
+    try {
+      blockLength = inflater.inflate(block, 0, uncompressedLength);
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt block: " + e.getMessage());
+    }
+    if (blockLength != uncompressedLength) {
+      throw new IOException("Truncated block, expected " + uncompressedLength + " bytes, got " + blockLength);
+    }
+    position = 0;
+    return true;
+  }
+
+  private int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      if (position == blockLength) {
+        throw new IOException("Adjacency list crosses block boundary");
+      }
+      byte b = block[position++];
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length int");
+  }
+
+  @Override
+  public void close() throws IOException {
+    inflater.end();
+    in.close();
+  }
+}
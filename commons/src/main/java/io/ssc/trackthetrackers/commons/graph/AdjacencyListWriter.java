@@ -0,0 +1,171 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.commons.graph;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a graph as a sequence of adjacency lists in a compact binary format, which {@link AdjacencyListReader}
+ * reads back without any text parsing.
+ *
+ * The file starts with {@link #MAGIC} and a byte telling whether the lists hold the out- or the in-neighbours of a
+ * vertex. The lists follow in blocks of roughly {@link #DEFAULT_BLOCK_BYTES} bytes, each block is deflated on its
+ * own and prefixed with its uncompressed and compressed length. Within a block, a list is stored as the gap to the
+ * previous vertex, the number of neighbours, the first neighbour and the gaps between the following neighbours, all
+ * as variable length ints. Vertices must therefore be written in ascending order, and neighbours must be sorted and
+ * distinct.
+ */
+public class AdjacencyListWriter implements Closeable {
+
+  public static final long MAGIC = 0x54545441444a4c31L; // "TTTADJL1"
+
+  public static final byte OUT_NEIGHBOURS = 0;
+  public static final byte IN_NEIGHBOURS = 1;
+
+  public static final int DEFAULT_BLOCK_BYTES = 1 << 20;
+
+  // a list needs at most two varints for the vertex and its length plus one varint per neighbour
+  private static final int MAX_VARINT_BYTES = 5;
+
+  private final DataOutputStream out;
+  private final int blockBytes;
+  private final Deflater deflater = new Deflater();
+
+  private byte[] block;
+  private int blockLength = 0;
+  private byte[] compressed;
+
+  private int previousVertex = -1;
+  private int previousVertexInBlock = 0;
+
+  private long verticesWritten = 0;
+  private long edgesWritten = 0;
+
+  public AdjacencyListWriter(OutputStream out, byte direction) throws IOException {
+    this(out, direction, DEFAULT_BLOCK_BYTES);
+  }
+
+  public AdjacencyListWriter(OutputStream out, byte direction, int blockBytes) throws IOException {
+    if (direction != OUT_NEIGHBOURS && direction != IN_NEIGHBOURS) {
+      throw new IllegalArgumentException("Unknown direction " + direction);
+    }
+    this.out = new DataOutputStream(out);
+    this.blockBytes = blockBytes;
+    block = new byte[blockBytes + 2 * MAX_VARINT_BYTES];
+    compressed = new byte[block.length];
+
+    this.out.writeLong(MAGIC);
+    this.out.writeByte(direction);
+  }
+
+  /** appends the first numNeighbours entries of neighbours as the adjacency list of vertex */
+  public void write(int vertex, int[] neighbours, int numNeighbours) throws IOException {
+    if (vertex <= previousVertex) {
+      throw new IllegalArgumentException("Vertices must be written in ascending order, " + vertex + " after "
+          + previousVertex);
+    }
+
+    ensureCapacity(blockLength + (2 + numNeighbours) * MAX_VARINT_BYTES);
+
+    writeVarInt(vertex - previousVertexInBlock);
+    writeVarInt(numNeighbours);
+
+    int previousNeighbour = -1;
+    for (int n = 0; n < numNeighbours; n++) {
+      int neighbour = neighbours[n];
+      if (neighbour <= previousNeighbour) {
+        throw new IllegalArgumentException("Neighbours of " + vertex + " must be distinct and sorted");
+      }
+      // gaps between distinct neighbours are at least one
+      writeVarInt(n == 0 ? neighbour : neighbour - previousNeighbour - 1);
+      previousNeighbour = neighbour;
+    }
+
+    previousVertex = vertex;
+    previousVertexInBlock = vertex;
+    verticesWritten++;
+    edgesWritten += numNeighbours;
+
+    if (blockLength >= blockBytes) {
+      flushBlock();
+    }
+  }
+
+  public long verticesWritten() {
+    return verticesWritten;
+  }
+
+  public long edgesWritten() {
+    return edgesWritten;
+  }
+
+  private void writeVarInt(int value) {
+    while ((value & ~0x7f) != 0) {
+      block[blockLength++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    block[blockLength++] = (byte) value;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > block.length) {
+      block = Arrays.copyOf(block, Math.max(capacity, block.length + (block.length >> 1)));
+    }
+  }
+
+  private void flushBlock() throws IOException {
+    if (blockLength == 0) {
+      return;
+    }
+
+    deflater.reset();
+    deflater.setInput(block, 0, blockLength);
+    deflater.finish();
+
+    int compressedLength = 0;
+    while (!deflater.finished()) {
+      if (compressedLength == compressed.length) {
+        compressed = Arrays.copyOf(compressed, compressed.length << 1);
+      }
+      compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+    }
+
+    out.writeInt(blockLength);
+    out.writeInt(compressedLength);
+    out.write(compressed, 0, compressedLength);
+
+    blockLength = 0;
+    previousVertexInBlock = 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flushBlock();
+    } finally {
+      deflater.end();
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.commons.graph;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Maps the overflow ids, which the tracking graph assigns to payleveldomains missing from the pld-index, to dense ids
+ * following the largest id of the pld-index. Overflow ids are hashes from [{@link #OVERFLOW_BASE}, 2^31) and too
+ * sparse for anything that allocates per id, like a CSR graph or a domain dictionary, the dense ids are not.
+ *
+ * The mapping is read from "overflowId\tdenseId" lines, as written by {@link #write(OutputStream)}.
+ */
+public class OverflowIds {
+
+  /** ids at or above this value are overflow ids, far beyond the ids of the 2012 index */
+  public static final int OVERFLOW_BASE = 1 << 30;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final int[] overflowIds;
+  private final int[] denseIds;
+
+  /** @param overflowIds the overflow ids in ascending order, denseIds[n] is the dense id of overflowIds[n] */
+  public OverflowIds(int[] overflowIds, int[] denseIds) {
+    if (overflowIds.length != denseIds.length) {
+      throw new IllegalArgumentException("Need a dense id for every overflow id");
+    }
+    for (int n = 0; n < overflowIds.length; n++) {
+      if (!isOverflowId(overflowIds[n]) || (n > 0 && overflowIds[n - 1] >= overflowIds[n])) {
+        throw new IllegalArgumentException("Overflow ids must be ascending and above " + OVERFLOW_BASE);
+      }
+      if (isOverflowId(denseIds[n])) {
+        throw new IllegalArgumentException("Dense id " + denseIds[n] + " is in the overflow range");
+      }
+    }
+    this.overflowIds = overflowIds;
+    this.denseIds = denseIds;
+  }
+
+  public static boolean isOverflowId(int id) {
+    return id >= OVERFLOW_BASE;
+  }
+
+  public int size() {
+    return overflowIds.length;
+  }
+
+  /** @return the dense id of an overflow id, ids of the pld-index are returned unchanged */
+  public int denseIdFor(int id) {
+    if (!isOverflowId(id)) {
+      return id;
+    }
+    int position = Arrays.binarySearch(overflowIds, id);
+    if (position < 0) {
+      throw new IllegalArgumentException("Unknown overflow id " + id);
+    }
+    return denseIds[position];
+  }
+
+  public static OverflowIds read(InputStream in) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8), 1 << 16);
+    try {
+      int[] overflowIds = new int[1024];
+      int[] denseIds = new int[1024];
+      int size = 0;
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int separator = line.indexOf('\t');
+        if (separator == -1) {
+          throw new IOException("Malformed line " + (size + 1) + ": " + line);
+        }
+        if (size == overflowIds.length) {
+          overflowIds = Arrays.copyOf(overflowIds, 2 * size);
+          denseIds = Arrays.copyOf(denseIds, 2 * size);
+        }
+        overflowIds[size] = Integer.parseInt(line.substring(0, separator));
+        denseIds[size] = Integer.parseInt(line.substring(separator + 1));
+        size++;
+      }
+      return new OverflowIds(Arrays.copyOf(overflowIds, size), Arrays.copyOf(denseIds, size));
+    } finally {
+      reader.close();
+    }
+  }
+
+  public void write(OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, UTF8);
+    try {
+      for (int n = 0; n < overflowIds.length; n++) {
+        writer.write(overflowIds[n] + "\t" + denseIds[n] + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A set of ints, serialized in ascending order. Depending on which is smaller, the ids are written as
+ * delta-encoded variable length ints or as a bitmap over the range they span. The decode buffer is reused
+ * across calls to {@link #readFields(DataInput)}, the registered {@link Comparator} works on the raw bytes.
+ */
+public class CompressedIntArrayWritable implements WritableComparable<CompressedIntArrayWritable> {
+
+  private static final byte DELTA_ENCODED = 0;
+  private static final byte BITMAP = 1;
+
+  private int[] values;
+  private int size;
+
+  static {
+    WritableComparator.define(CompressedIntArrayWritable.class, new Comparator());
+  }
+
+  public CompressedIntArrayWritable() {
+    values = new int[16];
+  }
+
+  public CompressedIntArrayWritable(int[] values) {
+    set(values);
+  }
+
+  /** takes ownership of the array, which gets sorted and deduplicated in place */
+  public void set(int[] values) {
+    set(values, values.length);
+  }
+
+  /** takes ownership of the array, the first length entries get sorted and deduplicated in place */
+  public void set(int[] values, int length) {
+    Arrays.sort(values, 0, length);
+    int distinct = 0;
+    for (int n = 0; n < length; n++) {
+      if (distinct == 0 || values[n] != values[distinct - 1]) {
+        values[distinct++] = values[n];
+      }
+    }
+    this.values = values;
+    this.size = distinct;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** @return the n-th smallest value */
+  public int get(int n) {
+    return values[n];
+  }
+
+  public int[] toArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+
+    WritableUtils.writeVInt(out, size);
+    if (size == 0) {
+      return;
+    }
+
+    long numWords = numBitmapWords();
+    long bitmapBytes = WritableUtils.getVIntSize(values[0]) + WritableUtils.getVIntSize(numWords) + 8 * numWords;
+
+    if (bitmapBytes < deltaEncodedBytes(bitmapBytes)) {
+      out.writeByte(BITMAP);
+      writeBitmap(out, (int) numWords);
+    } else {
+      out.writeByte(DELTA_ENCODED);
+      writeDeltaEncoded(out);
+    }
+  }
+
+  private long numBitmapWords() {
+    long range = (long) values[size - 1] - values[0] + 1;
+    return (range + 63) / 64;
+  }
+
+  /** size of the delta encoding, stops counting once it exceeds the given limit */
+  private long deltaEncodedBytes(long limit) {
+    long bytes = WritableUtils.getVIntSize(values[0]);
+    for (int n = 1; n < size && bytes <= limit; n++) {
+      bytes += WritableUtils.getVIntSize(values[n] - values[n - 1]);
+    }
+    return bytes;
+  }
+
+  private void writeDeltaEncoded(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, values[0]);
+    for (int n = 1; n < size; n++) {
+      WritableUtils.writeVInt(out, values[n] - values[n - 1]);
+    }
+  }
+
+  private void writeBitmap(DataOutput out, int numWords) throws IOException {
+    int base = values[0];
+    WritableUtils.writeVInt(out, base);
+    WritableUtils.writeVInt(out, numWords);
+
+    long word = 0;
+    int wordIndex = 0;
+    for (int n = 0; n < size; n++) {
+      int offset = values[n] - base;
+      while (offset >>> 6 != wordIndex) {
+        out.writeLong(word);
+        word = 0;
+        wordIndex++;
+      }
+      word |= 1L << (offset & 63);
+    }
+    out.writeLong(word);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+
+    size = WritableUtils.readVInt(in);
+    if (values == null || values.length < size) {
+      values = new int[Math.max(size, values == null ? 0 : values.length * 2)];
+    }
+    if (size == 0) {
+      return;
+    }
+
+    byte format = in.readByte();
+    if (format == DELTA_ENCODED) {
+      int value = WritableUtils.readVInt(in);
+      values[0] = value;
+      for (int n = 1; n < size; n++) {
+        value += WritableUtils.readVInt(in);
+        values[n] = value;
+      }
+    } else if (format == BITMAP) {
+      int base = WritableUtils.readVInt(in);
+      int numWords = WritableUtils.readVInt(in);
+      int n = 0;
+      for (int wordIndex = 0; wordIndex < numWords; wordIndex++) {
+        long word = in.readLong();
+        while (word != 0) {
+          values[n++] = base + (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+        }
+      }
+    } else {
+      throw new IOException("Unknown encoding " + format);
+    }
+  }
+
+  /** lexicographic order over the ascending values, a prefix sorts first */
+  @Override
+  public int compareTo(CompressedIntArrayWritable other) {
+    int common = Math.min(size, other.size);
+    for (int n = 0; n < common; n++) {
+      if (values[n] != other.values[n]) {
+        return values[n] < other.values[n] ? -1 : 1;
+      }
+    }
+    return size < other.size ? -1 : (size == other.size ? 0 : 1);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof CompressedIntArrayWritable && compareTo((CompressedIntArrayWritable) o) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for (int n = 0; n < size; n++) {
+      hash = 31 * hash + values[n];
+    }
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+
+  /** compares serialized sets without deserializing them, not thread-safe like the other hadoop comparators */
+  public static class Comparator extends WritableComparator {
+
+    private final RawDecoder decoder1 = new RawDecoder();
+    private final RawDecoder decoder2 = new RawDecoder();
+
+    public Comparator() {
+      super(CompressedIntArrayWritable.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      try {
+        decoder1.reset(b1, s1);
+        decoder2.reset(b2, s2);
+
+        while (decoder1.hasNext() && decoder2.hasNext()) {
+          int value1 = decoder1.next();
+          int value2 = decoder2.next();
+          if (value1 != value2) {
+            return value1 < value2 ? -1 : 1;
+          }
+        }
+        return decoder1.hasNext() ? 1 : (decoder2.hasNext() ? -1 : 0);
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+  }
+
+  /** iterates over the values of a serialized instance */
+  static class RawDecoder {
+
+    private byte[] bytes;
+    private int position;
+    private int remaining;
+    private byte format;
+
+    private int value;
+    private int base;
+    private int wordIndex;
+    private long word;
+
+    void reset(byte[] bytes, int start) throws IOException {
+      this.bytes = bytes;
+      position = start;
+      remaining = readVInt();
+      if (remaining > 0) {
+        format = bytes[position++];
+        if (format == DELTA_ENCODED) {
+          value = 0;
+        } else {
+          base = readVInt();
+          readVInt();
+          wordIndex = -1;
+          word = 0;
+        }
+      }
+    }
+
+    boolean hasNext() {
+      return remaining > 0;
+    }
+
+    int next() throws IOException {
+      remaining--;
+      if (format == DELTA_ENCODED) {
+        value += readVInt();
+        return value;
+      }
+
+      while (word == 0) {
+        word = WritableComparator.readLong(bytes, position);
+        position += 8;
+        wordIndex++;
+      }
+      int next = base + (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+      word &= word - 1;
+      return next;
+    }
+
+    private int readVInt() throws IOException {
+      int next = WritableComparator.readVInt(bytes, position);
+      position += WritableUtils.decodeVIntSize(bytes[position]);
+      return next;
+    }
+  }
+}
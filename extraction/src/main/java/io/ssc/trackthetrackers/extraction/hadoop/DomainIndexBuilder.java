@@ -0,0 +1,64 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import io.ssc.trackthetrackers.extraction.hadoop.util.MappedDomainIndex;
+import io.ssc.trackthetrackers.extraction.hadoop.util.PerfectHashDomainIndex;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.util.Map;
+
+/**
+ * One-time conversion of the gzipped text payleveldomain index into the binary format of {@link MappedDomainIndex}
+ * (--format mapped, the default) or {@link PerfectHashDomainIndex} (--format perfecthash). The output can be passed
+ * as --domainIndex to {@link TrackingGraphJob}.
+ */
+public class DomainIndexBuilder extends HadoopJob {
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new DomainIndexBuilder(), args);
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+
+    Map<String,String> parsedArgs = parseArgs(args);
+
+    Path inputPath = new Path(parsedArgs.get("--input"));
+    Path outputPath = new Path(parsedArgs.get("--output"));
+
+    Configuration conf = getConf() != null ? getConf() : new Configuration();
+    FileSystem fs = FileSystem.get(inputPath.toUri(), conf);
+
+    String format = parsedArgs.containsKey("--format") ? parsedArgs.get("--format") : "mapped";
+    if ("mapped".equals(format)) {
+      MappedDomainIndex.build(fs, inputPath, outputPath);
+    } else if ("perfecthash".equals(format)) {
+      PerfectHashDomainIndex.build(fs, inputPath, outputPath);
+    } else {
+      throw new IllegalArgumentException("Unknown format: " + format);
+    }
+
+    return 0;
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** when an edge of the tracking graph was first and last seen, and on how many pages */
+public class EdgeStatsWritable implements Writable {
+
+  private long firstSeen;
+  private long lastSeen;
+  private long numPages;
+
+  public EdgeStatsWritable() {}
+
+  public EdgeStatsWritable(long firstSeen, long lastSeen, long numPages) {
+    set(firstSeen, lastSeen, numPages);
+  }
+
+  public void set(long firstSeen, long lastSeen, long numPages) {
+    this.firstSeen = firstSeen;
+    this.lastSeen = lastSeen;
+    this.numPages = numPages;
+  }
+
+  public void set(EdgeStatsWritable other) {
+    set(other.firstSeen, other.lastSeen, other.numPages);
+  }
+
+  /** widens the time range to include the other observations and adds up the pages */
+  public void merge(EdgeStatsWritable other) {
+    firstSeen = Math.min(firstSeen, other.firstSeen);
+    lastSeen = Math.max(lastSeen, other.lastSeen);
+    numPages += other.numPages;
+  }
+
+  /** archive time in millis of the first page the edge was seen on */
+  public long firstSeen() {
+    return firstSeen;
+  }
+
+  /** archive time in millis of the last page the edge was seen on */
+  public long lastSeen() {
+    return lastSeen;
+  }
+
+  public long numPages() {
+    return numPages;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeLong(firstSeen);
+    // most edges are seen within a single crawl, so the difference is small
+    WritableUtils.writeVLong(out, lastSeen - firstSeen);
+    WritableUtils.writeVLong(out, numPages);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    firstSeen = in.readLong();
+    lastSeen = firstSeen + WritableUtils.readVLong(in);
+    numPages = WritableUtils.readVLong(in);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof EdgeStatsWritable)) {
+      return false;
+    }
+    EdgeStatsWritable other = (EdgeStatsWritable) o;
+    return firstSeen == other.firstSeen && lastSeen == other.lastSeen && numPages == other.numPages;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * (int) (firstSeen ^ (firstSeen >>> 32)) + (int) (lastSeen ^ (lastSeen >>> 32)))
+        + (int) (numPages ^ (numPages >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return firstSeen + "\t" + lastSeen + "\t" + numPages;
+  }
+}
@@ -24,6 +24,7 @@ import com.google.common.io.Closeables;
 
 import io.ssc.trackthetrackers.extraction.hadoop.io.ArcInputFormat;
 import io.ssc.trackthetrackers.extraction.hadoop.io.ArcRecord;
+import io.ssc.trackthetrackers.extraction.hadoop.util.HostSampler;
 import io.ssc.trackthetrackers.extraction.resources.ResourceExtractor;
 import io.ssc.trackthetrackers.extraction.resources.Resource;
 import io.ssc.trackthetrackers.commons.proto.ParsedPageProtos;
@@ -45,6 +46,8 @@ import parquet.proto.ProtoParquetOutputFormat;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
@@ -64,7 +67,7 @@ public class ExtractionJob extends HadoopJob {
 
   public enum JobCounters {
     PAGES, RESOURCES, PROTOCOL_EXCEPTIONS, HTTP_EXCEPTIONS, PARSE_EXCEPTIONS, CHARSET_EXCEPTIONS, STACKOVERFLOW_ERRORS,
-    EXTRACTIONS_KILLED
+    EXTRACTIONS_KILLED, SAMPLED_OUT
   }
 
   public static void main(String[] args) throws Exception {
@@ -86,9 +89,11 @@ public class ExtractionJob extends HadoopJob {
     ProtoParquetOutputFormat.setCompression(job, CompressionCodecName.SNAPPY);
     ProtoParquetOutputFormat.setEnableDictionary(job, true);
 
-    job.waitForCompletion(true);
+    if (parsedArgs.containsKey("--sampleRate")) {
+      job.getConfiguration().set(HostSampler.SAMPLE_RATE, parsedArgs.get("--sampleRate"));
+    }
 
-    return 0;
+    return job.waitForCompletion(true) ? 0 : -1;
   }
 
   /** custom ThreadFactory which allows explicit stopping of created threads for deadlock resolution */
@@ -123,6 +128,14 @@ public class ExtractionJob extends HadoopJob {
     private final RobustThreadFactory threadFactory = new RobustThreadFactory();
     private ExecutorService executorService = Executors.newSingleThreadExecutor(threadFactory);
 
+    private HostSampler hostSampler;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      super.setup(context);
+      hostSampler = HostSampler.fromConf(context.getConfiguration());
+    }
+
     @Override
     protected void cleanup(Context context) throws IOException, InterruptedException {
       super.cleanup(context);
@@ -134,6 +147,13 @@ public class ExtractionJob extends HadoopJob {
     public void map(Writable key, final ArcRecord record, Context context) throws IOException, InterruptedException {
 
       if ("text/html".equals(record.getContentType())) {
+
+        // decide before parsing anything, TrackingGraphJob samples the same sites for the same rate
+        if (hostSampler != null && !inSample(record.getURL())) {
+          context.getCounter(JobCounters.SAMPLED_OUT).increment(1);
+          return;
+        }
+
         Charset charset = null;
 
         try {
@@ -211,6 +231,15 @@ public class ExtractionJob extends HadoopJob {
       }
     }
 
+    private boolean inSample(String url) {
+      try {
+        String host = new URI(url).getHost();
+        return host != null && hostSampler.accept(host);
+      } catch (URISyntaxException e) {
+        return false;
+      }
+    }
+
     private void robustExecutorServiceRest() {
       executorService.shutdownNow();
       threadFactory.killDeadlockedThreads();
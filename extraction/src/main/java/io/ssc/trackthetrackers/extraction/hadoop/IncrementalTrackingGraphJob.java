@@ -0,0 +1,352 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import com.google.common.io.Closeables;
+import io.ssc.trackthetrackers.commons.proto.ParsedPageProtos;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ToolRunner;
+import parquet.proto.ProtoParquetInputFormat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Merges the tracking edges of a new crawl segment into a store that keeps, for every edge, the archive time of the
+ * first and the last page it was seen on and the number of pages it was seen on.
+ *
+ * The store is a directory of block-compressed SequenceFiles, one per partition, which hold the edges of a fixed
+ * subset of the tracked hosts sorted by edge. Each reducer of the job owns one partition and merges the sorted edges
+ * of the segment with the existing partition file in a single streaming pass. Partitions without edges in the segment
+ * are neither read nor rewritten. The number of partitions is chosen when the store is created, via --numPartitions.
+ *
+ * The merged partitions are written to a staging directory and only moved into the store once the job succeeded, a
+ * marker in the staging directory records that. A run that finds the marker finishes the promotion of the previous
+ * run first, so a crash while promoting neither loses the merged partitions nor applies a segment twice.
+ */
+public class IncrementalTrackingGraphJob extends HadoopJob {
+
+  /** path of the store, read by the reducers */
+  static final String STORE = "trackthetrackers.incrementalgraph.store";
+
+  static final int DEFAULT_NUM_PARTITIONS = 64;
+
+  static final String NUM_PARTITIONS_FILE = "_partitions";
+  static final String INCOMING_DIR = "_incoming";
+  /** written into the staging directory once the job succeeded, holds the input path of the merged segment */
+  static final String COMMITTED_MARKER = "_COMMITTED";
+
+  public enum JobCounters {
+    NEW_EDGES,
+    UPDATED_EDGES,
+    COPIED_EDGES,
+    PARTITIONS_REWRITTEN
+  }
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new IncrementalTrackingGraphJob(), args);
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+
+    Map<String,String> parsedArgs = parseArgs(args);
+
+    Path inputPath = new Path(parsedArgs.get("--input"));
+    Path storePath = new Path(parsedArgs.get("--store"));
+
+    // the reducers place their partitions here, they are only moved into the store once the whole job succeeded
+    Path incomingPath = new Path(storePath, INCOMING_DIR);
+
+    Job mergeSegment = mapReduce(inputPath, incomingPath, ProtoParquetInputFormat.class,
+        SequenceFileOutputFormat.class, EdgeStatsMapper.class, LongWritable.class, EdgeStatsWritable.class,
+        MergeWithStoreReducer.class, LongWritable.class, EdgeStatsWritable.class, false);
+
+    mergeSegment.setCombinerClass(EdgeStatsCombiner.class);
+    mergeSegment.setPartitionerClass(TrackedHostPartitioner.class);
+
+    TrackingGraphJob.configureInput(mergeSegment, parsedArgs, true);
+
+    Configuration conf = mergeSegment.getConfiguration();
+    FileSystem fs = storePath.getFileSystem(conf);
+
+    int numPartitions = parsedArgs.containsKey("--numPartitions") ?
+        Integer.parseInt(parsedArgs.get("--numPartitions")) : DEFAULT_NUM_PARTITIONS;
+    mergeSegment.setNumReduceTasks(numPartitions(fs, storePath, numPartitions));
+    conf.set(STORE, storePath.toString());
+
+    if (isCommitted(fs, incomingPath)) {
+      String mergedInput = committedInput(fs, incomingPath);
+      promote(fs, storePath);
+      // the segment was already merged by the previous run, which crashed while promoting its partitions
+      if (inputPath.toString().equals(mergedInput)) {
+        return 0;
+      }
+    }
+
+    // leftovers of a failed run
+    fs.delete(incomingPath, true);
+
+    if (!mergeSegment.waitForCompletion(true)) {
+      return -1;
+    }
+
+    markCommitted(fs, incomingPath, inputPath);
+    promote(fs, storePath);
+
+    return 0;
+  }
+
+  static boolean isCommitted(FileSystem fs, Path incomingPath) throws IOException {
+    return fs.exists(new Path(incomingPath, COMMITTED_MARKER));
+  }
+
+  static void markCommitted(FileSystem fs, Path incomingPath, Path inputPath) throws IOException {
+    FSDataOutputStream out = fs.create(new Path(incomingPath, COMMITTED_MARKER), true);
+    try {
+      out.writeUTF(inputPath.toString());
+    } finally {
+      Closeables.close(out, false);
+    }
+  }
+
+  static String committedInput(FileSystem fs, Path incomingPath) throws IOException {
+    FSDataInputStream in = fs.open(new Path(incomingPath, COMMITTED_MARKER));
+    try {
+      return in.readUTF();
+    } finally {
+      Closeables.close(in, true);
+    }
+  }
+
+  /**
+   * Moves the merged partitions of a committed job into the store. Partitions are removed from the staging directory
+   * as they are moved, so after a crash this can simply be called again. The staging directory, including the marker,
+   * is only deleted once all partitions are in place.
+   */
+  static void promote(FileSystem fs, Path storePath) throws IOException {
+    Path incomingPath = new Path(storePath, INCOMING_DIR);
+    if (!isCommitted(fs, incomingPath)) {
+      throw new IllegalStateException("The merge job writing to " + incomingPath + " did not commit");
+    }
+
+    FileStatus[] mergedPartitions = fs.listStatus(incomingPath);
+    Arrays.sort(mergedPartitions);
+    for (FileStatus mergedPartition : mergedPartitions) {
+      String name = mergedPartition.getPath().getName();
+      if (name.startsWith("partition-")) {
+        Path partition = new Path(storePath, name);
+        fs.delete(partition, false);
+        if (!fs.rename(mergedPartition.getPath(), partition)) {
+          throw new IOException("Unable to move " + mergedPartition.getPath() + " to " + partition);
+        }
+      }
+    }
+    fs.delete(incomingPath, true);
+  }
+
+  /** the number of partitions of an existing store, a new store is created with the given number */
+  static int numPartitions(FileSystem fs, Path storePath, int numPartitionsOfNewStore) throws IOException {
+    Path numPartitionsFile = new Path(storePath, NUM_PARTITIONS_FILE);
+
+    if (fs.exists(numPartitionsFile)) {
+      FSDataInputStream in = fs.open(numPartitionsFile);
+      try {
+        return in.readInt();
+      } finally {
+        Closeables.close(in, true);
+      }
+    }
+
+    FSDataOutputStream out = fs.create(numPartitionsFile, false);
+    try {
+      out.writeInt(numPartitionsOfNewStore);
+    } finally {
+      Closeables.close(out, false);
+    }
+    return numPartitionsOfNewStore;
+  }
+
+  static String partitionName(int partition) {
+    return String.format("partition-%05d", partition);
+  }
+
+  /** edges are keyed by tracking host first, so a partition file is sorted like the text edge list */
+  public static long edge(int trackingHostIndex, int trackedHostIndex) {
+    return ((long) trackingHostIndex << 32) | (trackedHostIndex & 0xffffffffL);
+  }
+
+  public static int trackingHost(long edge) {
+    return (int) (edge >>> 32);
+  }
+
+  public static int trackedHost(long edge) {
+    return (int) edge;
+  }
+
+  /** all edges pointing to a tracked host end up in the same partition */
+  static class TrackedHostPartitioner extends Partitioner<LongWritable, EdgeStatsWritable> {
+    @Override
+    public int getPartition(LongWritable edge, EdgeStatsWritable stats, int numPartitions) {
+      return (trackedHost(edge.get()) & Integer.MAX_VALUE) % numPartitions;
+    }
+  }
+
+  /** emits every distinct edge of a page, seen once at the archive time of the page */
+  static class EdgeStatsMapper extends TrackingGraphJob.TrackingHostsMapper<LongWritable, EdgeStatsWritable> {
+
+    private final LongWritable edgeWritable = new LongWritable();
+    private final EdgeStatsWritable statsWritable = new EdgeStatsWritable();
+
+    @Override
+    protected void map(int trackedHostIndex, int[] trackingHosts, int numTrackingHosts,
+        ParsedPageProtos.ParsedPageOrBuilder parsedPage, Context ctx) throws IOException, InterruptedException {
+
+      long archiveTime = parsedPage.getArchiveTime();
+      statsWritable.set(archiveTime, archiveTime, 1);
+
+      // several hosts of the page may share a payleveldomain, the page must only count once per edge
+      Arrays.sort(trackingHosts, 0, numTrackingHosts);
+      for (int n = 0; n < numTrackingHosts; n++) {
+        int trackingHostIndex = trackingHosts[n];
+        if ((n > 0 && trackingHostIndex == trackingHosts[n - 1]) || trackingHostIndex == trackedHostIndex) {
+          continue;
+        }
+        edgeWritable.set(edge(trackingHostIndex, trackedHostIndex));
+        ctx.write(edgeWritable, statsWritable);
+      }
+    }
+  }
+
+  static class EdgeStatsCombiner extends Reducer<LongWritable, EdgeStatsWritable, LongWritable, EdgeStatsWritable> {
+
+    private final EdgeStatsWritable merged = new EdgeStatsWritable();
+
+    @Override
+    protected void reduce(LongWritable edge, Iterable<EdgeStatsWritable> values, Context ctx)
+        throws IOException, InterruptedException {
+      ctx.write(edge, merge(values, merged));
+    }
+  }
+
+  /**
+   * Merges the incoming edges of its partition with the edges already in the store. The partition file is only
+   * opened when the first incoming edge arrives, so untouched partitions cost nothing.
+   */
+  static class MergeWithStoreReducer
+      extends Reducer<LongWritable, EdgeStatsWritable, LongWritable, EdgeStatsWritable> {
+
+    private final EdgeStatsWritable merged = new EdgeStatsWritable();
+
+    private final LongWritable storedEdge = new LongWritable();
+    private final EdgeStatsWritable storedStats = new EdgeStatsWritable();
+    private SequenceFile.Reader storeReader;
+    private boolean hasStoredEdge = false;
+
+    private SequenceFile.Writer writer;
+
+    @Override
+    protected void reduce(LongWritable edge, Iterable<EdgeStatsWritable> values, Context ctx)
+        throws IOException, InterruptedException {
+
+      if (writer == null) {
+        open(ctx);
+      }
+
+      merge(values, merged);
+
+      // edges of the store which were not seen again are copied over unchanged
+      while (hasStoredEdge && storedEdge.get() < edge.get()) {
+        writer.append(storedEdge, storedStats);
+        ctx.getCounter(JobCounters.COPIED_EDGES).increment(1);
+        hasStoredEdge = storeReader.next(storedEdge, storedStats);
+      }
+
+      if (hasStoredEdge && storedEdge.get() == edge.get()) {
+        merged.merge(storedStats);
+        ctx.getCounter(JobCounters.UPDATED_EDGES).increment(1);
+        hasStoredEdge = storeReader.next(storedEdge, storedStats);
+      } else {
+        ctx.getCounter(JobCounters.NEW_EDGES).increment(1);
+      }
+
+      writer.append(edge, merged);
+    }
+
+    private void open(Context ctx) throws IOException {
+      Configuration conf = ctx.getConfiguration();
+      String partitionName = partitionName(ctx.getTaskAttemptID().getTaskID().getId());
+
+      Path storedPartition = new Path(conf.get(STORE), partitionName);
+      FileSystem fs = storedPartition.getFileSystem(conf);
+      if (fs.exists(storedPartition)) {
+        storeReader = new SequenceFile.Reader(fs, storedPartition, conf);
+        hasStoredEdge = storeReader.next(storedEdge, storedStats);
+      }
+
+      // side file in the task's work directory, it gets promoted to the job output when the task commits
+      Path mergedPartition = new Path(FileOutputFormat.getWorkOutputPath(ctx), partitionName);
+      writer = SequenceFile.createWriter(fs, conf, mergedPartition, LongWritable.class, EdgeStatsWritable.class,
+          SequenceFile.CompressionType.BLOCK);
+    }
+
+    @Override
+    protected void cleanup(Context ctx) throws IOException, InterruptedException {
+      if (writer == null) {
+        return;
+      }
+
+      while (hasStoredEdge) {
+        writer.append(storedEdge, storedStats);
+        ctx.getCounter(JobCounters.COPIED_EDGES).increment(1);
+        hasStoredEdge = storeReader.next(storedEdge, storedStats);
+      }
+
+      Closeables.close(storeReader, true);
+      Closeables.close(writer, false);
+      ctx.getCounter(JobCounters.PARTITIONS_REWRITTEN).increment(1);
+    }
+  }
+
+  private static EdgeStatsWritable merge(Iterable<EdgeStatsWritable> values, EdgeStatsWritable merged) {
+    boolean first = true;
+    for (EdgeStatsWritable stats : values) {
+      if (first) {
+        merged.set(stats);
+        first = false;
+      } else {
+        merged.merge(stats);
+      }
+    }
+    return merged;
+  }
+}
@@ -0,0 +1,334 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import io.ssc.trackthetrackers.commons.graph.OverflowIds;
+import io.ssc.trackthetrackers.commons.proto.ParsedPageProtos;
+import io.ssc.trackthetrackers.extraction.hadoop.util.DistributedCacheHelper;
+import io.ssc.trackthetrackers.extraction.hadoop.util.DomainIndex;
+import io.ssc.trackthetrackers.extraction.hadoop.util.HostIndexCache;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.ToolRunner;
+import parquet.proto.ProtoParquetInputFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Collects the payleveldomains of a crawl which are missing from the domain index and gives them dense ids, which
+ * follow the largest id of the index in the order of the overflow ids that {@link TrackingGraphJob} assigned to them.
+ * When several domains hash to the same overflow id, the tracking graph can't tell them apart anymore, their edges
+ * all belong to a single vertex. Only the smallest domain is kept as its label, and the job fails if more than
+ * --maxCollisions domains (default {@value #DEFAULT_MAX_COLLISIONS}) were merged that way, as the graph would then
+ * credit edges to the wrong domains. The first colliding domains are logged by the reducer.
+ *
+ * The output has the "domain\tid" format of the pld-index and is sorted by id. Next to it, the job writes
+ * {@link #OVERFLOW_IDS_FILE} with the "overflowId\tdenseId" mapping, which CsrGraph.build uses to remap the tracking
+ * graph, and, if the domain index is the gzipped text pld-index, {@link #CONSOLIDATED_INDEX_FILE}, the pld-index
+ * followed by the overflow domains. The consolidated index covers all ids of a remapped graph and can be turned into
+ * a DomainDictionary or a binary domain index.
+ *
+ * usage: --input path --output path --domainIndex path [--firstId id] [--maxCollisions n]
+ */
+public class OverflowDomainsJob extends HadoopJob {
+
+  public static final String OVERFLOW_IDS_FILE = "_overflowIds";
+  public static final String CONSOLIDATED_INDEX_FILE = "_consolidated-pld-index.gz";
+
+  static final String FIRST_DENSE_ID = "trackthetrackers.overflow.firstDenseId";
+
+  static final long DEFAULT_MAX_COLLISIONS = 0;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  public enum JobCounters {
+    OVERFLOW_DOMAINS,
+    OVERFLOW_ID_COLLISIONS
+  }
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new OverflowDomainsJob(), args);
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+
+    Map<String,String> parsedArgs = parseArgs(args);
+
+    Path inputPath = new Path(parsedArgs.get("--input"));
+    Path outputPath = new Path(parsedArgs.get("--output"));
+
+    Job collectOverflowDomains = mapReduce(inputPath, outputPath, ProtoParquetInputFormat.class,
+        TextOutputFormat.class, OverflowDomainsMapper.class, IntWritable.class, Text.class,
+        FirstDomainPerIdReducer.class, Text.class, IntWritable.class, false);
+
+    collectOverflowDomains.setCombinerClass(DistinctDomainsCombiner.class);
+    // a single, id-ordered output file
+    collectOverflowDomains.setNumReduceTasks(1);
+
+    Path domainIndex = new Path(parsedArgs.get("--domainIndex"));
+    Configuration conf = collectOverflowDomains.getConfiguration();
+    DistributedCacheHelper.cacheFile(domainIndex, conf);
+
+    int firstDenseId;
+    if (parsedArgs.containsKey("--firstId")) {
+      firstDenseId = Integer.parseInt(parsedArgs.get("--firstId"));
+    } else {
+      firstDenseId = DomainIndex.open(domainIndex.getFileSystem(conf), domainIndex).maxIndex() + 1;
+    }
+    conf.setInt(FIRST_DENSE_ID, firstDenseId);
+
+    long maxCollisions = parsedArgs.containsKey("--maxCollisions") ?
+        Long.parseLong(parsedArgs.get("--maxCollisions")) : DEFAULT_MAX_COLLISIONS;
+
+    if (!collectOverflowDomains.waitForCompletion(true)) {
+      return -1;
+    }
+
+    long collisions =
+        collectOverflowDomains.getCounters().findCounter(JobCounters.OVERFLOW_ID_COLLISIONS).getValue();
+    if (collisions > maxCollisions) {
+      throw new IllegalStateException(collisions + " overflow domains share their overflow id with another domain, " +
+          "their edges are merged in the tracking graph. Pass --maxCollisions to accept that.");
+    }
+
+    FileSystem fs = outputPath.getFileSystem(conf);
+    Path overflowDomains = new Path(outputPath, "part-r-00000");
+    writeOverflowIds(fs, overflowDomains, new Path(outputPath, OVERFLOW_IDS_FILE));
+    if (isGzipped(fs, domainIndex)) {
+      writeConsolidatedIndex(fs, domainIndex, overflowDomains, new Path(outputPath, CONSOLIDATED_INDEX_FILE));
+    } else {
+      System.out.println("Not writing a consolidated index, " + domainIndex + " is not the gzipped pld-index");
+    }
+    return 0;
+  }
+
+  /** recomputes the overflow id of every domain in the output, which is sorted by both ids */
+  static void writeOverflowIds(FileSystem fs, Path overflowDomains, Path overflowIdsFile) throws IOException {
+    IntArrayList overflowIds = new IntArrayList();
+    IntArrayList denseIds = new IntArrayList();
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(overflowDomains), UTF8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int separator = line.indexOf('\t');
+        overflowIds.add(HostIndexCache.overflowIndexFor(line.substring(0, separator)));
+        denseIds.add(Integer.parseInt(line.substring(separator + 1)));
+      }
+    } finally {
+      Closeables.close(reader, true);
+    }
+
+    new OverflowIds(overflowIds.toIntArray(), denseIds.toIntArray()).write(fs.create(overflowIdsFile, true));
+  }
+
+  /** the pld-index followed by the overflow domains, both sorted by id */
+  static void writeConsolidatedIndex(FileSystem fs, Path pldIndex, Path overflowDomains, Path consolidatedIndex)
+      throws IOException {
+    OutputStream out = new GZIPOutputStream(new BufferedOutputStream(fs.create(consolidatedIndex, true), 1 << 20));
+    boolean threw = true;
+    try {
+      copy(new GZIPInputStream(fs.open(pldIndex)), out);
+      copy(fs.open(overflowDomains), out);
+      threw = false;
+    } finally {
+      Closeables.close(out, threw);
+    }
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    try {
+      ByteStreams.copy(in, out);
+    } finally {
+      Closeables.close(in, true);
+    }
+  }
+
+  private static boolean isGzipped(FileSystem fs, Path file) throws IOException {
+    InputStream in = fs.open(file);
+    try {
+      return in.read() == 0x1f && in.read() == 0x8b;
+    } finally {
+      Closeables.close(in, true);
+    }
+  }
+
+  static class OverflowDomainsMapper
+      extends Mapper<Void, ParsedPageProtos.ParsedPage.Builder, IntWritable, Text> {
+
+    private static final int MAX_EMITTED = 100000;
+
+    private static DomainIndex domainIndex;
+
+    // avoids emitting the same domain over and over again
+    private final Set<String> emitted = Sets.newHashSet();
+
+    private final IntWritable overflowIdWritable = new IntWritable();
+    private final Text domainWritable = new Text();
+
+    @Override
+    protected void setup(Context ctx) throws IOException, InterruptedException {
+      Path domainIndexFile = DistributedCacheHelper.getCachedFiles(ctx.getConfiguration())[0];
+      FileSystem fs = FileSystem.get(domainIndexFile.toUri(), ctx.getConfiguration());
+      // potentially exploit VM re-use
+      if (domainIndex == null) {
+        domainIndex = DomainIndex.open(fs, domainIndexFile);
+      }
+    }
+
+    @Override
+    public void map(Void key, ParsedPageProtos.ParsedPage.Builder parsedPage, Context ctx)
+        throws IOException, InterruptedException {
+
+      if (parsedPage == null) {
+        return;
+      }
+
+      try {
+        String host = new URI(parsedPage.getUrl()).getHost();
+        if (host != null) {
+          collect(host, ctx);
+        }
+      } catch (URISyntaxException e) {
+        // TrackingGraphJob drops these pages as well
+      }
+
+      for (String trackingHost : parsedPage.getScriptsList()) {
+        collect(trackingHost, ctx);
+      }
+      for (String trackingHost : parsedPage.getIframesList()) {
+        collect(trackingHost, ctx);
+      }
+      for (String trackingHost : parsedPage.getImagesList()) {
+        collect(trackingHost, ctx);
+      }
+      for (String trackingHost : parsedPage.getLinksList()) {
+        collect(trackingHost, ctx);
+      }
+    }
+
+    private void collect(String host, Context ctx) throws IOException, InterruptedException {
+      String paylevelDomain = HostIndexCache.paylevelDomainOf(host);
+      if (paylevelDomain == null || emitted.contains(paylevelDomain)) {
+        return;
+      }
+      if (domainIndex.lookup(paylevelDomain) != DomainIndex.UNKNOWN) {
+        return;
+      }
+
+      if (emitted.size() == MAX_EMITTED) {
+        emitted.clear();
+      }
+      emitted.add(paylevelDomain);
+
+      overflowIdWritable.set(HostIndexCache.overflowIndexFor(paylevelDomain));
+      domainWritable.set(paylevelDomain);
+      ctx.write(overflowIdWritable, domainWritable);
+    }
+  }
+
+  static class DistinctDomainsCombiner extends Reducer<IntWritable, Text, IntWritable, Text> {
+
+    private final Text domainWritable = new Text();
+
+    @Override
+    protected void reduce(IntWritable overflowId, Iterable<Text> domains, Context ctx)
+        throws IOException, InterruptedException {
+      for (String domain : distinct(domains)) {
+        domainWritable.set(domain);
+        ctx.write(overflowId, domainWritable);
+      }
+    }
+  }
+
+  /** the single reducer sees the overflow ids in ascending order and numbers them from the first dense id on */
+  static class FirstDomainPerIdReducer extends Reducer<IntWritable, Text, Text, IntWritable> {
+
+    private static final int MAX_LOGGED_COLLISIONS = 100;
+
+    private final Text domainWritable = new Text();
+    private final IntWritable denseIdWritable = new IntWritable();
+
+    private int nextDenseId;
+    private int loggedCollisions = 0;
+
+    @Override
+    protected void setup(Context ctx) throws IOException, InterruptedException {
+      nextDenseId = ctx.getConfiguration().getInt(FIRST_DENSE_ID, -1);
+      if (nextDenseId <= 0) {
+        throw new IllegalStateException(FIRST_DENSE_ID + " is not set");
+      }
+    }
+
+    @Override
+    protected void reduce(IntWritable overflowId, Iterable<Text> domains, Context ctx)
+        throws IOException, InterruptedException {
+
+      SortedSet<String> distinctDomains = distinct(domains);
+
+      ctx.getCounter(JobCounters.OVERFLOW_DOMAINS).increment(distinctDomains.size());
+      ctx.getCounter(JobCounters.OVERFLOW_ID_COLLISIONS).increment(distinctDomains.size() - 1);
+      if (distinctDomains.size() > 1 && loggedCollisions++ < MAX_LOGGED_COLLISIONS) {
+        System.err.println("Overflow id " + overflowId.get() + " is shared by " + distinctDomains);
+      }
+
+      if (HostIndexCache.isOverflowIndex(nextDenseId)) {
+        throw new IllegalStateException("Dense ids reach the overflow range");
+      }
+
+      domainWritable.set(distinctDomains.first());
+      denseIdWritable.set(nextDenseId++);
+      ctx.write(domainWritable, denseIdWritable);
+    }
+  }
+
+  private static SortedSet<String> distinct(Iterable<Text> domains) {
+    SortedSet<String> distinctDomains = Sets.newTreeSet();
+    for (Text domain : domains) {
+      distinctDomains.add(domain.toString());
+    }
+    return distinctDomains;
+  }
+}
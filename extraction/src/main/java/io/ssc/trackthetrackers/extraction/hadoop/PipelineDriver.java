@@ -0,0 +1,295 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import io.ssc.trackthetrackers.extraction.hadoop.util.MurmurHash;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs extraction and graph construction as a pipeline of stages below a work directory. Every stage gets a
+ * fingerprint over its parameters, the version of the code that runs it and the fingerprints of its inputs, which is
+ * stored next to its output once the stage succeeded. Stages whose output carries the current fingerprint are skipped,
+ * any other output is considered partial or stale and deleted before the stage runs again. Changing a parameter of a
+ * stage therefore reruns that stage and everything downstream of it, but nothing upstream.
+ *
+ * usage: --arcs path --workDir path --domainIndex path [--parsedPages path] [--force stage,...] plus the options of the
+ * stages, e.g. --sampleRate, --format or --hostSuffix.
+ */
+public class PipelineDriver extends HadoopJob {
+
+  static final String FINGERPRINT_FILE = "_FINGERPRINT";
+
+  static final String EXTRACTION = "extraction";
+  static final String TRACKING_GRAPH = "trackingGraph";
+  static final String OVERFLOW_DOMAINS = "overflowDomains";
+
+  private static final List<String> EXTRACTION_OPTIONS = Arrays.asList("--sampleRate");
+  private static final List<String> TRACKING_GRAPH_OPTIONS = Arrays.asList("--format", "--columns", "--hostSuffix",
+      "--minArchiveTime", "--maxArchiveTime", "--sampleRate");
+
+  public static void main(String[] args) throws Exception {
+    ToolRunner.run(new PipelineDriver(), args);
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+
+    Map<String,String> parsedArgs = parseArgs(args);
+
+    Path workDir = new Path(parsedArgs.get("--workDir"));
+    Path domainIndex = new Path(parsedArgs.get("--domainIndex"));
+
+    Set<String> forcedStages = Sets.newHashSet();
+    if (parsedArgs.containsKey("--force")) {
+      forcedStages.addAll(Arrays.asList(parsedArgs.get("--force").split(",")));
+    }
+
+    List<Stage> stages = Lists.newArrayList();
+
+    Stage extraction;
+    if (parsedArgs.containsKey("--parsedPages")) {
+      // pages extracted elsewhere, they are fingerprinted like any other external input
+      extraction = null;
+    } else {
+      extraction = new Stage(EXTRACTION, new ExtractionJob(), new Path(workDir, "parsedPages"))
+          .input("--input", new Path(parsedArgs.get("--arcs")))
+          .options(parsedArgs, EXTRACTION_OPTIONS);
+      stages.add(extraction);
+    }
+
+    Stage trackingGraph = new Stage(TRACKING_GRAPH, new TrackingGraphJob(), new Path(workDir, "trackingGraph"))
+        .input("--domainIndex", domainIndex)
+        .options(parsedArgs, TRACKING_GRAPH_OPTIONS);
+    Stage overflowDomains = new Stage(OVERFLOW_DOMAINS, new OverflowDomainsJob(), new Path(workDir, "overflowDomains"))
+        .input("--domainIndex", domainIndex);
+
+    if (extraction != null) {
+      trackingGraph.input("--input", extraction);
+      overflowDomains.input("--input", extraction);
+    } else {
+      Path parsedPages = new Path(parsedArgs.get("--parsedPages"));
+      trackingGraph.input("--input", parsedPages);
+      overflowDomains.input("--input", parsedPages);
+    }
+    stages.add(trackingGraph);
+    stages.add(overflowDomains);
+
+    Configuration conf = getConf() != null ? getConf() : new Configuration();
+
+    // stages are declared in topological order
+    for (Stage stage : stages) {
+      int exitCode = runIfStale(stage, forcedStages.contains(stage.name), conf);
+      if (exitCode != 0) {
+        return exitCode;
+      }
+    }
+    return 0;
+  }
+
+  private int runIfStale(Stage stage, boolean forced, Configuration conf) throws Exception {
+    FileSystem fs = stage.output.getFileSystem(conf);
+
+    stage.fingerprint = fingerprint(stage, conf);
+
+    if (!forced && stage.fingerprint.equals(readFingerprint(fs, stage.output))) {
+      System.out.println("Skipping stage " + stage.name + ", " + stage.output + " is up to date.");
+      return 0;
+    }
+
+    // partial output of a failed run or output computed from different inputs
+    fs.delete(stage.output, true);
+
+    System.out.println("Running stage " + stage.name + " with " + stage.args);
+    int exitCode = ToolRunner.run(new Configuration(conf), stage.tool, stage.toArgs());
+    if (exitCode != 0) {
+      fs.delete(stage.output, true);
+      System.out.println("Stage " + stage.name + " failed with exit code " + exitCode);
+      return exitCode;
+    }
+
+    writeFingerprint(fs, stage.output, stage.fingerprint);
+    return 0;
+  }
+
+  static String fingerprint(Stage stage, Configuration conf) throws IOException {
+    StringBuilder description = new StringBuilder();
+    description.append(stage.name).append('\n')
+               .append(stage.tool.getClass().getName()).append('@').append(codeVersion(stage.tool.getClass()))
+               .append('\n');
+
+    List<String> keys = Lists.newArrayList(stage.args.keySet());
+    Collections.sort(keys);
+    for (String key : keys) {
+      description.append(key).append('=').append(stage.args.get(key)).append('\n');
+    }
+
+    for (Map.Entry<String,Stage> upstream : stage.upstreamStages.entrySet()) {
+      description.append(upstream.getKey()).append(" from stage ").append(upstream.getValue().fingerprint)
+                 .append('\n');
+    }
+    for (Map.Entry<String,Path> input : stage.externalInputs.entrySet()) {
+      description.append(input.getKey()).append(" from files ");
+      Path path = input.getValue();
+      appendFileStatus(path.getFileSystem(conf), path, description);
+    }
+
+    return String.format("%016x", MurmurHash.hash64(description));
+  }
+
+  /** size and modification time of all data files below the path, without reading their contents */
+  private static void appendFileStatus(FileSystem fs, Path path, StringBuilder description) throws IOException {
+    FileStatus status = fs.getFileStatus(path);
+    if (!status.isDir()) {
+      description.append(status.getPath()).append(':').append(status.getLen()).append(':')
+                 .append(status.getModificationTime()).append('\n');
+      return;
+    }
+
+    FileStatus[] children = fs.listStatus(path);
+    Arrays.sort(children);
+    for (FileStatus child : children) {
+      String name = child.getPath().getName();
+      // skip logs and markers like _SUCCESS
+      if (!name.startsWith("_") && !name.startsWith(".")) {
+        appendFileStatus(fs, child.getPath(), description);
+      }
+    }
+  }
+
+  /** size and modification time of the jar the class was loaded from, a release jar is only built once */
+  static String codeVersion(Class<?> clazz) {
+    CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+    if (codeSource != null) {
+      URL location = codeSource.getLocation();
+      try {
+        File file = new File(location.toURI());
+        if (file.isFile()) {
+          return file.getName() + ':' + file.length() + ':' + file.lastModified();
+        }
+      } catch (URISyntaxException e) {
+        // fall through
+      } catch (IllegalArgumentException e) {
+        // not a file url
+      }
+    }
+    // classes from a directory, e.g. when running from the IDE
+    return "dev";
+  }
+
+  private static String readFingerprint(FileSystem fs, Path output) throws IOException {
+    Path fingerprintFile = new Path(output, FINGERPRINT_FILE);
+    if (!fs.exists(fingerprintFile)) {
+      return null;
+    }
+
+    FSDataInputStream in = fs.open(fingerprintFile);
+    try {
+      return new BufferedReader(new InputStreamReader(in, Charsets.UTF_8)).readLine();
+    } finally {
+      Closeables.close(in, true);
+    }
+  }
+
+  private static void writeFingerprint(FileSystem fs, Path output, String fingerprint) throws IOException {
+    FSDataOutputStream out = fs.create(new Path(output, FINGERPRINT_FILE), true);
+    try {
+      out.write((fingerprint + "\n").getBytes(Charsets.UTF_8));
+    } finally {
+      Closeables.close(out, false);
+    }
+  }
+
+  /** a job of the pipeline, its output path is passed as --output */
+  static class Stage {
+
+    private final String name;
+    private final Tool tool;
+    private final Path output;
+
+    private final Map<String,String> args = Maps.newHashMap();
+    private final Map<String,Stage> upstreamStages = Maps.newTreeMap();
+    private final Map<String,Path> externalInputs = Maps.newTreeMap();
+
+    private String fingerprint;
+
+    Stage(String name, Tool tool, Path output) {
+      this.name = name;
+      this.tool = tool;
+      this.output = output;
+      args.put("--output", output.toString());
+    }
+
+    /** an input produced by another stage, which has to run first */
+    Stage input(String option, Stage upstream) {
+      upstreamStages.put(option, upstream);
+      args.put(option, upstream.output.toString());
+      return this;
+    }
+
+    /** an input from outside the pipeline */
+    Stage input(String option, Path path) {
+      externalInputs.put(option, path);
+      args.put(option, path.toString());
+      return this;
+    }
+
+    Stage options(Map<String,String> parsedArgs, List<String> supportedOptions) {
+      for (String option : supportedOptions) {
+        if (parsedArgs.containsKey(option)) {
+          args.put(option, parsedArgs.get(option));
+        }
+      }
+      return this;
+    }
+
+    String[] toArgs() {
+      List<String> argList = Lists.newArrayList();
+      for (Map.Entry<String,String> arg : args.entrySet()) {
+        argList.add(arg.getKey());
+        argList.add(arg.getValue());
+      }
+      return argList.toArray(new String[argList.size()]);
+    }
+  }
+}
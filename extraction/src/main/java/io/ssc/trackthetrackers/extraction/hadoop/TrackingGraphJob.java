@@ -19,10 +19,18 @@
 package io.ssc.trackthetrackers.extraction.hadoop;
 
 import com.google.common.collect.Sets;
-import com.google.common.net.InternetDomainName;
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListWriter;
 import io.ssc.trackthetrackers.commons.proto.ParsedPageProtos;
+import io.ssc.trackthetrackers.extraction.hadoop.io.AdjacencyListOutputFormat;
 import io.ssc.trackthetrackers.extraction.hadoop.util.DomainIndex;
 import io.ssc.trackthetrackers.extraction.hadoop.util.DistributedCacheHelper;
+import io.ssc.trackthetrackers.extraction.hadoop.util.HostIndexCache;
+import io.ssc.trackthetrackers.extraction.hadoop.util.HostSampler;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
@@ -31,16 +39,64 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.ToolRunner;
+import parquet.filter2.predicate.FilterPredicate;
+import parquet.filter2.predicate.Operators;
+import parquet.hadoop.ParquetInputFormat;
 import parquet.proto.ProtoParquetInputFormat;
+import parquet.proto.ProtoReadSupport;
 
 import java.io.IOException;
 import java.net.URI;
-import java.util.HashSet;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static parquet.filter2.predicate.FilterApi.and;
+import static parquet.filter2.predicate.FilterApi.gtEq;
+import static parquet.filter2.predicate.FilterApi.longColumn;
+import static parquet.filter2.predicate.FilterApi.lt;
+
 public class TrackingGraphJob extends HadoopJob {
 
+  /**
+   * upper bound for the number of tracker ids buffered for in-mapper combining before the buffer is flushed, every
+   * buffered tracked host counts as {@link #IDS_PER_BUFFERED_HOST} ids on top
+   */
+  public static final String MAX_BUFFERED_IDS = "trackthetrackers.trackinggraph.maxBufferedIds";
+  static final int DEFAULT_MAX_BUFFERED_IDS = 1 << 21;
+
+  /** maximum number of hosts whose payleveldomain index is cached per JVM */
+  public static final String HOST_CACHE_SIZE = "trackthetrackers.trackinggraph.hostCacheSize";
+  static final int DEFAULT_HOST_CACHE_SIZE = 100000;
+
+  /** only pages whose host ends with this suffix are considered */
+  public static final String HOST_SUFFIX = "trackthetrackers.trackinggraph.hostSuffix";
+
+  /** the columns of ParsedPage that hold resources, all of them are read by default */
+  static final List<String> RESOURCE_COLUMNS = Arrays.asList("scripts", "iframes", "images", "links");
+
+  static final int EXPECTED_TRACKING_HOSTS = 1024;
+
+  /** a buffered tracked host, its map entry and its set, costs about as much memory as this many buffered ids */
+  static final int IDS_PER_BUFFERED_HOST = 16;
+
+  public enum JobCounters {
+    IN_MAPPER_FLUSHES,
+    MALFORMED_URLS,
+    FILTERED_BY_HOST_SUFFIX,
+    SAMPLED_OUT,
+    INVALID_TRACKED_HOSTS,
+    INVALID_TRACKING_HOSTS,
+    OVERFLOW_TRACKED_HOSTS,
+    OVERFLOW_TRACKING_HOSTS,
+    HOST_CACHE_HITS,
+    HOST_CACHE_MISSES,
+    HOST_CACHE_INVALID_HOSTS,
+    HOST_CACHE_OVERFLOW_DOMAINS
+  }
+
   public static void main(String[] args) throws Exception {
     ToolRunner.run(new TrackingGraphJob(), args);
   }
@@ -53,90 +109,363 @@ public class TrackingGraphJob extends HadoopJob {
     Path inputPath = new Path(parsedArgs.get("--input"));
     Path outputPath = new Path(parsedArgs.get("--output"));
 
-    Job toEdgeList = mapReduce(inputPath, outputPath, ProtoParquetInputFormat.class, TextOutputFormat.class,
-        EdgeListMapper.class, IntWritable.class, IntArrayWritable.class,
-        DistinctifyReducer.class, IntWritable.class, IntWritable.class, false);
+    String format = parsedArgs.containsKey("--format") ? parsedArgs.get("--format") : "text";
+
+    Job toEdgeList;
+    if ("text".equals(format)) {
+      toEdgeList = mapReduce(inputPath, outputPath, ProtoParquetInputFormat.class, TextOutputFormat.class,
+          EdgeListMapper.class, IntWritable.class, CompressedIntArrayWritable.class,
+          DistinctifyReducer.class, IntWritable.class, IntWritable.class, false);
+    } else if ("binary".equals(format)) {
+      toEdgeList = mapReduce(inputPath, outputPath, ProtoParquetInputFormat.class, AdjacencyListOutputFormat.class,
+          EdgeListMapper.class, IntWritable.class, CompressedIntArrayWritable.class,
+          AdjacencyListReducer.class, IntWritable.class, CompressedIntArrayWritable.class, false);
+      // the reduce keys are the tracked hosts, so each list holds the trackers pointing to a host
+      AdjacencyListOutputFormat.setDirection(toEdgeList.getConfiguration(), AdjacencyListWriter.IN_NEIGHBOURS);
+    } else {
+      throw new IllegalArgumentException("Unknown format " + format + ", choose from text, binary");
+    }
+
+    toEdgeList.setCombinerClass(UnionCombiner.class);
+
+    configureInput(toEdgeList, parsedArgs, false);
+
+    return toEdgeList.waitForCompletion(true) ? 0 : -1;
+  }
+
+  /** sets up projection, filters and the domain index, shared by all jobs that map pages to tracking hosts */
+  static void configureInput(Job job, Map<String,String> parsedArgs, boolean readArchiveTime) throws IOException {
+
+    Configuration conf = job.getConfiguration();
+
+    FilterPredicate archiveTimeFilter = archiveTimeFilter(parsedArgs.get("--minArchiveTime"),
+        parsedArgs.get("--maxArchiveTime"));
+    if (archiveTimeFilter != null) {
+      ParquetInputFormat.setFilterPredicate(conf, archiveTimeFilter);
+    }
+
+    List<String> resourceColumns = RESOURCE_COLUMNS;
+    if (parsedArgs.containsKey("--columns")) {
+      resourceColumns = Arrays.asList(parsedArgs.get("--columns").split(","));
+    }
+    ProtoReadSupport.setRequestedProjection(conf,
+        projection(resourceColumns, readArchiveTime || archiveTimeFilter != null));
+
+    if (parsedArgs.containsKey("--hostSuffix")) {
+      conf.set(HOST_SUFFIX, parsedArgs.get("--hostSuffix"));
+    }
+    if (parsedArgs.containsKey("--sampleRate")) {
+      conf.set(HostSampler.SAMPLE_RATE, parsedArgs.get("--sampleRate"));
+    }
 
     Path domainIndex = new Path(parsedArgs.get("--domainIndex"));
-    DistributedCacheHelper.cacheFile(domainIndex, toEdgeList.getConfiguration());
+    DistributedCacheHelper.cacheFile(domainIndex, conf);
+  }
+
+  /** parquet schema of the columns to read, the url is always needed, the archive time only if needed */
+  static String projection(List<String> resourceColumns, boolean withArchiveTime) {
+    StringBuilder schema = new StringBuilder("message ParsedPage { required binary url (UTF8);");
+    if (withArchiveTime) {
+      schema.append(" required int64 archiveTime;");
+    }
+    for (String column : resourceColumns) {
+      if (!RESOURCE_COLUMNS.contains(column)) {
+        throw new IllegalArgumentException("Unknown column " + column + ", choose from " + RESOURCE_COLUMNS);
+      }
+      schema.append(" repeated binary ").append(column).append(" (UTF8);");
+    }
+    return schema.append(" }").toString();
+  }
+
+  /** filter on the archive time in millis, min inclusive, max exclusive, lets parquet skip whole row groups */
+  static FilterPredicate archiveTimeFilter(String minArchiveTime, String maxArchiveTime) {
+    Operators.LongColumn archiveTime = longColumn("archiveTime");
+
+    FilterPredicate filter = null;
+    if (minArchiveTime != null) {
+      filter = gtEq(archiveTime, Long.parseLong(minArchiveTime));
+    }
+    if (maxArchiveTime != null) {
+      FilterPredicate beforeMax = lt(archiveTime, Long.parseLong(maxArchiveTime));
+      filter = filter == null ? beforeMax : and(filter, beforeMax);
+    }
+    return filter;
+  }
+
+  /** unions all tracker ids seen for a tracked host, the output type of the reducer differs, so it can't combine */
+  static class UnionCombiner
+      extends Reducer<IntWritable, CompressedIntArrayWritable, IntWritable, CompressedIntArrayWritable> {
+
+    private final IntOpenHashSet trackingHosts = new IntOpenHashSet();
+    private final CompressedIntArrayWritable union = new CompressedIntArrayWritable();
+
+    @Override
+    protected void reduce(IntWritable trackedHost, Iterable<CompressedIntArrayWritable> values, Context ctx)
+        throws IOException, InterruptedException {
 
-    toEdgeList.waitForCompletion(true);
+      trackingHosts.clear();
+      trackingHosts.trim(EXPECTED_TRACKING_HOSTS);
+      for (CompressedIntArrayWritable indices : values) {
+        for (int n = 0; n < indices.size(); n++) {
+          trackingHosts.add(indices.get(n));
+        }
+      }
 
-    return 0;
+      union.set(trackingHosts.toIntArray());
+      ctx.write(trackedHost, union);
+    }
   }
 
-  static class DistinctifyReducer extends Reducer<IntWritable, IntArrayWritable, IntWritable, IntWritable> {
+  /** emits the distinct tracking hosts of each tracked host as edges, in ascending order of the tracking host */
+  static class DistinctifyReducer
+      extends Reducer<IntWritable, CompressedIntArrayWritable, IntWritable, IntWritable> {
+
+    private final IntOpenHashSet trackingHosts = new IntOpenHashSet();
+
+    private final IntWritable trackingHostWritable = new IntWritable();
+    private final IntWritable trackedHostWritable = new IntWritable();
 
     @Override
-    protected void reduce(IntWritable trackedHost, Iterable<IntArrayWritable> values, Context ctx)
+    protected void reduce(IntWritable trackedHost, Iterable<CompressedIntArrayWritable> values, Context ctx)
         throws IOException, InterruptedException {
 
-      Set<Integer> trackingHosts = new HashSet<Integer>();
-      for (IntArrayWritable indices : values) {
-        for (int index : indices.values()) {
-          trackingHosts.add(index);
+      // don't let a single hub domain leave a huge table behind that every following clear() has to wipe
+      trackingHosts.clear();
+      trackingHosts.trim(EXPECTED_TRACKING_HOSTS);
+      for (CompressedIntArrayWritable indices : values) {
+        for (int n = 0; n < indices.size(); n++) {
+          trackingHosts.add(indices.get(n));
         }
       }
 
       int trackedHostIndex = trackedHost.get();
       trackingHosts.remove(trackedHostIndex);
 
-      for (int trackingHostIndex : trackingHosts) {
-        ctx.write(new IntWritable(trackingHostIndex), new IntWritable(trackedHostIndex));
+      int[] sortedTrackingHosts = trackingHosts.toIntArray();
+      Arrays.sort(sortedTrackingHosts);
+
+      trackedHostWritable.set(trackedHostIndex);
+      for (int trackingHostIndex : sortedTrackingHosts) {
+        trackingHostWritable.set(trackingHostIndex);
+        ctx.write(trackingHostWritable, trackedHostWritable);
       }
     }
   }
 
 
-  static class EdgeListMapper extends Mapper<Void, ParsedPageProtos.ParsedPage.Builder, IntWritable, IntArrayWritable> {
+  /** emits the distinct tracking hosts of each tracked host as a single sorted list, for the binary format */
+  static class AdjacencyListReducer
+      extends Reducer<IntWritable, CompressedIntArrayWritable, IntWritable, CompressedIntArrayWritable> {
+
+    private final IntOpenHashSet trackingHosts = new IntOpenHashSet();
+    private final CompressedIntArrayWritable trackingHostsWritable = new CompressedIntArrayWritable();
+
+    @Override
+    protected void reduce(IntWritable trackedHost, Iterable<CompressedIntArrayWritable> values, Context ctx)
+        throws IOException, InterruptedException {
+
+      trackingHosts.clear();
+      trackingHosts.trim(EXPECTED_TRACKING_HOSTS);
+      for (CompressedIntArrayWritable indices : values) {
+        for (int n = 0; n < indices.size(); n++) {
+          trackingHosts.add(indices.get(n));
+        }
+      }
+      trackingHosts.remove(trackedHost.get());
+
+      if (!trackingHosts.isEmpty()) {
+        trackingHostsWritable.set(trackingHosts.toIntArray());
+        ctx.write(trackedHost, trackingHostsWritable);
+      }
+    }
+  }
+
+  /**
+   * Resolves the host of a page and the hosts of the resources it embeds to their payleveldomain indices and hands
+   * them to {@link #map(int, int[], int, ParsedPageProtos.ParsedPageOrBuilder, Context)}.
+   */
+  abstract static class TrackingHostsMapper<KEYOUT, VALUEOUT>
+      extends Mapper<Void, ParsedPageProtos.ParsedPage.Builder, KEYOUT, VALUEOUT> {
 
     private static DomainIndex domainIndex;
+    private static HostIndexCache hostIndexCache;
+
+    // the cache outlives the task when the JVM is reused, so we only report what happened during this task
+    private long hitsAtSetup;
+    private long missesAtSetup;
+    private long invalidHostsAtSetup;
+    private long overflowDomainsAtSetup;
+
+    private String hostSuffix;
+    private HostSampler hostSampler;
 
     @Override
     protected void setup(Context ctx) throws IOException, InterruptedException {
+      hostSuffix = ctx.getConfiguration().get(HOST_SUFFIX);
+      hostSampler = HostSampler.fromConf(ctx.getConfiguration());
+
       Path domainIndexFile = DistributedCacheHelper.getCachedFiles(ctx.getConfiguration())[0];
       FileSystem fs = FileSystem.get(domainIndexFile.toUri(), ctx.getConfiguration());
       // potentially exploit VM re-use
       if (domainIndex == null) {
-        domainIndex = new DomainIndex(fs, domainIndexFile);
+        domainIndex = DomainIndex.open(fs, domainIndexFile);
+      }
+      if (hostIndexCache == null) {
+        int hostCacheSize = ctx.getConfiguration().getInt(HOST_CACHE_SIZE, DEFAULT_HOST_CACHE_SIZE);
+        hostIndexCache = new HostIndexCache(domainIndex, hostCacheSize);
+      }
+
+      hitsAtSetup = hostIndexCache.hits();
+      missesAtSetup = hostIndexCache.misses();
+      invalidHostsAtSetup = hostIndexCache.invalidHosts();
+      overflowDomainsAtSetup = hostIndexCache.overflowDomains();
+    }
+
+    @Override
+    public void map(Void key, ParsedPageProtos.ParsedPage.Builder parsedPage, Context ctx)
+        throws IOException, InterruptedException {
+
+      // we read the fields from the builder, build() would fail on projected away required fields anyways
+      if (parsedPage != null) {
+        map((ParsedPageProtos.ParsedPageOrBuilder) parsedPage, ctx);
       }
     }
 
-    public void map(Void key, ParsedPageProtos.ParsedPage.Builder parsedPageBuilder, Context ctx)
+    private void map(ParsedPageProtos.ParsedPageOrBuilder parsedPage, Context ctx)
         throws IOException, InterruptedException {
 
-      if (parsedPageBuilder != null) {
-        ParsedPageProtos.ParsedPage parsedPage = parsedPageBuilder.build();
-        if (parsedPage != null) {
-          try {
+      String host;
+      try {
+        host = new URI(parsedPage.getUrl()).getHost();
+      } catch (URISyntaxException e) {
+        host = null;
+      }
+      if (host == null) {
+        ctx.getCounter(JobCounters.MALFORMED_URLS).increment(1);
+        return;
+      }
+      if (hostSuffix != null && !host.endsWith(hostSuffix)) {
+        ctx.getCounter(JobCounters.FILTERED_BY_HOST_SUFFIX).increment(1);
+        return;
+      }
+      // only the tracked hosts are sampled, so that the sampled sites keep their complete neighbourhoods. The
+      // payleveldomain comes from the cache, which resolves the index of the host in the same step
+      if (hostSampler != null) {
+        String paylevelDomain = hostIndexCache.paylevelDomainFor(host);
+        if (paylevelDomain == null || !hostSampler.acceptPaylevelDomain(paylevelDomain)) {
+          ctx.getCounter(JobCounters.SAMPLED_OUT).increment(1);
+          return;
+        }
+      }
+
+      int trackedHostIndex = hostIndexCache.indexFor(host);
+      if (trackedHostIndex == DomainIndex.UNKNOWN) {
+        ctx.getCounter(JobCounters.INVALID_TRACKED_HOSTS).increment(1);
+        return;
+      }
+      if (HostIndexCache.isOverflowIndex(trackedHostIndex)) {
+        ctx.getCounter(JobCounters.OVERFLOW_TRACKED_HOSTS).increment(1);
+      }
+
+      Set<String> allTrackingDomains = Sets.newHashSet();
+      allTrackingDomains.addAll(parsedPage.getScriptsList());
+      allTrackingDomains.addAll(parsedPage.getIframesList());
+      allTrackingDomains.addAll(parsedPage.getImagesList());
+      allTrackingDomains.addAll(parsedPage.getLinksList());
 
-            String uri = new URI(parsedPage.getUrl()).getHost().toString();
-            String trackedHost = InternetDomainName.from(uri).topPrivateDomain().toString();
+      int[] trackingHosts = new int[allTrackingDomains.size()];
 
-            int trackedHostIndex = domainIndex.indexFor(trackedHost);
+      int n = 0;
+      for (String trackingDomain : allTrackingDomains) {
+        int trackingHostIndex = hostIndexCache.indexFor(trackingDomain);
+        if (trackingHostIndex == DomainIndex.UNKNOWN) {
+          // only skip the invalid tracker, not the whole page
+          ctx.getCounter(JobCounters.INVALID_TRACKING_HOSTS).increment(1);
+          continue;
+        }
+        if (HostIndexCache.isOverflowIndex(trackingHostIndex)) {
+          ctx.getCounter(JobCounters.OVERFLOW_TRACKING_HOSTS).increment(1);
+        }
+        trackingHosts[n++] = trackingHostIndex;
+      }
 
-            Set<String> allTrackingDomains = Sets.newHashSet();
-            allTrackingDomains.addAll(parsedPage.getScriptsList());
-            allTrackingDomains.addAll(parsedPage.getIframesList());
-            allTrackingDomains.addAll(parsedPage.getImagesList());
-            allTrackingDomains.addAll(parsedPage.getLinksList());
+      map(trackedHostIndex, trackingHosts, n, parsedPage, ctx);
+    }
 
-            int[] trackingHosts = new int[allTrackingDomains.size()];
+    /** the first numTrackingHosts entries hold the tracking hosts, which may contain duplicates */
+    protected abstract void map(int trackedHostIndex, int[] trackingHosts, int numTrackingHosts,
+        ParsedPageProtos.ParsedPageOrBuilder parsedPage, Context ctx) throws IOException, InterruptedException;
+
+    @Override
+    protected void cleanup(Context ctx) throws IOException, InterruptedException {
+      ctx.getCounter(JobCounters.HOST_CACHE_HITS).increment(hostIndexCache.hits() - hitsAtSetup);
+      ctx.getCounter(JobCounters.HOST_CACHE_MISSES).increment(hostIndexCache.misses() - missesAtSetup);
+      ctx.getCounter(JobCounters.HOST_CACHE_INVALID_HOSTS)
+         .increment(hostIndexCache.invalidHosts() - invalidHostsAtSetup);
+      ctx.getCounter(JobCounters.HOST_CACHE_OVERFLOW_DOMAINS)
+         .increment(hostIndexCache.overflowDomains() - overflowDomainsAtSetup);
+      super.cleanup(ctx);
+    }
+  }
+
+  static class EdgeListMapper extends TrackingHostsMapper<IntWritable, CompressedIntArrayWritable> {
+
+    // in-mapper combining: tracked host index -> indices of all tracking hosts seen on its pages so far
+    private final Int2ObjectMap<IntSet> trackingHostsByTrackedHost = new Int2ObjectOpenHashMap<IntSet>();
+    private int bufferedIds = 0;
+    private int maxBufferedIds;
+
+    private final IntWritable trackedHostWritable = new IntWritable();
+    private final CompressedIntArrayWritable trackingHostsWritable = new CompressedIntArrayWritable();
+
+    @Override
+    protected void setup(Context ctx) throws IOException, InterruptedException {
+      super.setup(ctx);
+      maxBufferedIds = ctx.getConfiguration().getInt(MAX_BUFFERED_IDS, DEFAULT_MAX_BUFFERED_IDS);
+    }
 
-            int n = 0;
-            for (String trackingDomain : allTrackingDomains) {
-              String trackingHost = InternetDomainName.from(trackingDomain).topPrivateDomain().toString();
-              int trackingHostIndex = domainIndex.indexFor(trackingHost);
-              trackingHosts[n++] = trackingHostIndex;
-            }
+    @Override
+    protected void map(int trackedHostIndex, int[] trackingHosts, int numTrackingHosts,
+        ParsedPageProtos.ParsedPageOrBuilder parsedPage, Context ctx) throws IOException, InterruptedException {
 
-            ctx.write(new IntWritable(trackedHostIndex), new IntArrayWritable(trackingHosts));
+      // pages without trackers don't produce edges, buffering their hosts would only cost memory
+      if (numTrackingHosts == 0) {
+        return;
+      }
 
-          } catch (Exception e) {
-            //TODO counter
-          }
+      IntSet bufferedTrackingHosts = trackingHostsByTrackedHost.get(trackedHostIndex);
+      if (bufferedTrackingHosts == null) {
+        bufferedTrackingHosts = new IntOpenHashSet(numTrackingHosts);
+        trackingHostsByTrackedHost.put(trackedHostIndex, bufferedTrackingHosts);
+        // the buffer must also be flushed on many distinct hosts with few trackers each
+        bufferedIds += IDS_PER_BUFFERED_HOST;
+      }
+      for (int n = 0; n < numTrackingHosts; n++) {
+        if (bufferedTrackingHosts.add(trackingHosts[n])) {
+          bufferedIds++;
         }
       }
+
+      if (bufferedIds > maxBufferedIds) {
+        flush(ctx);
+        ctx.getCounter(JobCounters.IN_MAPPER_FLUSHES).increment(1);
+      }
+    }
+
+    private void flush(Context ctx) throws IOException, InterruptedException {
+      for (Int2ObjectMap.Entry<IntSet> entry : trackingHostsByTrackedHost.int2ObjectEntrySet()) {
+        trackedHostWritable.set(entry.getIntKey());
+        trackingHostsWritable.set(entry.getValue().toIntArray());
+        ctx.write(trackedHostWritable, trackingHostsWritable);
+      }
+      trackingHostsByTrackedHost.clear();
+      bufferedIds = 0;
+    }
+
+    @Override
+    protected void cleanup(Context ctx) throws IOException, InterruptedException {
+      flush(ctx);
+      super.cleanup(ctx);
     }
   }
 }
@@ -0,0 +1,85 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.io;
+
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListWriter;
+import io.ssc.trackthetrackers.extraction.hadoop.CompressedIntArrayWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+
+/**
+ * Writes the adjacency lists emitted by a reducer in the binary format of {@link AdjacencyListWriter}. The reducer
+ * has to emit its keys in ascending order, which is the case when the keys are the reduce keys.
+ */
+public class AdjacencyListOutputFormat extends FileOutputFormat<IntWritable, CompressedIntArrayWritable> {
+
+  /** whether the values hold the in- or the out-neighbours of the keys */
+  public static final String DIRECTION = "trackthetrackers.adjacencylist.direction";
+
+  public static void setDirection(Configuration conf, byte direction) {
+    conf.setInt(DIRECTION, direction);
+  }
+
+  @Override
+  public RecordWriter<IntWritable, CompressedIntArrayWritable> getRecordWriter(TaskAttemptContext ctx)
+      throws IOException, InterruptedException {
+
+    byte direction = (byte) ctx.getConfiguration().getInt(DIRECTION, AdjacencyListWriter.OUT_NEIGHBOURS);
+
+    Path file = getDefaultWorkFile(ctx, ".adj");
+    FileSystem fs = file.getFileSystem(ctx.getConfiguration());
+
+    return new AdjacencyListRecordWriter(new AdjacencyListWriter(fs.create(file, false), direction));
+  }
+
+  static class AdjacencyListRecordWriter extends RecordWriter<IntWritable, CompressedIntArrayWritable> {
+
+    private final AdjacencyListWriter writer;
+    private int[] neighbours = new int[16];
+
+    AdjacencyListRecordWriter(AdjacencyListWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(IntWritable vertex, CompressedIntArrayWritable value) throws IOException {
+      int numNeighbours = value.size();
+      if (numNeighbours > neighbours.length) {
+        neighbours = new int[Math.max(numNeighbours, neighbours.length << 1)];
+      }
+      // the writable holds its values sorted and distinct already
+      for (int n = 0; n < numNeighbours; n++) {
+        neighbours[n] = value.get(n);
+      }
+      writer.write(vertex.get(), neighbours, numNeighbours);
+    }
+
+    @Override
+    public void close(TaskAttemptContext ctx) throws IOException {
+      writer.close();
+    }
+  }
+}
@@ -20,77 +20,84 @@ package io.ssc.trackthetrackers.extraction.hadoop.util;
 
 
 import com.google.common.io.Closeables;
-import it.unimi.dsi.fastutil.longs.Long2IntMap;
-import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 
-import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
+/** maps payleveldomains to their index in the webdatacommons payleveldomain graph */
+public abstract class DomainIndex {
 
-public class DomainIndex {
+  /** returned by {@link #lookup(String)} for payleveldomains which are not part of the index */
+  public static final int UNKNOWN = -1;
 
-  private final Long2IntMap hashesToIndices;
+  private static final int GZIP_MAGIC = 0x1f8b;
 
-  public DomainIndex(FileSystem fs, Path indexFile) throws IOException {
-    hashesToIndices = hashIndexFile(fs, indexFile);
+  /**
+   * Opens an index file, either the gzipped text index, which is parsed onto the heap, a binary index written by
+   * {@link MappedDomainIndex#build(FileSystem, Path, Path)}, which is memory-mapped, or a compact index written by
+   * {@link PerfectHashDomainIndex#build(FileSystem, Path, Path)}.
+   */
+  public static DomainIndex open(FileSystem fs, Path indexFile) throws IOException {
+    long magic = readMagic(fs, indexFile);
+
+    if ((magic >>> 48) == GZIP_MAGIC) {
+      return new InMemoryDomainIndex(fs, indexFile);
+    }
+    if (magic == MappedDomainIndex.MAGIC) {
+      return new MappedDomainIndex(localCopy(fs, indexFile));
+    }
+    if (magic == PerfectHashDomainIndex.MAGIC) {
+      return PerfectHashDomainIndex.read(fs, indexFile);
+    }
+    throw new IOException("Unknown index format: " + indexFile);
   }
 
-  public int indexFor(String paylevelDomain) {
-    long hash = hash(paylevelDomain);
-    int index = hashesToIndices.get(hash);
+  public final int indexFor(String paylevelDomain) {
+    int index = lookup(paylevelDomain);
 
-    if (index == 0) {
+    if (index == UNKNOWN) {
       throw new IllegalStateException("Unknown paylevelDomain: " + paylevelDomain);
     }
 
     return index;
   }
 
-  private static long hash(String paylevelDomain) {
-    return MurmurHash.hash64(paylevelDomain);
-  }
-
-  //TODO replace sysout's with log statements
-  private Long2IntMap hashIndexFile(FileSystem fs, Path indexFile) throws IOException {
+  /** @return the index of the payleveldomain or {@link #UNKNOWN} */
+  public abstract int lookup(String paylevelDomain);
 
-    // hardcoded to handle 2012 payleveldomain index
-    Long2IntMap hashesToIndices = new Long2IntOpenHashMap(42889800);
+  /** @return the largest index of any payleveldomain, ids beyond it are free */
+  public abstract int maxIndex();
 
-    Pattern SEP = Pattern.compile("\t");
-    int linesRead = 0;
-    BufferedReader reader = null;
+  protected static long hash(String paylevelDomain) {
+    return MurmurHash.hash64(paylevelDomain);
+  }
 
+  private static long readMagic(FileSystem fs, Path indexFile) throws IOException {
+    DataInputStream in = null;
     try {
-      reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(fs.open(indexFile)), "UTF8"));
-
-      String line = null;
-      while ((line = reader.readLine()) != null) {
-
-        String[] tokens = SEP.split(line);
-
-        long hash = hash(tokens[0]);
-        int index = Integer.parseInt(tokens[1]);
-
-        int previous = hashesToIndices.put(hash, index);
-
-        if (previous != 0) {
-          throw new IllegalStateException("Hash collision encountered!");
-        }
-
-        if (++linesRead % 100000 == 0) {
-          System.out.println(linesRead + " lines read...");
-        }
-      }
+      in = fs.open(indexFile);
+      return in.readLong();
+    } catch (EOFException e) {
+      throw new IOException("Index file too short: " + indexFile);
     } finally {
-      Closeables.close(reader, false);
+      Closeables.close(in, true);
+    }
+  }
+
+  /** files from the distributed cache are already local, anything else is copied to the local disk once */
+  private static File localCopy(FileSystem fs, Path indexFile) throws IOException {
+    if (fs instanceof LocalFileSystem || "file".equals(fs.getUri().getScheme())) {
+      return new File(fs.makeQualified(indexFile).toUri().getPath());
     }
 
-    System.out.println(linesRead + " lines read. done.");
-    return hashesToIndices;
+    File localFile = File.createTempFile("domainindex-", ".bin");
+    localFile.deleteOnExit();
+    fs.copyToLocalFile(indexFile, new Path(localFile.getAbsolutePath()));
+    return localFile;
   }
 }
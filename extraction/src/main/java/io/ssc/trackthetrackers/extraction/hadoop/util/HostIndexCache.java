@@ -0,0 +1,146 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.net.InternetDomainName;
+import io.ssc.trackthetrackers.commons.graph.OverflowIds;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe cache from hosts to the index of their payleveldomain. Payleveldomains which are not contained
+ * in the {@link DomainIndex} get an id from the overflow range, which is derived from their hash and therefore the
+ * same in all tasks. OverflowDomainsJob later maps them to dense ids and fails if too many of them collided. Hosts
+ * that are not valid domain names are cached as {@link DomainIndex#UNKNOWN}.
+ */
+public class HostIndexCache {
+
+  /** ids at or above this value are overflow ids, far beyond the ids of the 2012 index */
+  public static final int OVERFLOW_BASE = OverflowIds.OVERFLOW_BASE;
+
+  private final DomainIndex domainIndex;
+  private final Cache<String, ResolvedHost> resolvedHosts;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidHosts = new AtomicLong();
+  private final AtomicLong overflowDomains = new AtomicLong();
+
+  public HostIndexCache(DomainIndex domainIndex, int maximumSize) {
+    this.domainIndex = domainIndex;
+    resolvedHosts = CacheBuilder.newBuilder()
+                                .maximumSize(maximumSize)
+                                .build();
+  }
+
+  /** @return the index or overflow id of the host's payleveldomain, {@link DomainIndex#UNKNOWN} for invalid hosts */
+  public int indexFor(String host) {
+    return resolved(host).index;
+  }
+
+  /** cached variant of {@link #paylevelDomainOf(String)}, resolves the index of the host along the way */
+  public String paylevelDomainFor(String host) {
+    return resolved(host).paylevelDomain;
+  }
+
+  private ResolvedHost resolved(String host) {
+    ResolvedHost resolved = resolvedHosts.getIfPresent(host);
+    if (resolved != null) {
+      hits.incrementAndGet();
+      return resolved;
+    }
+
+    misses.incrementAndGet();
+    resolved = resolve(host);
+    resolvedHosts.put(host, resolved);
+
+    return resolved;
+  }
+
+  private ResolvedHost resolve(String host) {
+    String paylevelDomain = paylevelDomainOf(host);
+    if (paylevelDomain == null) {
+      invalidHosts.incrementAndGet();
+      return new ResolvedHost(null, DomainIndex.UNKNOWN);
+    }
+
+    int index = domainIndex.lookup(paylevelDomain);
+    if (index == DomainIndex.UNKNOWN) {
+      overflowDomains.incrementAndGet();
+      return new ResolvedHost(paylevelDomain, overflowIndexFor(paylevelDomain));
+    }
+    return new ResolvedHost(paylevelDomain, index);
+  }
+
+  /** @return the payleveldomain of the host or null if the host is not a valid domain name */
+  public static String paylevelDomainOf(String host) {
+    try {
+      return InternetDomainName.from(host).topPrivateDomain().toString();
+    } catch (IllegalArgumentException e) {
+      // not a syntactically valid domain name
+      return null;
+    } catch (IllegalStateException e) {
+      // not under a public suffix
+      return null;
+    }
+  }
+
+  /**
+   * deterministic id for a payleveldomain which is not part of the index, distinct domains may collide, which
+   * OverflowDomainsJob detects
+   */
+  public static int overflowIndexFor(String paylevelDomain) {
+    return OVERFLOW_BASE | (int) (MurmurHash.hash64(paylevelDomain) & (OVERFLOW_BASE - 1));
+  }
+
+  public static boolean isOverflowIndex(int index) {
+    return OverflowIds.isOverflowId(index);
+  }
+
+  private static class ResolvedHost {
+
+    private final String paylevelDomain;
+    private final int index;
+
+    ResolvedHost(String paylevelDomain, int index) {
+      this.paylevelDomain = paylevelDomain;
+      this.index = index;
+    }
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  /** number of misses that resolved to {@link DomainIndex#UNKNOWN} and went into the negative cache */
+  public long invalidHosts() {
+    return invalidHosts.get();
+  }
+
+  /** number of misses that resolved to an overflow id */
+  public long overflowDomains() {
+    return overflowDomains.get();
+  }
+}
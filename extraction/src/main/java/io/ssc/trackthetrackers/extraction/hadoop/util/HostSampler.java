@@ -0,0 +1,66 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Keeps a fixed fraction of all payleveldomains, chosen by their hash. The choice only depends on the payleveldomain,
+ * so all hosts of a site are kept or dropped together, and every job run with the same rate keeps the same sites.
+ */
+public class HostSampler {
+
+  /** fraction of payleveldomains to keep, between 0 and 1 */
+  public static final String SAMPLE_RATE = "trackthetrackers.sampleRate";
+
+  private static final double UNIT = 1.0 / (1L << 53);
+
+  private final double sampleRate;
+
+  public HostSampler(double sampleRate) {
+    if (!(sampleRate > 0 && sampleRate <= 1)) {
+      throw new IllegalArgumentException("Sample rate must be in (0, 1], but was " + sampleRate);
+    }
+    this.sampleRate = sampleRate;
+  }
+
+  /** @return the sampler configured for the job, or null if the job should see all hosts */
+  public static HostSampler fromConf(Configuration conf) {
+    String sampleRate = conf.get(SAMPLE_RATE);
+    if (sampleRate == null || Double.parseDouble(sampleRate) == 1) {
+      return null;
+    }
+    return new HostSampler(Double.parseDouble(sampleRate));
+  }
+
+  /** @return whether the host belongs to the sample, invalid hosts never do */
+  public boolean accept(String host) {
+    String paylevelDomain = HostIndexCache.paylevelDomainOf(host);
+    return paylevelDomain != null && acceptPaylevelDomain(paylevelDomain);
+  }
+
+  public boolean acceptPaylevelDomain(String paylevelDomain) {
+    // the top 53 bits as a uniform double in [0, 1), the overflow ids use the low bits of the same hash
+    return (MurmurHash.hash64(paylevelDomain) >>> 11) * UNIT < sampleRate;
+  }
+
+  public double sampleRate() {
+    return sampleRate;
+  }
+}
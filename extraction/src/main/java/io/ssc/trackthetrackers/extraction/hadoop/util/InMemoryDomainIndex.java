@@ -0,0 +1,83 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2014  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+
+import com.google.common.io.Closeables;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+
+/** parses the gzipped text payleveldomain index into a hashtable on the heap */
+public class InMemoryDomainIndex extends DomainIndex {
+
+  private final Long2IntMap hashesToIndices;
+  private int maxIndex = 0;
+
+  public InMemoryDomainIndex(FileSystem fs, Path indexFile) throws IOException {
+    hashesToIndices = hashIndexFile(fs, indexFile);
+  }
+
+  @Override
+  public int lookup(String paylevelDomain) {
+    int index = hashesToIndices.get(hash(paylevelDomain));
+    return index == 0 ? UNKNOWN : index;
+  }
+
+  @Override
+  public int maxIndex() {
+    return maxIndex;
+  }
+
+  //TODO replace sysout's with log statements
+  private Long2IntMap hashIndexFile(FileSystem fs, Path indexFile) throws IOException {
+
+    // hardcoded to handle 2012 payleveldomain index
+    Long2IntMap hashesToIndices = new Long2IntOpenHashMap(42889800);
+
+    PldIndexReader reader = null;
+
+    try {
+      reader = new PldIndexReader(fs.open(indexFile));
+
+      while (reader.next()) {
+
+        long hash = hash(reader.domain());
+        int previous = hashesToIndices.put(hash, reader.index());
+        maxIndex = Math.max(maxIndex, reader.index());
+
+        if (previous != 0) {
+          throw new IllegalStateException("Hash collision encountered!");
+        }
+
+        if (reader.linesRead() % 100000 == 0) {
+          System.out.println(reader.linesRead() + " lines read...");
+        }
+      }
+    } finally {
+      Closeables.close(reader, false);
+    }
+
+    System.out.println(reader.linesRead() + " lines read. done.");
+    return hashesToIndices;
+  }
+}
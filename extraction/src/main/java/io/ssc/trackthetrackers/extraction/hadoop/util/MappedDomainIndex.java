@@ -0,0 +1,187 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import com.google.common.io.Closeables;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An open-addressed hashtable from payleveldomain hashes to indices, memory-mapped read-only from a flat binary
+ * file. All tasks on a node share the page-cached copy of the file, so opening the index costs no parsing and no
+ * heap.
+ *
+ * The file starts with {@link #MAGIC}, the number of slots (a power of two) and the number of entries, followed by
+ * the slots. Each slot holds the 64-bit hash and the 32-bit index of a payleveldomain, index 0 marks an empty slot.
+ * Collisions are resolved by linear probing.
+ */
+public class MappedDomainIndex extends DomainIndex {
+
+  static final long MAGIC = 0x5454544449445831L; // "TTTDIDX1"
+
+  private static final int HEADER_BYTES = 16;
+  private static final int SLOT_BYTES = 12;
+  private static final double MAX_LOAD_FACTOR = 0.75;
+
+  // a single MappedByteBuffer can't exceed 2GB
+  private static final int SEGMENT_BITS = 26;
+  private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+  private final ByteBuffer[] segments;
+  private final int mask;
+  private final int numEntries;
+
+  public MappedDomainIndex(File indexFile) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+    try {
+      if (file.readLong() != MAGIC) {
+        throw new IOException("Not a binary domain index: " + indexFile);
+      }
+      int numSlots = file.readInt();
+      numEntries = file.readInt();
+      mask = numSlots - 1;
+
+      if (file.length() != HEADER_BYTES + (long) numSlots * SLOT_BYTES) {
+        throw new IOException("Truncated domain index: " + indexFile);
+      }
+
+      FileChannel channel = file.getChannel();
+      int numSegments = Math.max(1, numSlots >>> SEGMENT_BITS);
+      int slotsPerSegment = Math.min(numSlots, 1 << SEGMENT_BITS);
+      segments = new ByteBuffer[numSegments];
+      for (int n = 0; n < numSegments; n++) {
+        long offset = HEADER_BYTES + (long) n * slotsPerSegment * SLOT_BYTES;
+        segments[n] = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) slotsPerSegment * SLOT_BYTES);
+      }
+    } finally {
+      // the mappings stay valid after the channel is closed
+      Closeables.close(file, true);
+    }
+  }
+
+  @Override
+  public int lookup(String paylevelDomain) {
+    long hash = hash(paylevelDomain);
+
+    int slot = slotFor(hash, mask);
+    while (true) {
+      // absolute reads only, so concurrent lookups don't interfere
+      ByteBuffer segment = segments[slot >>> SEGMENT_BITS];
+      int offset = (slot & SEGMENT_MASK) * SLOT_BYTES;
+
+      int index = segment.getInt(offset + 8);
+      if (index == 0) {
+        return UNKNOWN;
+      }
+      if (segment.getLong(offset) == hash) {
+        return index;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  public int numEntries() {
+    return numEntries;
+  }
+
+  /** scans all slots, the file doesn't store the largest index */
+  @Override
+  public int maxIndex() {
+    int maxIndex = 0;
+    for (int slot = 0; slot <= mask; slot++) {
+      maxIndex = Math.max(maxIndex, segments[slot >>> SEGMENT_BITS].getInt((slot & SEGMENT_MASK) * SLOT_BYTES + 8));
+    }
+    return maxIndex;
+  }
+
+  private static int slotFor(long hash, int mask) {
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  /** converts a gzipped text payleveldomain index into a binary index */
+  public static void build(FileSystem fs, Path textIndex, Path output) throws IOException {
+
+    // first pass only counts, so that the table can be sized upfront
+    int numEntries = 0;
+    PldIndexReader reader = new PldIndexReader(fs.open(textIndex));
+    try {
+      while (reader.next()) {
+        numEntries++;
+      }
+    } finally {
+      Closeables.close(reader, true);
+    }
+
+    reader = new PldIndexReader(fs.open(textIndex));
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(fs.create(output, true), 1 << 20));
+      write(reader, numEntries, out);
+    } finally {
+      Closeables.close(reader, true);
+      Closeables.close(out, false);
+    }
+  }
+
+  static void write(PldIndexReader reader, int numEntries, DataOutputStream out) throws IOException {
+
+    int numSlots = Integer.highestOneBit(Math.max(16, (int) Math.ceil(numEntries / MAX_LOAD_FACTOR)) - 1) << 1;
+    int mask = numSlots - 1;
+
+    long[] hashes = new long[numSlots];
+    int[] indices = new int[numSlots];
+
+    int entriesRead = 0;
+    while (reader.next()) {
+      if (++entriesRead > numEntries) {
+        throw new IllegalStateException("More than " + numEntries + " entries in index");
+      }
+      if (reader.index() <= 0) {
+        throw new IllegalStateException("Index of " + reader.domain() + " must be positive");
+      }
+
+      long hash = hash(reader.domain());
+      int slot = slotFor(hash, mask);
+      while (indices[slot] != 0) {
+        if (hashes[slot] == hash) {
+          throw new IllegalStateException("Hash collision encountered!");
+        }
+        slot = (slot + 1) & mask;
+      }
+      hashes[slot] = hash;
+      indices[slot] = reader.index();
+    }
+
+    out.writeLong(MAGIC);
+    out.writeInt(numSlots);
+    out.writeInt(entriesRead);
+    for (int slot = 0; slot < numSlots; slot++) {
+      out.writeLong(hashes[slot]);
+      out.writeInt(indices[slot]);
+    }
+  }
+}
@@ -32,6 +32,19 @@ public final class MurmurHash {
      * @return 32 bit hash of the given array
      */
     public static int hash32(final byte[] data, int length, int seed) {
+        return hash32(data, 0, length, seed);
+    }
+
+    /** 
+     * Generates 32 bit hash from a slice of a byte array and seed.
+     * 
+     * @param data byte array to hash
+     * @param offset start of the slice
+     * @param length length of the slice
+     * @param seed initial seed value
+     * @return 32 bit hash of the given slice
+     */
+    public static int hash32(final byte[] data, int offset, int length, int seed) {
         // 'm' and 'r' are mixing constants generated offline.
         // They're not really 'magic', they just happen to work well.
         final int m = 0x5bd1e995;
@@ -42,7 +55,7 @@ public final class MurmurHash {
         int length4 = length/4;
 
         for (int i=0; i<length4; i++) {
-            final int i4 = i*4;
+            final int i4 = offset + i*4;
             int k = (data[i4+0]&0xff) +((data[i4+1]&0xff)<<8)
                     +((data[i4+2]&0xff)<<16) +((data[i4+3]&0xff)<<24);
             k *= m;
@@ -53,10 +66,11 @@ public final class MurmurHash {
         }
         
         // Handle the last few bytes of the input array
+        final int tail = offset + (length&~3);
         switch (length%4) {
-        case 3: h ^= (data[(length&~3) +2]&0xff) << 16;
-        case 2: h ^= (data[(length&~3) +1]&0xff) << 8;
-        case 1: h ^= (data[length&~3]&0xff);
+        case 3: h ^= (data[tail+2]&0xff) << 16;
+        case 2: h ^= (data[tail+1]&0xff) << 8;
+        case 1: h ^= (data[tail]&0xff);
                 h *= m;
         }
 
@@ -85,8 +99,7 @@ public final class MurmurHash {
      * @return 32 bit hash of the given string
      */
     public static int hash32(final String text) {
-        final byte[] bytes = text.getBytes(); 
-        return hash32(bytes, bytes.length);
+        return hash32((CharSequence) text);
     }
 
     /** 
@@ -98,7 +111,102 @@ public final class MurmurHash {
      * @return 32 bit hash of the given string
      */
     public static int hash32(final String text, int from, int length) {
-        return hash32(text.substring( from, from+length));
+        return hash32((CharSequence) text, from, length);
+    }
+
+    /** 
+     * Generates 32 bit hash from the UTF-8 encoding of a char sequence with default seed value, without
+     * materializing the encoded bytes.
+     * 
+     * @param text char sequence to hash
+     * @return 32 bit hash of the given char sequence
+     */
+    public static int hash32(final CharSequence text) {
+        return hash32(text, 0, text.length(), 0x9747b28c);
+    }
+
+    /** 
+     * Generates 32 bit hash from the UTF-8 encoding of a subsequence with default seed value.
+     * 
+     * @param text char sequence to hash
+     * @param from starting index
+     * @param length number of chars to hash
+     * @return 32 bit hash of the given subsequence
+     */
+    public static int hash32(final CharSequence text, int from, int length) {
+        return hash32(text, from, length, 0x9747b28c);
+    }
+
+    /** 
+     * Generates 32 bit hash from the UTF-8 encoding of a subsequence and seed. The result is identical to hashing
+     * the bytes of <code>String.getBytes("UTF-8")</code>, lone surrogates are encoded as '?' like there.
+     * 
+     * @param text char sequence to hash
+     * @param from starting index
+     * @param length number of chars to hash
+     * @param seed initial seed value
+     * @return 32 bit hash of the given subsequence
+     */
+    public static int hash32(final CharSequence text, int from, int length, int seed) {
+        final int m = 0x5bd1e995;
+        final int r = 24;
+        final int end = from + length;
+
+        int h = seed^utf8Length(text, from, end);
+
+        // bytes of the current block, filled from the least significant byte on
+        int k = 0;
+        int shift = 0;
+
+        for (int i=from; i<end; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                // fast path for the common case of ascii domains
+                k |= c << shift;
+                shift += 8;
+                if (shift == 32) {
+                    k *= m;
+                    k ^= k >>> r;
+                    k *= m;
+                    h *= m;
+                    h ^= k;
+                    k = 0;
+                    shift = 0;
+                }
+                continue;
+            }
+
+            final long encoded = encodeUtf8(text, i, end);
+            final int numBytes = (int) (encoded >>> 32);
+            if (numBytes == 4) {
+                // consumed a surrogate pair
+                i++;
+            }
+            for (int b=0; b<numBytes; b++) {
+                k |= (((int) encoded >>> (8*b)) & 0xff) << shift;
+                shift += 8;
+                if (shift == 32) {
+                    k *= m;
+                    k ^= k >>> r;
+                    k *= m;
+                    h *= m;
+                    h ^= k;
+                    k = 0;
+                    shift = 0;
+                }
+            }
+        }
+
+        if (shift != 0) {
+            h ^= k;
+            h *= m;
+        }
+
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+
+        return h;
     }
     
     /** 
@@ -110,6 +218,19 @@ public final class MurmurHash {
      * @return 64 bit hash of the given array
      */
     public static long hash64(final byte[] data, int length, int seed) {
+        return hash64(data, 0, length, seed);
+    }
+
+    /** 
+     * Generates 64 bit hash from a slice of a byte array and seed.
+     * 
+     * @param data byte array to hash
+     * @param offset start of the slice
+     * @param length length of the slice
+     * @param seed initial seed value
+     * @return 64 bit hash of the given slice
+     */
+    public static long hash64(final byte[] data, int offset, int length, int seed) {
         final long m = 0xc6a4a7935bd1e995L;
         final int r = 47;
 
@@ -118,7 +239,7 @@ public final class MurmurHash {
         int length8 = length/8;
 
         for (int i=0; i<length8; i++) {
-            final int i8 = i*8;
+            final int i8 = offset + i*8;
             long k =  ((long)data[i8+0]&0xff)      +(((long)data[i8+1]&0xff)<<8)
                     +(((long)data[i8+2]&0xff)<<16) +(((long)data[i8+3]&0xff)<<24)
                     +(((long)data[i8+4]&0xff)<<32) +(((long)data[i8+5]&0xff)<<40)
@@ -132,14 +253,15 @@ public final class MurmurHash {
             h *= m; 
         }
         
+        final int tail = offset + (length&~7);
         switch (length%8) {
-        case 7: h ^= (long)(data[(length&~7)+6]&0xff) << 48;
-        case 6: h ^= (long)(data[(length&~7)+5]&0xff) << 40;
-        case 5: h ^= (long)(data[(length&~7)+4]&0xff) << 32;
-        case 4: h ^= (long)(data[(length&~7)+3]&0xff) << 24;
-        case 3: h ^= (long)(data[(length&~7)+2]&0xff) << 16;
-        case 2: h ^= (long)(data[(length&~7)+1]&0xff) << 8;
-        case 1: h ^= (long)(data[length&~7]&0xff);
+        case 7: h ^= (long)(data[tail+6]&0xff) << 48;
+        case 6: h ^= (long)(data[tail+5]&0xff) << 40;
+        case 5: h ^= (long)(data[tail+4]&0xff) << 32;
+        case 4: h ^= (long)(data[tail+3]&0xff) << 24;
+        case 3: h ^= (long)(data[tail+2]&0xff) << 16;
+        case 2: h ^= (long)(data[tail+1]&0xff) << 8;
+        case 1: h ^= (long)(data[tail]&0xff);
                 h *= m;
         };
      
@@ -168,8 +290,7 @@ public final class MurmurHash {
      * @return 64 bit hash of the given string
      */
     public static long hash64(final String text) {
-        final byte[] bytes = text.getBytes(); 
-        return hash64(bytes, bytes.length);
+        return hash64((CharSequence) text);
     }
 
     /** 
@@ -181,6 +302,153 @@ public final class MurmurHash {
      * @return 64 bit hash of the given array
      */
     public static long hash64(final String text, int from, int length) {
-        return hash64(text.substring( from, from+length));
+        return hash64((CharSequence) text, from, length);
+    }
+
+    /** 
+     * Generates 64 bit hash from the UTF-8 encoding of a char sequence with default seed value, without
+     * materializing the encoded bytes.
+     * 
+     * @param text char sequence to hash
+     * @return 64 bit hash of the given char sequence
+     */
+    public static long hash64(final CharSequence text) {
+        return hash64(text, 0, text.length(), 0xe17a1465);
+    }
+
+    /** 
+     * Generates 64 bit hash from the UTF-8 encoding of a subsequence with default seed value.
+     * 
+     * @param text char sequence to hash
+     * @param from starting index
+     * @param length number of chars to hash
+     * @return 64 bit hash of the given subsequence
+     */
+    public static long hash64(final CharSequence text, int from, int length) {
+        return hash64(text, from, length, 0xe17a1465);
+    }
+
+    /** 
+     * Generates 64 bit hash from the UTF-8 encoding of a subsequence and seed. The result is identical to hashing
+     * the bytes of <code>String.getBytes("UTF-8")</code>, lone surrogates are encoded as '?' like there.
+     * 
+     * @param text char sequence to hash
+     * @param from starting index
+     * @param length number of chars to hash
+     * @param seed initial seed value
+     * @return 64 bit hash of the given subsequence
+     */
+    public static long hash64(final CharSequence text, int from, int length, int seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+        final int end = from + length;
+
+        long h = (seed&0xffffffffl)^(utf8Length(text, from, end)*m);
+
+        // bytes of the current block, filled from the least significant byte on
+        long k = 0;
+        int shift = 0;
+
+        for (int i=from; i<end; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                // fast path for the common case of ascii domains
+                k |= (long) c << shift;
+                shift += 8;
+                if (shift == 64) {
+                    k *= m;
+                    k ^= k >>> r;
+                    k *= m;
+                    h ^= k;
+                    h *= m;
+                    k = 0;
+                    shift = 0;
+                }
+                continue;
+            }
+
+            final long encoded = encodeUtf8(text, i, end);
+            final int numBytes = (int) (encoded >>> 32);
+            if (numBytes == 4) {
+                // consumed a surrogate pair
+                i++;
+            }
+            for (int b=0; b<numBytes; b++) {
+                k |= ((encoded >>> (8*b)) & 0xff) << shift;
+                shift += 8;
+                if (shift == 64) {
+                    k *= m;
+                    k ^= k >>> r;
+                    k *= m;
+                    h ^= k;
+                    h *= m;
+                    k = 0;
+                    shift = 0;
+                }
+            }
+        }
+
+        if (shift != 0) {
+            h ^= k;
+            h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+
+        return h;
+    }
+
+    // Character.isSurrogate() requires Java 7
+    private static boolean isSurrogate(final char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    /** number of bytes of the UTF-8 encoding of the chars from..end-1 */
+    private static int utf8Length(final CharSequence text, int from, int end) {
+        // one byte per char, plus the extra bytes of the non-ascii chars
+        int numBytes = end - from;
+        for (int i=from; i<end; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                numBytes++;
+            } else if (Character.isHighSurrogate(c) && i+1 < end && Character.isLowSurrogate(text.charAt(i+1))) {
+                // four bytes for two chars
+                numBytes += 2;
+                i++;
+            } else if (!isSurrogate(c)) {
+                // lone surrogates are replaced by a single '?'
+                numBytes += 2;
+            }
+        }
+        return numBytes;
+    }
+
+    /** 
+     * UTF-8 encoding of the code point starting at index i, the number of bytes is stored in the upper 32 bits, the
+     * bytes themselves in the lower 32 bits, starting from the least significant one.
+     */
+    private static long encodeUtf8(final CharSequence text, int i, int end) {
+        final char c = text.charAt(i);
+        if (c < 0x80) {
+            return (1L << 32) | c;
+        }
+        if (c < 0x800) {
+            return (2L << 32) | (0xc0 | (c >>> 6)) | ((0x80 | (c & 0x3f)) << 8);
+        }
+        if (Character.isHighSurrogate(c) && i+1 < end && Character.isLowSurrogate(text.charAt(i+1))) {
+            final int codePoint = Character.toCodePoint(c, text.charAt(i+1));
+            return (4L << 32) | (0xf0 | (codePoint >>> 18)) | ((0x80 | ((codePoint >>> 12) & 0x3f)) << 8)
+                    | ((0x80 | ((codePoint >>> 6) & 0x3f)) << 16) | ((long) (0x80 | (codePoint & 0x3f)) << 24);
+        }
+        if (isSurrogate(c)) {
+            return (1L << 32) | '?';
+        }
+        return (3L << 32) | (0xe0 | (c >>> 12)) | ((0x80 | ((c >>> 6) & 0x3f)) << 8)
+                | ((0x80 | (c & 0x3f)) << 16);
     }
 }
@@ -0,0 +1,423 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import com.google.common.io.Closeables;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A payleveldomain index built on a minimal perfect hash function, which maps the n known payleveldomains
+ * bijectively onto the slots 0..n-1 without storing the keys. Every slot holds a 16-bit fingerprint of its key and
+ * the bit-packed index, which adds up to roughly six bytes per payleveldomain.
+ *
+ * The hash function follows PTHash: keys are distributed over skewed buckets, and for every bucket, largest first, we
+ * search a pilot value that sends all its keys to free slots. The slots are drawn from a table slightly larger than
+ * n, the few slots beyond n are remapped onto the free slots below n.
+ *
+ * Unknown payleveldomains are rejected via the fingerprint, with a false positive rate of 2^-16.
+ */
+public class PerfectHashDomainIndex extends DomainIndex {
+
+  static final long MAGIC = 0x545454444d504831L; // "TTTDMPH1"
+
+  // buckets = C * n / log2(n), a higher C means a faster build but more space for the pilots
+  private static final double C = 6;
+  // 60% of the keys go to 30% of the buckets
+  private static final double DENSE_KEYS = 0.6;
+  private static final double DENSE_BUCKETS = 0.3;
+  private static final double ALPHA = 0.99;
+
+  private static final long DENSE_THRESHOLD = (long) (DENSE_KEYS * (1L << 53));
+  private static final int MAX_PILOT = 1 << 20;
+  private static final int MAX_ATTEMPTS = 16;
+
+  private final long seed;
+  private final int numKeys;
+  private final int tableSize;
+  private final int numDenseBuckets;
+  private final int numBuckets;
+  private final int bitsPerIndex;
+
+  private final int[] pilots;
+  private final int[] remapped;
+  private final char[] fingerprints;
+  private final long[] packedIndices;
+
+  private PerfectHashDomainIndex(long seed, int numKeys, int tableSize, int numDenseBuckets, int numBuckets,
+      int bitsPerIndex, int[] pilots, int[] remapped, char[] fingerprints, long[] packedIndices) {
+    this.seed = seed;
+    this.numKeys = numKeys;
+    this.tableSize = tableSize;
+    this.numDenseBuckets = numDenseBuckets;
+    this.numBuckets = numBuckets;
+    this.bitsPerIndex = bitsPerIndex;
+    this.pilots = pilots;
+    this.remapped = remapped;
+    this.fingerprints = fingerprints;
+    this.packedIndices = packedIndices;
+  }
+
+  @Override
+  public int lookup(String paylevelDomain) {
+    long key = hash(paylevelDomain);
+    int slot = slotFor(key);
+
+    if (fingerprints[slot] != fingerprint(key, seed)) {
+      return UNKNOWN;
+    }
+    return unpack(packedIndices, slot, bitsPerIndex);
+  }
+
+  public int numEntries() {
+    return numKeys;
+  }
+
+  @Override
+  public int maxIndex() {
+    int maxIndex = 0;
+    for (int slot = 0; slot < numKeys; slot++) {
+      maxIndex = Math.max(maxIndex, unpack(packedIndices, slot, bitsPerIndex));
+    }
+    return maxIndex;
+  }
+
+  /** approximate size of the in-memory representation */
+  public long sizeInBytes() {
+    return 4L * pilots.length + 4L * remapped.length + 2L * fingerprints.length + 8L * packedIndices.length;
+  }
+
+  private int slotFor(long key) {
+    int bucket = bucketFor(key, numDenseBuckets, numBuckets);
+    int slot = position(key, pilots[bucket], seed, tableSize);
+    return slot < numKeys ? slot : remapped[slot - numKeys];
+  }
+
+  private static int bucketFor(long key, int numDenseBuckets, int numBuckets) {
+    long mixed = mix(key);
+    if ((key >>> 11) < DENSE_THRESHOLD) {
+      return mod(mixed, numDenseBuckets);
+    }
+    return numDenseBuckets + mod(mixed, numBuckets - numDenseBuckets);
+  }
+
+  private static int position(long key, int pilot, long seed, int tableSize) {
+    return mod(mix(key + mix(pilot ^ seed)), tableSize);
+  }
+
+  private static char fingerprint(long key, long seed) {
+    return (char) (mix(key ^ ~seed) >>> 48);
+  }
+
+  private static int mod(long value, int modulus) {
+    return (int) ((value >>> 1) % modulus);
+  }
+
+  // finalizer of MurmurHash3
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  private static int unpack(long[] words, int position, int bits) {
+    long bitIndex = (long) position * bits;
+    int word = (int) (bitIndex >>> 6);
+    int shift = (int) (bitIndex & 63);
+    long value = words[word] >>> shift;
+    if (shift + bits > 64) {
+      value |= words[word + 1] << (64 - shift);
+    }
+    return (int) (value & ((1L << bits) - 1));
+  }
+
+  private static void pack(long[] words, int position, int bits, int value) {
+    long bitIndex = (long) position * bits;
+    int word = (int) (bitIndex >>> 6);
+    int shift = (int) (bitIndex & 63);
+    words[word] |= ((long) value) << shift;
+    if (shift + bits > 64) {
+      words[word + 1] |= ((long) value) >>> (64 - shift);
+    }
+  }
+
+  /** converts a gzipped text payleveldomain index into a perfect hash index */
+  public static void build(FileSystem fs, Path textIndex, Path output) throws IOException {
+
+    // first pass only counts, so that the arrays can be sized upfront
+    int numEntries = 0;
+    PldIndexReader reader = new PldIndexReader(fs.open(textIndex));
+    try {
+      while (reader.next()) {
+        numEntries++;
+      }
+    } finally {
+      Closeables.close(reader, true);
+    }
+
+    long[] keys = new long[numEntries];
+    int[] indices = new int[numEntries];
+
+    reader = new PldIndexReader(fs.open(textIndex));
+    try {
+      for (int n = 0; n < numEntries && reader.next(); n++) {
+        keys[n] = hash(reader.domain());
+        indices[n] = reader.index();
+      }
+    } finally {
+      Closeables.close(reader, true);
+    }
+
+    PerfectHashDomainIndex index = build(keys, indices);
+
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(fs.create(output, true), 1 << 20));
+      index.write(out);
+    } finally {
+      Closeables.close(out, false);
+    }
+  }
+
+  static PerfectHashDomainIndex build(long[] keys, int[] indices) {
+
+    long[] sortedKeys = keys.clone();
+    Arrays.sort(sortedKeys);
+    for (int n = 1; n < sortedKeys.length; n++) {
+      if (sortedKeys[n] == sortedKeys[n - 1]) {
+        throw new IllegalStateException("Hash collision encountered!");
+      }
+    }
+
+    int maxIndex = 0;
+    for (int index : indices) {
+      if (index <= 0) {
+        throw new IllegalStateException("Indices must be positive");
+      }
+      maxIndex = Math.max(maxIndex, index);
+    }
+
+    for (long seed = 0; seed < MAX_ATTEMPTS; seed++) {
+      PerfectHashDomainIndex index = tryBuild(keys, indices, maxIndex, seed);
+      if (index != null) {
+        return index;
+      }
+    }
+    throw new IllegalStateException("Unable to find a perfect hash function after " + MAX_ATTEMPTS + " attempts");
+  }
+
+  /** @return null if a bucket exhausted the pilot search for this seed */
+  private static PerfectHashDomainIndex tryBuild(long[] keys, int[] indices, int maxIndex, long seed) {
+
+    int numKeys = keys.length;
+    int tableSize = Math.max(numKeys, (int) Math.ceil(numKeys / ALPHA));
+    double log2 = Math.max(1, Math.log(numKeys) / Math.log(2));
+    int numBuckets = Math.max(2, (int) Math.ceil(C * numKeys / log2));
+    int numDenseBuckets = Math.max(1, (int) (DENSE_BUCKETS * numBuckets));
+
+    // counting sort of the keys by bucket
+    int[] bucketStarts = new int[numBuckets + 1];
+    for (long key : keys) {
+      bucketStarts[bucketFor(key, numDenseBuckets, numBuckets) + 1]++;
+    }
+    int maxBucketSize = 0;
+    for (int bucket = 0; bucket < numBuckets; bucket++) {
+      maxBucketSize = Math.max(maxBucketSize, bucketStarts[bucket + 1]);
+      bucketStarts[bucket + 1] += bucketStarts[bucket];
+    }
+    int[] keysByBucket = new int[numKeys];
+    int[] fill = Arrays.copyOf(bucketStarts, numBuckets);
+    for (int n = 0; n < numKeys; n++) {
+      keysByBucket[fill[bucketFor(keys[n], numDenseBuckets, numBuckets)]++] = n;
+    }
+
+    // counting sort of the buckets by descending size
+    int[] sizeStarts = new int[maxBucketSize + 2];
+    for (int bucket = 0; bucket < numBuckets; bucket++) {
+      sizeStarts[maxBucketSize - (bucketStarts[bucket + 1] - bucketStarts[bucket]) + 1]++;
+    }
+    for (int n = 0; n <= maxBucketSize; n++) {
+      sizeStarts[n + 1] += sizeStarts[n];
+    }
+    int[] bucketsBySize = new int[numBuckets];
+    for (int bucket = 0; bucket < numBuckets; bucket++) {
+      bucketsBySize[sizeStarts[maxBucketSize - (bucketStarts[bucket + 1] - bucketStarts[bucket])]++] = bucket;
+    }
+
+    int[] pilots = new int[numBuckets];
+    long[] taken = new long[(tableSize + 63) >>> 6];
+    int[] positions = new int[maxBucketSize];
+
+    for (int bucket : bucketsBySize) {
+      int start = bucketStarts[bucket];
+      int size = bucketStarts[bucket + 1] - start;
+      if (size == 0) {
+        break;
+      }
+
+      int pilot = 0;
+      while (!fits(keys, keysByBucket, start, size, pilot, seed, tableSize, taken, positions)) {
+        if (++pilot == MAX_PILOT) {
+          return null;
+        }
+      }
+
+      pilots[bucket] = pilot;
+      for (int n = 0; n < size; n++) {
+        taken[positions[n] >>> 6] |= 1L << positions[n];
+      }
+    }
+
+    // fold the slots beyond numKeys onto the free slots below
+    int[] remapped = new int[tableSize - numKeys];
+    int freeSlot = 0;
+    for (int slot = numKeys; slot < tableSize; slot++) {
+      if ((taken[slot >>> 6] & (1L << slot)) != 0) {
+        while ((taken[freeSlot >>> 6] & (1L << freeSlot)) != 0) {
+          freeSlot++;
+        }
+        remapped[slot - numKeys] = freeSlot++;
+      }
+    }
+
+    int bitsPerIndex = 32 - Integer.numberOfLeadingZeros(maxIndex);
+    char[] fingerprints = new char[numKeys];
+    long[] packedIndices = new long[(int) (((long) numKeys * bitsPerIndex + 63) >>> 6) + 1];
+
+    PerfectHashDomainIndex index = new PerfectHashDomainIndex(seed, numKeys, tableSize, numDenseBuckets,
+        numBuckets, bitsPerIndex, pilots, remapped, fingerprints, packedIndices);
+
+    for (int n = 0; n < numKeys; n++) {
+      int slot = index.slotFor(keys[n]);
+      fingerprints[slot] = fingerprint(keys[n], seed);
+      pack(packedIndices, slot, bitsPerIndex, indices[n]);
+    }
+
+    return index;
+  }
+
+  /** checks whether the pilot sends all keys of the bucket to distinct free slots, which end up in positions */
+  private static boolean fits(long[] keys, int[] keysByBucket, int start, int size, int pilot, long seed,
+      int tableSize, long[] taken, int[] positions) {
+    for (int n = 0; n < size; n++) {
+      int position = position(keys[keysByBucket[start + n]], pilot, seed, tableSize);
+      if ((taken[position >>> 6] & (1L << position)) != 0) {
+        return false;
+      }
+      for (int m = 0; m < n; m++) {
+        if (positions[m] == position) {
+          return false;
+        }
+      }
+      positions[n] = position;
+    }
+    return true;
+  }
+
+  public void write(DataOutputStream out) throws IOException {
+    out.writeLong(MAGIC);
+    out.writeLong(seed);
+    out.writeInt(numKeys);
+    out.writeInt(tableSize);
+    out.writeInt(numDenseBuckets);
+    out.writeInt(numBuckets);
+    out.writeInt(bitsPerIndex);
+    out.writeInt(packedIndices.length);
+
+    for (int pilot : pilots) {
+      out.writeInt(pilot);
+    }
+    for (int slot : remapped) {
+      out.writeInt(slot);
+    }
+    for (char fingerprint : fingerprints) {
+      out.writeChar(fingerprint);
+    }
+    for (long word : packedIndices) {
+      out.writeLong(word);
+    }
+  }
+
+  public static PerfectHashDomainIndex read(DataInputStream in) throws IOException {
+    if (in.readLong() != MAGIC) {
+      throw new IOException("Not a perfect hash domain index");
+    }
+    long seed = in.readLong();
+    int numKeys = in.readInt();
+    int tableSize = in.readInt();
+    int numDenseBuckets = in.readInt();
+    int numBuckets = in.readInt();
+    int bitsPerIndex = in.readInt();
+    int numWords = in.readInt();
+
+    int[] pilots = new int[numBuckets];
+    int[] remapped = new int[tableSize - numKeys];
+    char[] fingerprints = new char[numKeys];
+    long[] packedIndices = new long[numWords];
+
+    // bulk reads, element-wise reads from a DataInputStream are far too slow for tens of millions of entries
+    byte[] chunk = new byte[1 << 20];
+    readInts(in, chunk, pilots);
+    readInts(in, chunk, remapped);
+    for (int offset = 0; offset < fingerprints.length; offset += chunk.length / 2) {
+      int length = Math.min(fingerprints.length - offset, chunk.length / 2);
+      readChunk(in, chunk, 2 * length).asCharBuffer().get(fingerprints, offset, length);
+    }
+    for (int offset = 0; offset < packedIndices.length; offset += chunk.length / 8) {
+      int length = Math.min(packedIndices.length - offset, chunk.length / 8);
+      readChunk(in, chunk, 8 * length).asLongBuffer().get(packedIndices, offset, length);
+    }
+
+    return new PerfectHashDomainIndex(seed, numKeys, tableSize, numDenseBuckets, numBuckets, bitsPerIndex, pilots,
+        remapped, fingerprints, packedIndices);
+  }
+
+  private static void readInts(DataInputStream in, byte[] chunk, int[] values) throws IOException {
+    for (int offset = 0; offset < values.length; offset += chunk.length / 4) {
+      int length = Math.min(values.length - offset, chunk.length / 4);
+      readChunk(in, chunk, 4 * length).asIntBuffer().get(values, offset, length);
+    }
+  }
+
+  private static ByteBuffer readChunk(DataInputStream in, byte[] chunk, int length) throws IOException {
+    in.readFully(chunk, 0, length);
+    return ByteBuffer.wrap(chunk, 0, length);
+  }
+
+  static PerfectHashDomainIndex read(FileSystem fs, Path indexFile) throws IOException {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(fs.open(indexFile), 1 << 20));
+      return read(in);
+    } finally {
+      Closeables.close(in, true);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+/** iterates over the "domain\tindex" lines of a gzipped payleveldomain index */
+class PldIndexReader implements Closeable {
+
+  private final BufferedReader reader;
+
+  private String domain;
+  private int index;
+  private int linesRead = 0;
+
+  PldIndexReader(InputStream gzippedIndex) throws IOException {
+    reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(gzippedIndex), "UTF8"));
+  }
+
+  boolean next() throws IOException {
+    String line = reader.readLine();
+    if (line == null) {
+      return false;
+    }
+
+    int separator = line.indexOf('\t');
+    if (separator == -1) {
+      throw new IOException("Malformed line " + (linesRead + 1) + ": " + line);
+    }
+
+    domain = line.substring(0, separator);
+    index = Integer.parseInt(line.substring(separator + 1));
+    linesRead++;
+    return true;
+  }
+
+  String domain() {
+    return domain;
+  }
+
+  int index() {
+    return index;
+  }
+
+  int linesRead() {
+    return linesRead;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
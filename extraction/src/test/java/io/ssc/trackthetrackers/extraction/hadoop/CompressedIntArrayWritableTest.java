@@ -0,0 +1,116 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedIntArrayWritableTest {
+
+  @Test
+  public void sortsAndDeduplicates() {
+    CompressedIntArrayWritable writable = new CompressedIntArrayWritable(new int[] { 15964105, 3, 42, 3, 15964105 });
+    assertArrayEquals(new int[] { 3, 42, 15964105 }, writable.toArray());
+  }
+
+  @Test
+  public void sparseRoundTrip() throws IOException {
+    int[] sparse = { 1136762, 11142763, 13237914, 15964105, 15964788, 42467638 };
+    assertArrayEquals(sparse, roundTrip(new CompressedIntArrayWritable(sparse.clone())).toArray());
+  }
+
+  @Test
+  public void denseRoundTripUsesBitmap() throws IOException {
+    int[] dense = new int[1000];
+    for (int n = 0; n < dense.length; n++) {
+      dense[n] = 20000000 + 2 * n;
+    }
+
+    byte[] bytes = serialize(new CompressedIntArrayWritable(dense.clone()));
+    // 2000 ids wide range -> 32 words bitmap, much smaller than a byte per delta
+    assertTrue(bytes.length < 300);
+    assertArrayEquals(dense, deserialize(bytes, new CompressedIntArrayWritable()).toArray());
+  }
+
+  @Test
+  public void reusesDecodeBuffer() throws IOException {
+    CompressedIntArrayWritable reused = new CompressedIntArrayWritable();
+    deserialize(serialize(new CompressedIntArrayWritable(new int[] { 1, 2, 3, 4, 5 })), reused);
+    deserialize(serialize(new CompressedIntArrayWritable(new int[] { 7 })), reused);
+    assertEquals(1, reused.size());
+    assertEquals(7, reused.get(0));
+    deserialize(serialize(new CompressedIntArrayWritable(new int[0])), reused);
+    assertEquals(0, reused.size());
+  }
+
+  @Test
+  public void rawComparatorAgreesWithCompareTo() throws IOException {
+    Random random = new Random(0xbeef);
+    CompressedIntArrayWritable.Comparator comparator = new CompressedIntArrayWritable.Comparator();
+
+    for (int run = 0; run < 1000; run++) {
+      CompressedIntArrayWritable first = randomSet(random);
+      CompressedIntArrayWritable second = random.nextBoolean() ? randomSet(random) :
+          new CompressedIntArrayWritable(first.toArray());
+
+      byte[] firstBytes = serialize(first);
+      byte[] secondBytes = serialize(second);
+
+      int expected = Integer.signum(first.compareTo(second));
+      int actual = comparator.compare(firstBytes, 0, firstBytes.length, secondBytes, 0, secondBytes.length);
+      assertEquals(expected, Integer.signum(actual));
+    }
+  }
+
+  private static CompressedIntArrayWritable randomSet(Random random) {
+    int[] values = new int[random.nextInt(50)];
+    // mix dense and sparse sets
+    int range = random.nextBoolean() ? 100 : 50000000;
+    for (int n = 0; n < values.length; n++) {
+      values[n] = random.nextInt(range);
+    }
+    return new CompressedIntArrayWritable(values);
+  }
+
+  private static CompressedIntArrayWritable roundTrip(CompressedIntArrayWritable writable) throws IOException {
+    return deserialize(serialize(writable), new CompressedIntArrayWritable());
+  }
+
+  private static byte[] serialize(CompressedIntArrayWritable writable) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writable.write(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  private static CompressedIntArrayWritable deserialize(byte[] bytes, CompressedIntArrayWritable writable)
+      throws IOException {
+    writable.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+    return writable;
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class EdgeStatsWritableTest {
+
+  private static final long JAN_2012 = 1325376000000L;
+  private static final long JUN_2012 = 1338508800000L;
+
+  @Test
+  public void mergeWidensTimeRangeAndAddsPages() {
+    EdgeStatsWritable stats = new EdgeStatsWritable(JUN_2012, JUN_2012, 3);
+    stats.merge(new EdgeStatsWritable(JAN_2012, JAN_2012 + 1000, 2));
+
+    assertEquals(new EdgeStatsWritable(JAN_2012, JUN_2012, 5), stats);
+  }
+
+  @Test
+  public void roundTrip() throws IOException {
+    EdgeStatsWritable stats = new EdgeStatsWritable(JAN_2012, JUN_2012, 123456789L);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    stats.write(new DataOutputStream(bytes));
+
+    EdgeStatsWritable read = new EdgeStatsWritable(1, 2, 3);
+    read.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(stats, read);
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import com.google.protobuf.MessageOrBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+import parquet.proto.ProtoParquetReader;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs {@link ExtractionJob} and {@link TrackingGraphJob} in Hadoop local mode over a corpus produced by
+ * {@link SyntheticArcCorpusGenerator} and reports the throughput of each stage.
+ *
+ * usage: EndToEndThroughputBenchmark [numFiles] [megabytesPerFile] [contentTypeMix]
+ */
+public class EndToEndThroughputBenchmark {
+
+  public static void main(String[] args) throws Exception {
+
+    int numFiles = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    long megabytesPerFile = args.length > 1 ? Long.parseLong(args[1]) : 32;
+    String contentTypeMix = args.length > 2 ? args[2] : "text/html:0.8,image/jpeg:0.1,text/css:0.1";
+
+    File workDir = new File("/tmp/trackthetrackers-benchmark/");
+    File arcDir = new File(workDir, "arc");
+    File domainIndexFile = new File(workDir, "pld-index.gz");
+    Path extractionOutput = new Path(workDir.getAbsolutePath(), "extraction");
+    Path trackingGraphOutput = new Path(workDir.getAbsolutePath(), "trackinggraph");
+
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    fs.delete(new Path(workDir.getAbsolutePath()), true);
+
+    long start = System.currentTimeMillis();
+    SyntheticArcCorpusGenerator.Stats corpus =
+        new SyntheticArcCorpusGenerator(0xbeef).numFiles(numFiles)
+                                               .bytesPerFile(megabytesPerFile * 1024 * 1024)
+                                               .contentTypeMix(contentTypeMix)
+                                               .generate(arcDir, domainIndexFile);
+    System.out.println("Generated " + corpus + " in " + (System.currentTimeMillis() - start) + "ms");
+
+    start = System.currentTimeMillis();
+    int exitCode = ToolRunner.run(new ExtractionJob(), new String[] {
+        "--input", arcDir.getAbsolutePath(),
+        "--output", extractionOutput.toString()
+    });
+    checkSucceeded("extraction", exitCode);
+    long extractionMillis = System.currentTimeMillis() - start;
+
+    long parsedPages = countParsedPages(fs, extractionOutput);
+    long parsedPagesBytes = bytesIn(fs, extractionOutput);
+
+    start = System.currentTimeMillis();
+    exitCode = ToolRunner.run(new TrackingGraphJob(), new String[] {
+        "--input", extractionOutput.toString(),
+        "--output", trackingGraphOutput.toString(),
+        "--domainIndex", domainIndexFile.getAbsolutePath()
+    });
+    checkSucceeded("trackinggraph", exitCode);
+    long trackingGraphMillis = System.currentTimeMillis() - start;
+
+    System.out.println();
+    System.out.println(String.format("%-15s %12s %12s %10s %12s %10s", "stage", "records", "MB", "seconds",
+        "records/s", "MB/s"));
+    report("extraction", corpus.records, corpus.compressedBytes, extractionMillis);
+    report("trackinggraph", parsedPages, parsedPagesBytes, trackingGraphMillis);
+    System.out.println(String.format("(extraction processed %.1f MB of uncompressed ARC content, %.2f MB/s)",
+        corpus.uncompressedBytes / 1048576.0, corpus.uncompressedBytes / 1048576.0 / (extractionMillis / 1000.0)));
+  }
+
+  /** the throughput of a failed stage is meaningless, so the benchmark stops there */
+  private static void checkSucceeded(String stage, int exitCode) {
+    if (exitCode != 0) {
+      throw new IllegalStateException("Stage " + stage + " failed with exit code " + exitCode);
+    }
+  }
+
+  private static void report(String stage, long records, long bytes, long millis) {
+    double seconds = millis / 1000.0;
+    double megabytes = bytes / 1048576.0;
+    System.out.println(String.format("%-15s %12d %12.1f %10.1f %12.1f %10.2f", stage, records, megabytes, seconds,
+        records / seconds, megabytes / seconds));
+  }
+
+  private static long countParsedPages(FileSystem fs, Path directory) throws IOException {
+    long pages = 0;
+    for (FileStatus status : fs.listStatus(directory)) {
+      if (status.getPath().getName().endsWith(".parquet")) {
+        ProtoParquetReader<MessageOrBuilder> reader = new ProtoParquetReader<MessageOrBuilder>(status.getPath());
+        try {
+          while (reader.read() != null) {
+            pages++;
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    }
+    return pages;
+  }
+
+  private static long bytesIn(FileSystem fs, Path directory) throws IOException {
+    return fs.getContentSummary(directory).getLength();
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** runs the merge reducer in a local job against a store with a single partition */
+public class IncrementalTrackingGraphJobTest {
+
+  private static final long JAN_2012 = 1325376000000L;
+  private static final long JUN_2012 = 1338508800000L;
+
+  private static final long KNOWN_EDGE = IncrementalTrackingGraphJob.edge(1, 2);
+  private static final long UNTOUCHED_EDGE = IncrementalTrackingGraphJob.edge(3, 2);
+  private static final long NEW_EDGE = IncrementalTrackingGraphJob.edge(4, 2);
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path workDir;
+  private Path storePath;
+  private Path partition;
+
+  @Before
+  public void createStore() throws IOException {
+    conf = new Configuration();
+    conf.set("mapred.job.tracker", "local");
+    conf.set("fs.default.name", "file:///");
+    fs = FileSystem.getLocal(conf);
+
+    workDir = new Path(Files.createTempDir().getAbsolutePath());
+    storePath = new Path(workDir, "store");
+    partition = new Path(storePath, IncrementalTrackingGraphJob.partitionName(0));
+
+    SortedMap<Long,EdgeStatsWritable> stored = new TreeMap<Long,EdgeStatsWritable>();
+    stored.put(KNOWN_EDGE, new EdgeStatsWritable(JAN_2012, JAN_2012, 3));
+    stored.put(UNTOUCHED_EDGE, new EdgeStatsWritable(JAN_2012, JAN_2012 + 1000, 2));
+    write(partition, stored);
+  }
+
+  @After
+  public void deleteStore() throws IOException {
+    fs.delete(workDir, true);
+  }
+
+  @Test
+  public void mergesSegmentIntoStore() throws Exception {
+    runMergeJob();
+
+    assertTrue(IncrementalTrackingGraphJob.isCommitted(fs, incomingPath()));
+    IncrementalTrackingGraphJob.promote(fs, storePath);
+
+    assertMerged();
+    assertFalse(fs.exists(incomingPath()));
+  }
+
+  @Test
+  public void promotionCanBeResumedAfterCrash() throws Exception {
+    runMergeJob();
+
+    // crash after the stored partition was removed, but before the merged one was moved
+    fs.delete(partition, false);
+
+    assertTrue(IncrementalTrackingGraphJob.isCommitted(fs, incomingPath()));
+    IncrementalTrackingGraphJob.promote(fs, storePath);
+
+    assertMerged();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void uncommittedJobIsNotPromoted() throws Exception {
+    fs.mkdirs(incomingPath());
+    IncrementalTrackingGraphJob.promote(fs, storePath);
+  }
+
+  private void runMergeJob() throws Exception {
+    SortedMap<Long,EdgeStatsWritable> segment = new TreeMap<Long,EdgeStatsWritable>();
+    segment.put(KNOWN_EDGE, new EdgeStatsWritable(JUN_2012, JUN_2012, 1));
+    segment.put(NEW_EDGE, new EdgeStatsWritable(JUN_2012, JUN_2012, 4));
+    Path segmentPath = new Path(workDir, "segment");
+    write(new Path(segmentPath, "edges"), segment);
+
+    conf.set(IncrementalTrackingGraphJob.STORE, storePath.toString());
+    Job job = new Job(conf, "merge");
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    FileInputFormat.addInputPath(job, segmentPath);
+    job.setMapperClass(Mapper.class);
+    job.setMapOutputKeyClass(LongWritable.class);
+    job.setMapOutputValueClass(EdgeStatsWritable.class);
+    job.setPartitionerClass(IncrementalTrackingGraphJob.TrackedHostPartitioner.class);
+    job.setReducerClass(IncrementalTrackingGraphJob.MergeWithStoreReducer.class);
+    job.setNumReduceTasks(1);
+    job.setOutputKeyClass(LongWritable.class);
+    job.setOutputValueClass(EdgeStatsWritable.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    FileOutputFormat.setOutputPath(job, incomingPath());
+
+    assertTrue(job.waitForCompletion(false));
+    IncrementalTrackingGraphJob.markCommitted(fs, incomingPath(), segmentPath);
+    assertEquals(segmentPath.toString(), IncrementalTrackingGraphJob.committedInput(fs, incomingPath()));
+  }
+
+  private void assertMerged() throws IOException {
+    SortedMap<Long,EdgeStatsWritable> merged = read(partition);
+
+    assertEquals(3, merged.size());
+    assertEquals(new EdgeStatsWritable(JAN_2012, JUN_2012, 4), merged.get(KNOWN_EDGE));
+    assertEquals(new EdgeStatsWritable(JAN_2012, JAN_2012 + 1000, 2), merged.get(UNTOUCHED_EDGE));
+    assertEquals(new EdgeStatsWritable(JUN_2012, JUN_2012, 4), merged.get(NEW_EDGE));
+  }
+
+  private Path incomingPath() {
+    return new Path(storePath, IncrementalTrackingGraphJob.INCOMING_DIR);
+  }
+
+  private void write(Path file, SortedMap<Long,EdgeStatsWritable> edges) throws IOException {
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, file, LongWritable.class,
+        EdgeStatsWritable.class);
+    try {
+      for (Long edge : edges.keySet()) {
+        writer.append(new LongWritable(edge), edges.get(edge));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private SortedMap<Long,EdgeStatsWritable> read(Path file) throws IOException {
+    SortedMap<Long,EdgeStatsWritable> edges = new TreeMap<Long,EdgeStatsWritable>();
+    SequenceFile.Reader reader = new SequenceFile.Reader(fs, file, conf);
+    try {
+      LongWritable edge = new LongWritable();
+      EdgeStatsWritable stats = new EdgeStatsWritable();
+      while (reader.next(edge, stats)) {
+        edges.put(edge.get(), new EdgeStatsWritable(stats.firstSeen(), stats.lastSeen(), stats.numPages()));
+      }
+    } finally {
+      reader.close();
+    }
+    return edges;
+  }
+}
@@ -0,0 +1,382 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.Resources;
+import com.google.common.net.InternetDomainName;
+import io.ssc.trackthetrackers.extraction.resources.Resource;
+import io.ssc.trackthetrackers.extraction.resources.ResourceExtractor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates a reproducible corpus of gzip-member ARC files for benchmarking. Page bodies are built from the fixture
+ * pages in src/test/resources with randomized tracker hosts injected, a configurable fraction of the records is
+ * deliberately malformed or oversized. A matching gzipped payleveldomain index is written alongside, so that the
+ * corpus can be fed through {@link ExtractionJob} and {@link TrackingGraphJob} without any external data.
+ */
+public class SyntheticArcCorpusGenerator {
+
+  static final String[] FIXTURE_PAGES = { "buzzfeed.com.html", "mediamarkt.de.html", "prosieben.de.html",
+      "rtl.de.html", "spiegel.de.html", "techcrunch.com.html", "theguardian.com.html", "zalando.de.html" };
+
+  private static final String ARC_DATE_FORMAT = "yyyyMMddHHmmss";
+
+  private final Random random;
+  private final SimpleDateFormat arcDateFormat = new SimpleDateFormat(ARC_DATE_FORMAT);
+
+  private int numFiles = 4;
+  private long bytesPerFile = 64L * 1024 * 1024;
+  private Map<String, Double> contentTypeMix = defaultContentTypeMix();
+  private double malformedFraction = 0.01;
+  private double oversizedFraction = 0.002;
+  private int oversizedBytes = 8 * 1024 * 1024;
+  private int numSites = 5000;
+  private int numTrackers = 2000;
+  private int maxTrackersPerPage = 12;
+
+  private final List<String> fixturePages = new ArrayList<String>();
+  private final Set<String> fixtureDomains = Sets.newTreeSet();
+
+  public SyntheticArcCorpusGenerator(long seed) throws IOException {
+    random = new Random(seed);
+
+    ResourceExtractor extractor = new ResourceExtractor();
+    for (String fixturePage : FIXTURE_PAGES) {
+      String html = Resources.toString(Resources.getResource(fixturePage), Charsets.UTF_8);
+      fixturePages.add(html);
+
+      // the fixture pages reference real trackers, these must be part of the generated domain index
+      for (Resource resource : extractor.extractResources("http://" + fixturePage, html)) {
+        String paylevelDomain = paylevelDomainOf(resource.url());
+        if (paylevelDomain != null) {
+          fixtureDomains.add(paylevelDomain);
+        }
+      }
+    }
+  }
+
+  private static Map<String, Double> defaultContentTypeMix() {
+    Map<String, Double> mix = Maps.newLinkedHashMap();
+    mix.put("text/html", 0.8);
+    mix.put("image/jpeg", 0.1);
+    mix.put("text/css", 0.05);
+    mix.put("application/javascript", 0.05);
+    return mix;
+  }
+
+  public SyntheticArcCorpusGenerator numFiles(int numFiles) {
+    this.numFiles = numFiles;
+    return this;
+  }
+
+  public SyntheticArcCorpusGenerator bytesPerFile(long bytesPerFile) {
+    this.bytesPerFile = bytesPerFile;
+    return this;
+  }
+
+  /** @param contentTypeMix content types with their relative frequencies, e.g. text/html:0.8,image/jpeg:0.2 */
+  public SyntheticArcCorpusGenerator contentTypeMix(String contentTypeMix) {
+    Map<String, Double> mix = Maps.newLinkedHashMap();
+    for (String entry : contentTypeMix.split(",")) {
+      String[] tokens = entry.trim().split(":");
+      mix.put(tokens[0], Double.parseDouble(tokens[1]));
+    }
+    this.contentTypeMix = mix;
+    return this;
+  }
+
+  public SyntheticArcCorpusGenerator malformedFraction(double malformedFraction) {
+    this.malformedFraction = malformedFraction;
+    return this;
+  }
+
+  public SyntheticArcCorpusGenerator oversizedFraction(double oversizedFraction) {
+    this.oversizedFraction = oversizedFraction;
+    return this;
+  }
+
+  public SyntheticArcCorpusGenerator oversizedBytes(int oversizedBytes) {
+    this.oversizedBytes = oversizedBytes;
+    return this;
+  }
+
+  public SyntheticArcCorpusGenerator numSites(int numSites) {
+    this.numSites = numSites;
+    return this;
+  }
+
+  public SyntheticArcCorpusGenerator numTrackers(int numTrackers) {
+    this.numTrackers = numTrackers;
+    return this;
+  }
+
+  /** writes the ARC files to arcDirectory and the matching gzipped payleveldomain index to domainIndexFile */
+  public Stats generate(File arcDirectory, File domainIndexFile) throws IOException {
+
+    if (!arcDirectory.isDirectory() && !arcDirectory.mkdirs()) {
+      throw new IOException("Unable to create " + arcDirectory);
+    }
+
+    Stats stats = new Stats();
+    for (int n = 0; n < numFiles; n++) {
+      writeArcFile(new File(arcDirectory, String.format("synthetic-%05d.arc.gz", n)), stats);
+    }
+
+    writeDomainIndex(domainIndexFile);
+
+    return stats;
+  }
+
+  private void writeArcFile(File arcFile, Stats stats) throws IOException {
+
+    CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(arcFile)));
+    try {
+      String now = arcDateFormat.format(new Date());
+      byte[] versionBlock = ("1 0 Synthetic\nURL IP-address Archive-date Content-type Archive-length\n")
+          .getBytes(Charsets.US_ASCII);
+      writeMember(out, ("filedesc://" + arcFile.getName() + " 0.0.0.0 " + now + " text/plain " +
+          versionBlock.length + "\n").getBytes(Charsets.US_ASCII), versionBlock);
+
+      while (out.getCount() < bytesPerFile) {
+        writeRecord(out, stats);
+      }
+    } finally {
+      Closeables.close(out, false);
+    }
+
+    stats.compressedBytes += arcFile.length();
+  }
+
+  private void writeRecord(OutputStream out, Stats stats) throws IOException {
+
+    String contentType = pickContentType();
+    String site = "site" + skewed(numSites) + ".com";
+    String url = "http://www." + site + "/" + Long.toHexString(random.nextLong());
+    String ip = "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+    // spread archive times over roughly a year, so that time-based filters have something to work with
+    long archiveTime = 1325376000000L + (long) (random.nextDouble() * 365L * 24 * 60 * 60 * 1000);
+    String date = arcDateFormat.format(new Date(archiveTime));
+
+    byte[] body;
+    if ("text/html".equals(contentType)) {
+      boolean oversized = random.nextDouble() < oversizedFraction;
+      body = htmlBody(oversized ? oversizedBytes : 0).getBytes(Charsets.UTF_8);
+      stats.htmlRecords++;
+      if (oversized) {
+        stats.oversizedRecords++;
+      }
+    } else {
+      body = new byte[512 + random.nextInt(16 * 1024)];
+      random.nextBytes(body);
+    }
+
+    byte[] payload = concat(("HTTP/1.1 200 OK\r\nContent-Type: " + contentType + "; charset=UTF-8\r\n" +
+        "Content-Length: " + body.length + "\r\n\r\n").getBytes(Charsets.US_ASCII), body);
+
+    String header = url + " " + ip + " " + date + " " + contentType + " " + payload.length;
+
+    if (random.nextDouble() < malformedFraction) {
+      stats.malformedRecords++;
+      switch (random.nextInt(4)) {
+        case 0:
+          // wrong number of header fields
+          header = url + " " + date + " " + contentType + " " + payload.length;
+          break;
+        case 1:
+          // non-numeric content length
+          header = url + " " + ip + " " + date + " " + contentType + " unknown";
+          break;
+        case 2:
+          // content length larger than the actual payload
+          header = url + " " + ip + " " + date + " " + contentType + " " + (payload.length + 4096);
+          break;
+        default:
+          // unexpected trailing content in the gzip member
+          payload = concat(payload, "\n\ntrailing garbage\n".getBytes(Charsets.US_ASCII));
+          break;
+      }
+    }
+
+    writeMember(out, (header + "\n").getBytes(Charsets.US_ASCII), payload);
+
+    stats.records++;
+    stats.uncompressedBytes += payload.length;
+  }
+
+  private String htmlBody(int minimumLength) {
+
+    String fixture = fixturePages.get(random.nextInt(fixturePages.size()));
+
+    StringBuilder trackers = new StringBuilder();
+    int numTrackersOnPage = 1 + random.nextInt(maxTrackersPerPage);
+    for (int n = 0; n < numTrackersOnPage; n++) {
+      String host = "cdn" + random.nextInt(10) + ".tracker" + skewed(numTrackers) + ".net";
+      switch (random.nextInt(3)) {
+        case 0:
+          trackers.append("<script src=\"http://").append(host).append("/t.js\"></script>\n");
+          break;
+        case 1:
+          trackers.append("<img src=\"http://").append(host).append("/p.gif\"/>\n");
+          break;
+        default:
+          trackers.append("<iframe src=\"http://").append(host).append("/f.html\"></iframe>\n");
+          break;
+      }
+    }
+
+    StringBuilder html = new StringBuilder(Math.max(minimumLength, fixture.length()) + trackers.length() + 16);
+    int bodyEnd = fixture.lastIndexOf("</body>");
+    if (bodyEnd == -1) {
+      bodyEnd = fixture.length();
+    }
+    html.append(fixture, 0, bodyEnd).append(trackers).append(fixture, bodyEnd, fixture.length());
+
+    while (html.length() < minimumLength) {
+      html.append(fixture);
+    }
+
+    return html.toString();
+  }
+
+  /** zipf-like choice from [0, n), a few sites and trackers dominate like on the real web */
+  private int skewed(int n) {
+    double uniform = random.nextDouble();
+    return (int) (uniform * uniform * uniform * n);
+  }
+
+  private String pickContentType() {
+    double total = 0;
+    for (double weight : contentTypeMix.values()) {
+      total += weight;
+    }
+    double pick = random.nextDouble() * total;
+    String contentType = null;
+    for (Map.Entry<String, Double> entry : contentTypeMix.entrySet()) {
+      contentType = entry.getKey();
+      pick -= entry.getValue();
+      if (pick < 0) {
+        break;
+      }
+    }
+    return contentType;
+  }
+
+  private void writeDomainIndex(File domainIndexFile) throws IOException {
+
+    Set<String> domains = Sets.newTreeSet(fixtureDomains);
+    for (int n = 0; n < numSites; n++) {
+      domains.add("site" + n + ".com");
+    }
+    for (int n = 0; n < numTrackers; n++) {
+      domains.add("tracker" + n + ".net");
+    }
+
+    Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(domainIndexFile)),
+        Charsets.UTF_8);
+    try {
+      // index 0 is treated as unknown by DomainIndex
+      int index = 1;
+      for (String domain : domains) {
+        writer.write(domain + "\t" + index++ + "\n");
+      }
+    } finally {
+      Closeables.close(writer, false);
+    }
+  }
+
+  private static void writeMember(final OutputStream out, byte[] header, byte[] payload) throws IOException {
+    // every ARC record is a gzip member of its own
+    GZIPOutputStream member = new GZIPOutputStream(new FilterOutputStream(out) {
+      @Override
+      public void write(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+      }
+      @Override
+      public void close() {}
+    });
+    member.write(header);
+    member.write(payload);
+    member.finish();
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] result = new byte[first.length + second.length];
+    System.arraycopy(first, 0, result, 0, first.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+
+  private static String paylevelDomainOf(String host) {
+    try {
+      return InternetDomainName.from(host).topPrivateDomain().toString();
+    } catch (IllegalArgumentException e) {
+      return null;
+    } catch (IllegalStateException e) {
+      return null;
+    }
+  }
+
+  public static class Stats {
+    long records;
+    long htmlRecords;
+    long malformedRecords;
+    long oversizedRecords;
+    long compressedBytes;
+    long uncompressedBytes;
+
+    @Override
+    public String toString() {
+      return records + " records (" + htmlRecords + " html, " + malformedRecords + " malformed, " +
+          oversizedRecords + " oversized), " + compressedBytes + " bytes compressed, " + uncompressedBytes +
+          " bytes uncompressed";
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+
+    SyntheticArcCorpusGenerator generator = new SyntheticArcCorpusGenerator(0xbeef);
+
+    Stats stats = generator.numFiles(2)
+                           .bytesPerFile(16L * 1024 * 1024)
+                           .generate(new File("/tmp/synthetic-arc/"), new File("/tmp/synthetic-pld-index.gz"));
+
+    System.out.println(stats);
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.io;
+
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListReader;
+import io.ssc.trackthetrackers.commons.graph.AdjacencyListWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdjacencyListFormatTest {
+
+  @Test
+  public void roundTripAcrossBlocks() throws IOException {
+    Random random = new Random(0xdeadbeef);
+
+    int[] vertices = new int[5000];
+    int[][] lists = new int[vertices.length][];
+    int vertex = 0;
+    for (int n = 0; n < vertices.length; n++) {
+      vertex += 1 + random.nextInt(20000);
+      vertices[n] = vertex;
+      lists[n] = randomSortedDistinct(random, random.nextInt(n % 100 == 0 ? 5000 : 30));
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    // tiny blocks, so that many lists and some oversized lists end up in their own blocks
+    AdjacencyListWriter writer = new AdjacencyListWriter(bytes, AdjacencyListWriter.IN_NEIGHBOURS, 256);
+    long numEdges = 0;
+    for (int n = 0; n < vertices.length; n++) {
+      writer.write(vertices[n], lists[n], lists[n].length);
+      numEdges += lists[n].length;
+    }
+    writer.close();
+    assertEquals(numEdges, writer.edgesWritten());
+
+    AdjacencyListReader reader = new AdjacencyListReader(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(AdjacencyListWriter.IN_NEIGHBOURS, reader.direction());
+    for (int n = 0; n < vertices.length; n++) {
+      assertTrue(reader.next());
+      assertEquals(vertices[n], reader.vertex());
+      assertArrayEquals(lists[n], Arrays.copyOf(reader.neighbours(), reader.numNeighbours()));
+    }
+    assertFalse(reader.next());
+    assertEquals(numEdges, reader.edgesRead());
+    reader.close();
+  }
+
+  @Test
+  public void emptyFile() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new AdjacencyListWriter(bytes, AdjacencyListWriter.OUT_NEIGHBOURS).close();
+
+    AdjacencyListReader reader = new AdjacencyListReader(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(AdjacencyListWriter.OUT_NEIGHBOURS, reader.direction());
+    assertFalse(reader.next());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsortedVertices() throws IOException {
+    AdjacencyListWriter writer = new AdjacencyListWriter(new ByteArrayOutputStream(),
+        AdjacencyListWriter.OUT_NEIGHBOURS);
+    writer.write(7, new int[] { 1 }, 1);
+    writer.write(3, new int[] { 1 }, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsDuplicateNeighbours() throws IOException {
+    AdjacencyListWriter writer = new AdjacencyListWriter(new ByteArrayOutputStream(),
+        AdjacencyListWriter.OUT_NEIGHBOURS);
+    writer.write(7, new int[] { 1, 4, 4 }, 3);
+  }
+
+  @Test
+  public void compressesDenseLists() throws IOException {
+    int[] neighbours = new int[100000];
+    for (int n = 0; n < neighbours.length; n++) {
+      neighbours[n] = 42000000 + 3 * n;
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    AdjacencyListWriter writer = new AdjacencyListWriter(bytes, AdjacencyListWriter.OUT_NEIGHBOURS);
+    writer.write(1, neighbours, neighbours.length);
+    writer.close();
+
+    // constant gaps deflate to almost nothing, the text format needs more than 10 bytes per edge
+    assertTrue(bytes.size() < 1000);
+  }
+
+  private static int[] randomSortedDistinct(Random random, int size) {
+    int[] values = new int[size];
+    int value = random.nextInt(1000);
+    for (int n = 0; n < size; n++) {
+      values[n] = value;
+      value += 1 + (random.nextInt(10) == 0 ? random.nextInt(1 << 16) : random.nextInt(100));
+    }
+    return values;
+  }
+}
@@ -34,7 +34,7 @@ public class DomainIndexIntegrationTest {
 
     Path indexFile = new Path(Config.get("webdatacommons.pldfile"));
 
-    DomainIndex domainIndex = new DomainIndex(fs, indexFile);
+    DomainIndex domainIndex = DomainIndex.open(fs, indexFile);
 
     System.out.println("google-analytics.com " + domainIndex.indexFor("google-analytics.com"));
     System.out.println("spiegel.de " + domainIndex.indexFor("spiegel.de"));
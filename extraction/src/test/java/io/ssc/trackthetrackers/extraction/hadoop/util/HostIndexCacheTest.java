@@ -0,0 +1,67 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HostIndexCacheTest {
+
+  private HostIndexCache cache;
+
+  @Before
+  public void createCache() throws IOException {
+    cache = new HostIndexCache(new MappedDomainIndex(MappedDomainIndexTest.buildIndex(100)), 1000);
+  }
+
+  @Test
+  public void paylevelDomainAndIndexAreResolvedOnce() {
+    assertEquals("domain1.com", cache.paylevelDomainFor("www.domain1.com"));
+    assertEquals(2, cache.indexFor("www.domain1.com"));
+
+    assertEquals(1, cache.misses());
+    assertEquals(1, cache.hits());
+  }
+
+  @Test
+  public void unknownDomainsGetOverflowIds() {
+    assertEquals("unknown.org", cache.paylevelDomainFor("cdn.unknown.org"));
+    int index = cache.indexFor("cdn.unknown.org");
+
+    assertTrue(HostIndexCache.isOverflowIndex(index));
+    assertEquals(HostIndexCache.overflowIndexFor("unknown.org"), index);
+    assertEquals(1, cache.overflowDomains());
+  }
+
+  @Test
+  public void invalidHostsAreCachedToo() {
+    assertNull(cache.paylevelDomainFor("not a host"));
+    assertEquals(DomainIndex.UNKNOWN, cache.indexFor("not a host"));
+
+    assertEquals(1, cache.invalidHosts());
+    assertEquals(1, cache.hits());
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HostSamplerTest {
+
+  @Test
+  public void keepsRequestedFraction() {
+    HostSampler sampler = new HostSampler(0.1);
+
+    int accepted = 0;
+    int numDomains = 100000;
+    for (int n = 0; n < numDomains; n++) {
+      if (sampler.acceptPaylevelDomain("site" + n + ".com")) {
+        accepted++;
+      }
+    }
+    assertEquals(0.1, accepted / (double) numDomains, 0.005);
+  }
+
+  @Test
+  public void hostsOfSameSiteAreSampledTogether() {
+    HostSampler sampler = new HostSampler(0.5);
+
+    for (int n = 0; n < 1000; n++) {
+      String site = "site" + n + ".co.uk";
+      boolean accepted = sampler.accept(site);
+      assertEquals(accepted, sampler.accept("www." + site));
+      assertEquals(accepted, sampler.accept("static.cdn." + site));
+      assertEquals(accepted, new HostSampler(0.5).accept(site));
+    }
+  }
+
+  @Test
+  public void smallerSamplesAreContainedInLargerOnes() {
+    HostSampler small = new HostSampler(0.01);
+    HostSampler large = new HostSampler(0.2);
+
+    for (int n = 0; n < 100000; n++) {
+      String domain = "site" + n + ".de";
+      assertTrue(!small.acceptPaylevelDomain(domain) || large.acceptPaylevelDomain(domain));
+    }
+  }
+
+  @Test
+  public void fullRateKeepsEverythingValid() {
+    HostSampler sampler = new HostSampler(1.0);
+    assertTrue(sampler.accept("www.spiegel.de"));
+    assertFalse(sampler.accept("not a host"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroRate() {
+    new HostSampler(0);
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedDomainIndexTest {
+
+  private static final int NUM_DOMAINS = 10000;
+
+  @Test
+  public void findsAllDomains() throws IOException {
+    MappedDomainIndex index = new MappedDomainIndex(buildIndex(NUM_DOMAINS));
+
+    assertEquals(NUM_DOMAINS, index.numEntries());
+    assertEquals(NUM_DOMAINS, index.maxIndex());
+    for (int n = 0; n < NUM_DOMAINS; n++) {
+      assertEquals(n + 1, index.indexFor("domain" + n + ".com"));
+    }
+  }
+
+  @Test
+  public void rejectsUnknownDomains() throws IOException {
+    MappedDomainIndex index = new MappedDomainIndex(buildIndex(NUM_DOMAINS));
+
+    for (int n = NUM_DOMAINS; n < 2 * NUM_DOMAINS; n++) {
+      assertEquals(DomainIndex.UNKNOWN, index.lookup("domain" + n + ".com"));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void indexForFailsOnUnknownDomain() throws IOException {
+    new MappedDomainIndex(buildIndex(10)).indexFor("unknown.org");
+  }
+
+  static File buildIndex(int numDomains) throws IOException {
+    ByteArrayOutputStream textIndex = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(new GZIPOutputStream(textIndex), Charsets.UTF_8);
+    for (int n = 0; n < numDomains; n++) {
+      writer.write("domain" + n + ".com\t" + (n + 1) + "\n");
+    }
+    writer.close();
+
+    File indexFile = File.createTempFile("domainindex-", ".bin");
+    indexFile.deleteOnExit();
+
+    PldIndexReader reader = new PldIndexReader(new ByteArrayInputStream(textIndex.toByteArray()));
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile));
+    try {
+      MappedDomainIndex.write(reader, numDomains, out);
+    } finally {
+      reader.close();
+      out.close();
+    }
+    return indexFile;
+  }
+}
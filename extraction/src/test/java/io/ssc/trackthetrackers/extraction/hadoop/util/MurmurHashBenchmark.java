@@ -0,0 +1,62 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import java.util.Random;
+
+/**
+ * Compares hashing domains via an intermediate byte array with the allocation-free {@link CharSequence} path.
+ *
+ * usage: MurmurHashBenchmark [numDomains] [rounds]
+ */
+public class MurmurHashBenchmark {
+
+  public static void main(String[] args) throws Exception {
+
+    int numDomains = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    Random random = new Random(0xbeef);
+    String[] domains = new String[numDomains];
+    for (int n = 0; n < numDomains; n++) {
+      domains[n] = "www" + random.nextInt(100) + ".domain" + random.nextInt(numDomains) + ".com";
+    }
+
+    for (int round = 0; round < rounds; round++) {
+      long checksum = 0;
+
+      long start = System.nanoTime();
+      for (String domain : domains) {
+        byte[] bytes = domain.getBytes("UTF-8");
+        checksum += MurmurHash.hash64(bytes, bytes.length);
+      }
+      long bytesMillis = (System.nanoTime() - start) / 1000000;
+
+      start = System.nanoTime();
+      for (String domain : domains) {
+        checksum -= MurmurHash.hash64(domain);
+      }
+      long charSequenceMillis = (System.nanoTime() - start) / 1000000;
+
+      System.out.println(String.format("round %d: getBytes() %dms, CharSequence %dms (checksum %d)", round,
+          bytesMillis, charSequenceMillis, checksum));
+    }
+  }
+}
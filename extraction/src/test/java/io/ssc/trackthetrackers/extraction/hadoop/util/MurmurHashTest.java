@@ -0,0 +1,99 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class MurmurHashTest {
+
+  private static final String[] SAMPLES = {
+      "", "a", "ab", "abc", "abcd", "abcdefg", "abcdefgh", "abcdefghi", "google-analytics.com", "spiegel.de",
+      "m\u00fcnchen.de", "xn--mnchen-3ya.de", "\u65e5\u672c\u8a9e.jp", "\uD83D\uDE00smile.com", "lone\uD800surrogate.com",
+      "trailing\uDBFF", "\uDC00leading", "\u20acuro.eu"
+  };
+
+  @Test
+  public void charSequenceHashesMatchUtf8Bytes() {
+    for (String sample : SAMPLES) {
+      assertSameHashes(sample);
+    }
+
+    Random random = new Random(0xbeef);
+    for (int run = 0; run < 10000; run++) {
+      assertSameHashes(randomString(random));
+    }
+  }
+
+  @Test
+  public void slicesMatchCopies() {
+    Random random = new Random(0xcafe);
+    for (int run = 0; run < 10000; run++) {
+      byte[] bytes = randomString(random).getBytes(Charsets.UTF_8);
+      int offset = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+      int length = random.nextInt(bytes.length - offset + 1);
+
+      byte[] copy = new byte[length];
+      System.arraycopy(bytes, offset, copy, 0, length);
+
+      assertEquals(MurmurHash.hash64(copy, length, 42), MurmurHash.hash64(bytes, offset, length, 42));
+      assertEquals(MurmurHash.hash32(copy, length, 42), MurmurHash.hash32(bytes, offset, length, 42));
+    }
+  }
+
+  @Test
+  public void subSequencesMatchSubstrings() {
+    String text = "www.google-analytics.com";
+    assertEquals(MurmurHash.hash64("google-analytics.com"), MurmurHash.hash64(text, 4, 20));
+    assertEquals(MurmurHash.hash32("google-analytics.com"), MurmurHash.hash32(text, 4, 20));
+    assertEquals(MurmurHash.hash64("google-analytics.com"), MurmurHash.hash64(new StringBuilder(text), 4, 20));
+  }
+
+  private static void assertSameHashes(String text) {
+    byte[] bytes = text.getBytes(Charsets.UTF_8);
+    assertEquals(MurmurHash.hash64(bytes, bytes.length), MurmurHash.hash64(text));
+    assertEquals(MurmurHash.hash32(bytes, bytes.length), MurmurHash.hash32(text));
+    assertEquals(MurmurHash.hash64(bytes, bytes.length), MurmurHash.hash64(new StringBuilder(text)));
+  }
+
+  private static String randomString(Random random) {
+    char[] chars = new char[random.nextInt(40)];
+    for (int n = 0; n < chars.length; n++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          chars[n] = (char) ('a' + random.nextInt(26));
+          break;
+        case 1:
+          chars[n] = (char) (0x80 + random.nextInt(0x780));
+          break;
+        case 2:
+          chars[n] = (char) (0x800 + random.nextInt(0xf7ff));
+          break;
+        default:
+          chars[n] = (char) (0xd800 + random.nextInt(0x800));
+      }
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Track the trackers
+ * Copyright (C) 2015  Sebastian Schelter, Felix Neutatz
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.ssc.trackthetrackers.extraction.hadoop.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PerfectHashDomainIndexTest {
+
+  private static final int NUM_DOMAINS = 100000;
+
+  @Test
+  public void findsAllDomains() {
+    PerfectHashDomainIndex index = buildIndex(NUM_DOMAINS);
+
+    assertEquals(NUM_DOMAINS, index.numEntries());
+    assertEquals(NUM_DOMAINS, index.maxIndex());
+    for (int n = 0; n < NUM_DOMAINS; n++) {
+      assertEquals(n + 1, index.indexFor("domain" + n + ".com"));
+    }
+  }
+
+  @Test
+  public void takesOnlyAFewBytesPerDomain() {
+    PerfectHashDomainIndex index = buildIndex(NUM_DOMAINS);
+    assertTrue(index.sizeInBytes() < 8L * NUM_DOMAINS);
+  }
+
+  @Test
+  public void rejectsMostUnknownDomains() {
+    PerfectHashDomainIndex index = buildIndex(NUM_DOMAINS);
+
+    int falsePositives = 0;
+    for (int n = NUM_DOMAINS; n < 2 * NUM_DOMAINS; n++) {
+      if (index.lookup("domain" + n + ".com") != DomainIndex.UNKNOWN) {
+        falsePositives++;
+      }
+    }
+    // expected are NUM_DOMAINS / 2^16 false positives
+    assertTrue(falsePositives < 10);
+  }
+
+  @Test
+  public void handlesTinyIndices() {
+    for (int numDomains = 1; numDomains < 20; numDomains++) {
+      PerfectHashDomainIndex index = buildIndex(numDomains);
+      for (int n = 0; n < numDomains; n++) {
+        assertEquals(n + 1, index.indexFor("domain" + n + ".com"));
+      }
+    }
+  }
+
+  @Test
+  public void serializationRoundTrip() throws IOException {
+    PerfectHashDomainIndex index = buildIndex(NUM_DOMAINS);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    index.write(new DataOutputStream(bytes));
+    PerfectHashDomainIndex read =
+        PerfectHashDomainIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    for (int n = 0; n < 2 * NUM_DOMAINS; n++) {
+      String domain = "domain" + n + ".com";
+      assertEquals(index.lookup(domain), read.lookup(domain));
+    }
+  }
+
+  private static PerfectHashDomainIndex buildIndex(int numDomains) {
+    long[] keys = new long[numDomains];
+    int[] indices = new int[numDomains];
+    for (int n = 0; n < numDomains; n++) {
+      keys[n] = DomainIndex.hash("domain" + n + ".com");
+      indices[n] = n + 1;
+    }
+    return PerfectHashDomainIndex.build(keys, indices);
+  }
+}